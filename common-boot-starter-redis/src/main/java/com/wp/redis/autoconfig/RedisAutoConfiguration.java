@@ -1,33 +1,73 @@
 package com.wp.redis.autoconfig;
 
-import com.fasterxml.jackson.annotation.JsonAutoDetect;
-import com.fasterxml.jackson.annotation.PropertyAccessor;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wp.redis.batch.CommandBatcher;
+import com.wp.redis.bloom.BloomFilterRegistry;
+import com.wp.redis.breaker.ShardGuards;
+import com.wp.redis.cache.BatchCacheablePostProcessor;
+import com.wp.redis.chunk.ChunkedValueStore;
+import com.wp.redis.cache.ShardedRedisCacheManager;
+import com.wp.redis.codec.DictionaryCompressor;
+import com.wp.redis.connection.LazyConnectionFactory;
+import com.wp.redis.connection.MultiplexedConnectionFactory;
+import com.wp.redis.connection.ParallelInitializer;
+import com.wp.redis.counter.BufferedCounter;
+import com.wp.redis.connection.ShardJedisConnectionFactory;
 import com.wp.redis.facade.RedisFacade;
+import com.wp.redis.hotset.HotKeyTracker;
+import com.wp.redis.hotset.HotSetSnapshotter;
+import com.wp.redis.lock.LockProvider;
+import com.wp.redis.lock.ShardedLockProvider;
+import com.wp.redis.lock.SingleServerLockProvider;
+import com.wp.redis.monitor.KeyspaceProfiler;
+import com.wp.redis.nearcache.NearCache;
+import com.wp.redis.policy.KeyPolicyTable;
+import com.wp.redis.monitor.ShardPoolMetrics;
 import com.wp.redis.properties.RedisConfigProperties;
+import com.wp.redis.properties.RedisDriver;
 import com.wp.redis.properties.RedissonConfigProperties;
+import com.wp.redis.properties.ShardProperties;
+import com.wp.redis.properties.WarmupProperties;
+import com.wp.redis.replica.ReplicaReader;
 import com.wp.redis.routes.RedisTemplateRoute;
+import com.wp.redis.scan.KeyScanner;
+import com.wp.redis.utils.ObjectMapperUtil;
+import com.wp.redis.writebehind.WriteBehindQueue;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.cache.CacheAutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.CacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.util.CollectionUtils;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.util.Pool;
 
 import java.util.ArrayList;
 import java.util.List;
 
+@AutoConfigureBefore(CacheAutoConfiguration.class)
 @EnableConfigurationProperties(value = {RedisConfigProperties.class, RedissonConfigProperties.class})
 @Configuration
 public class RedisAutoConfiguration {
+    private static Logger logger = LoggerFactory.getLogger(RedisAutoConfiguration.class);
+
     @Autowired
     private RedisConfigProperties redisConfigProperties;
     @Autowired
@@ -47,18 +87,90 @@ public class RedisAutoConfiguration {
 
     @Bean
     public RedisTemplateRoute redisTemplateRoute(JedisPoolConfig jedisPoolConfig) {
-        List<RedisTemplate<String, Object>> redisTemplateList = new ArrayList<>();
-        for (String hostName : redisConfigProperties.getHostList()) {
-            JedisConnectionFactory jedisConnectionFactory = jedisConnectionFactorys(jedisPoolConfig, hostName);
-            RedisTemplate<String, Object> redisTemplate = this.getRedisTemplate(jedisConnectionFactory);
-            redisTemplateList.add(redisTemplate);
-        }
+        WarmupProperties warmup = redisConfigProperties.getWarmup();
+        int threads = warmup.isParallel() ? warmup.getThreads() : 1;
+        List<String> hostList = redisConfigProperties.getHostList();
+        List<RedisTemplate<String, Object>> redisTemplateList = ParallelInitializer.map(hostList,
+                hostName -> this.createTemplate(jedisPoolConfig, hostName, hostName), threads);
         RedisTemplateRoute route = new RedisTemplateRoute(redisTemplateList);
+        List<RedisConnectionFactory> factories = new ArrayList<>();
+        for (int i = 0; i < redisTemplateList.size(); i++) {
+            factories.add(redisTemplateList.get(i).getConnectionFactory());
+            String hostName = hostList.get(i);
+            ShardProperties shard = redisConfigProperties.getShard(hostName);
+            if (shard != null && !CollectionUtils.isEmpty(shard.getReplicaList())) {
+                List<RedisTemplate<String, Object>> replicas = ParallelInitializer.map(shard.getReplicaList(),
+                        replicaHostName -> this.createTemplate(jedisPoolConfig, hostName, replicaHostName), threads);
+                for (RedisTemplate<String, Object> replica : replicas) {
+                    factories.add(replica.getConnectionFactory());
+                }
+                route.setReplicas(redisTemplateList.get(i), replicas);
+            }
+        }
+        if (warmup.isPrefill()) {
+            ParallelInitializer.map(factories, RedisAutoConfiguration::prefill, threads);
+        }
         return route;
     }
 
+    /**
+     * 把连接池预先建立到minIdle个连接，失败时只记录日志，由连接池在使用时再建立
+     */
+    private static Void prefill(RedisConnectionFactory connectionFactory) {
+        if (!(connectionFactory instanceof ShardJedisConnectionFactory)) {
+            return null;
+        }
+        ShardJedisConnectionFactory factory = (ShardJedisConnectionFactory) connectionFactory;
+        Pool<Jedis> pool = factory.getPool();
+        int minIdle = factory.getPoolConfig().getMinIdle();
+        if (pool != null && minIdle > 0) {
+            try {
+                pool.addObjects(minIdle);
+            } catch (RuntimeException e) {
+                logger.warn("prefill redis pool failed,host={}", factory.getHostName(), e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param shardHostName 所属分片的主节点，用于查找分片配置
+     * @param hostName      实际连接的节点
+     */
+    private RedisTemplate<String, Object> createTemplate(JedisPoolConfig jedisPoolConfig, String shardHostName, String hostName) {
+        RedisConnectionFactory connectionFactory;
+        if (redisConfigProperties.getWarmup().getLazyHosts().contains(hostName)) {
+            JedisPoolConfig poolConfig = shardPoolConfig(jedisPoolConfig, shardHostName);
+            connectionFactory = new LazyConnectionFactory(hostName, () -> redisConfigProperties.getDriver() == RedisDriver.LETTUCE
+                    ? multiplexedConnectionFactory(hostName) : jedisConnectionFactorys(poolConfig, hostName));
+        } else if (redisConfigProperties.getDriver() == RedisDriver.LETTUCE) {
+            connectionFactory = multiplexedConnectionFactory(hostName);
+        } else {
+            connectionFactory = jedisConnectionFactorys(shardPoolConfig(jedisPoolConfig, shardHostName), hostName);
+        }
+        return this.getRedisTemplate(connectionFactory);
+    }
+
+    /**
+     * 分片有单独配置时复制一份全局连接池配置再覆盖，否则共用全局配置
+     */
+    private JedisPoolConfig shardPoolConfig(JedisPoolConfig jedisPoolConfig, String hostName) {
+        ShardProperties shard = redisConfigProperties.getShard(hostName);
+        if (shard == null || !shard.hasPoolOverride()) {
+            return jedisPoolConfig;
+        }
+        JedisPoolConfig shardPoolConfig = new JedisPoolConfig();
+        shardPoolConfig.setMaxTotal(shard.getMaxTotal() != null ? shard.getMaxTotal() : jedisPoolConfig.getMaxTotal());
+        shardPoolConfig.setMaxIdle(shard.getMaxIdle() != null ? shard.getMaxIdle() : jedisPoolConfig.getMaxIdle());
+        shardPoolConfig.setMinIdle(shard.getMinIdle() != null ? shard.getMinIdle() : jedisPoolConfig.getMinIdle());
+        shardPoolConfig.setMaxWaitMillis(shard.getMaxWaitMillis() != null ? shard.getMaxWaitMillis() : jedisPoolConfig.getMaxWaitMillis());
+        shardPoolConfig.setMinEvictableIdleTimeMillis(jedisPoolConfig.getMinEvictableIdleTimeMillis());
+        shardPoolConfig.setTimeBetweenEvictionRunsMillis(jedisPoolConfig.getTimeBetweenEvictionRunsMillis());
+        return shardPoolConfig;
+    }
+
     private JedisConnectionFactory jedisConnectionFactorys(JedisPoolConfig jedisPoolConfig, String hostName) {
-        JedisConnectionFactory factory = new JedisConnectionFactory();
+        JedisConnectionFactory factory = new ShardJedisConnectionFactory();
         factory.setPoolConfig(jedisPoolConfig);
         factory.setHostName(hostName);
         factory.setPort(redisConfigProperties.getPort());
@@ -66,17 +178,20 @@ public class RedisAutoConfiguration {
         factory.setTimeout(redisConfigProperties.getTimeout());
         factory.setUsePool(redisConfigProperties.isUsePool());
         factory.setDatabase(redisConfigProperties.getDatabase());
+        factory.afterPropertiesSet();
         return factory;
     }
 
-    private RedisTemplate<String, Object> getRedisTemplate(JedisConnectionFactory redisConnectionFactory) {
+    private RedisConnectionFactory multiplexedConnectionFactory(String hostName) {
+        MultiplexedConnectionFactory factory = new MultiplexedConnectionFactory(hostName, redisConfigProperties);
+        factory.afterPropertiesSet();
+        return factory;
+    }
+
+    private RedisTemplate<String, Object> getRedisTemplate(RedisConnectionFactory redisConnectionFactory) {
         RedisSerializer<String> stringSerializer = new StringRedisSerializer();
         Jackson2JsonRedisSerializer<Object> jackson2JsonRedisSerializer = new Jackson2JsonRedisSerializer<>(Object.class);
-        ObjectMapper om = new ObjectMapper();
-        om.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
-        om.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL);
-        om.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        jackson2JsonRedisSerializer.setObjectMapper(om);
+        jackson2JsonRedisSerializer.setObjectMapper(ObjectMapperUtil.createTypedMapper());
         RedisTemplate<String, Object> template = new RedisTemplate<>();
         template.setConnectionFactory(redisConnectionFactory);
         template.setKeySerializer(stringSerializer);
@@ -88,6 +203,17 @@ public class RedisAutoConfiguration {
     }
 
     @Bean
+    public ShardPoolMetrics shardPoolMetrics(RedisTemplateRoute redisTemplateRoute) {
+        return new ShardPoolMetrics(redisTemplateRoute);
+    }
+
+    @Bean
+    public KeyspaceProfiler keyspaceProfiler(RedisTemplateRoute redisTemplateRoute) {
+        return new KeyspaceProfiler(redisTemplateRoute, redisConfigProperties.getProfiler());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "common.redisson", name = "sharded", havingValue = "false", matchIfMissing = true)
     public Config config() {
         Config config = new Config();
         config.useSingleServer().setAddress(redissonConfigProperties.getHostName() + ":" + redissonConfigProperties.getPort()).setDatabase(redissonConfigProperties.getDatabase()).setConnectionPoolSize(redissonConfigProperties.getConnectPoolSize()).setPassword(redissonConfigProperties.getPassword());
@@ -95,12 +221,132 @@ public class RedisAutoConfiguration {
     }
 
     @Bean
+    @ConditionalOnProperty(prefix = "common.redisson", name = "sharded", havingValue = "false", matchIfMissing = true)
+    @Lazy
     public RedissonClient redissonClient(Config config) {
         return Redisson.create(config);
     }
 
     @Bean
-    public RedisFacade redisFacade(RedisTemplateRoute redisTemplateRoute, RedissonClient redissonClient) {
-        return new RedisFacade(redisConfigProperties, redisTemplateRoute, redissonClient);
+    @ConditionalOnProperty(prefix = "common.redisson", name = "sharded", havingValue = "false", matchIfMissing = true)
+    public LockProvider singleServerLockProvider(ObjectProvider<RedissonClient> redissonClient) {
+        if (redissonConfigProperties.isLazy()) {
+            return new SingleServerLockProvider(redissonClient);
+        }
+        return new SingleServerLockProvider(redissonClient.getObject());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "common.redisson", name = "sharded", havingValue = "true")
+    public LockProvider shardedLockProvider() {
+        return new ShardedLockProvider(redisConfigProperties, redissonConfigProperties);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "common.redis.batch", name = "enabled", havingValue = "true")
+    public CommandBatcher commandBatcher(RedisTemplateRoute redisTemplateRoute) {
+        return new CommandBatcher(redisTemplateRoute, redisConfigProperties.getBatch(), redisConfigProperties.getTimeout() + redisConfigProperties.getMaxWaitMillis());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "common.redis.breaker", name = "enabled", havingValue = "true")
+    public ShardGuards shardGuards(RedisTemplateRoute redisTemplateRoute) {
+        return new ShardGuards(redisTemplateRoute, redisConfigProperties.getBreaker());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "common.redis.replica", name = "enabled", havingValue = "true")
+    public ReplicaReader replicaReader(RedisTemplateRoute redisTemplateRoute) {
+        return new ReplicaReader(redisTemplateRoute, redisConfigProperties.getReplica(), redisConfigProperties.getTimeout() + redisConfigProperties.getMaxWaitMillis());
+    }
+
+    @Bean
+    public BloomFilterRegistry bloomFilterRegistry(RedisTemplateRoute redisTemplateRoute) {
+        return new BloomFilterRegistry(redisTemplateRoute, redisConfigProperties.getBloom());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "common.redis.cache", name = "enabled", havingValue = "true")
+    @ConditionalOnMissingBean(CacheManager.class)
+    public CacheManager shardedRedisCacheManager(RedisTemplateRoute redisTemplateRoute, KeyScanner keyScanner,
+                                                 ObjectProvider<DictionaryCompressor> dictionaryCompressor) {
+        int ttlJitterPercent = redisConfigProperties.getExpiry().getTtlJitterPercent();
+        return new ShardedRedisCacheManager(redisTemplateRoute, keyScanner, redisConfigProperties.getCache(), ttlJitterPercent,
+                dictionaryCompressor.getIfAvailable(), new KeyPolicyTable(redisConfigProperties.getPolicies(), ttlJitterPercent));
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "common.redis.counter", name = "enabled", havingValue = "true")
+    public BufferedCounter bufferedCounter(RedisTemplateRoute redisTemplateRoute) {
+        return new BufferedCounter(redisTemplateRoute, redisConfigProperties.getCounter());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "common.redis.writeBehind", name = "enabled", havingValue = "true")
+    public WriteBehindQueue writeBehindQueue(RedisTemplateRoute redisTemplateRoute) {
+        return new WriteBehindQueue(redisTemplateRoute, redisConfigProperties.getWriteBehind());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "common.redis.nearCache", name = "enabled", havingValue = "true")
+    public NearCache nearCache() {
+        return new NearCache(redisConfigProperties.getNearCache());
+    }
+
+    @Bean
+    public KeyScanner keyScanner(RedisTemplateRoute redisTemplateRoute) {
+        return new KeyScanner(redisTemplateRoute, redisConfigProperties.getScan());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "common.redis.dictionary", name = "enabled", havingValue = "true")
+    public DictionaryCompressor dictionaryCompressor(RedisTemplateRoute redisTemplateRoute, KeyScanner keyScanner) {
+        return new DictionaryCompressor(redisTemplateRoute, redisConfigProperties.getDictionary(), keyScanner);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "common.redis.chunk", name = "enabled", havingValue = "true")
+    public ChunkedValueStore chunkedValueStore(RedisTemplateRoute redisTemplateRoute, ObjectProvider<ShardGuards> shardGuards) {
+        ChunkedValueStore store = new ChunkedValueStore(redisTemplateRoute, redisConfigProperties.getChunk());
+        store.setShardGuards(shardGuards.getIfAvailable());
+        return store;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "common.redis.hotSet", name = "enabled", havingValue = "true")
+    public HotKeyTracker hotKeyTracker() {
+        return new HotKeyTracker(redisConfigProperties.getHotSet());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "common.redis.hotSet", name = "enabled", havingValue = "true")
+    public HotSetSnapshotter hotSetSnapshotter(RedisTemplateRoute redisTemplateRoute, HotKeyTracker hotKeyTracker) {
+        return new HotSetSnapshotter(redisTemplateRoute, redisConfigProperties.getHotSet(), hotKeyTracker);
+    }
+
+    @Bean
+    public static BatchCacheablePostProcessor batchCacheablePostProcessor() {
+        return new BatchCacheablePostProcessor();
+    }
+
+    @Bean
+    public RedisFacade redisFacade(RedisTemplateRoute redisTemplateRoute, LockProvider lockProvider, ObjectProvider<CommandBatcher> commandBatcher,
+                                   ObjectProvider<ShardGuards> shardGuards, ObjectProvider<ReplicaReader> replicaReader,
+                                   ObjectProvider<BufferedCounter> bufferedCounter, ObjectProvider<WriteBehindQueue> writeBehindQueue,
+                                   KeyScanner keyScanner, ObjectProvider<NearCache> nearCache,
+                                   ObjectProvider<DictionaryCompressor> dictionaryCompressor, ObjectProvider<ChunkedValueStore> chunkedValueStore,
+                                   ObjectProvider<HotKeyTracker> hotKeyTracker) {
+        RedisFacade redisFacade = new RedisFacade(redisConfigProperties, redisTemplateRoute, lockProvider);
+        redisFacade.setCommandBatcher(commandBatcher.getIfAvailable());
+        redisFacade.setShardGuards(shardGuards.getIfAvailable());
+        redisFacade.setReplicaReader(replicaReader.getIfAvailable());
+        redisFacade.setBufferedCounter(bufferedCounter.getIfAvailable());
+        redisFacade.setWriteBehindQueue(writeBehindQueue.getIfAvailable());
+        redisFacade.setKeyScanner(keyScanner);
+        redisFacade.setNearCache(nearCache.getIfAvailable());
+        redisFacade.setDictionaryCompressor(dictionaryCompressor.getIfAvailable());
+        redisFacade.setChunkedValueStore(chunkedValueStore.getIfAvailable());
+        redisFacade.setHotKeyTracker(hotKeyTracker.getIfAvailable());
+        return redisFacade;
     }
 }
@@ -0,0 +1,91 @@
+package com.wp.redis.batch;
+
+import com.wp.redis.properties.BatchProperties;
+import com.wp.redis.routes.RedisTemplateRoute;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 按分片合并多个线程同时发出的小命令，在一个时间窗口内(或达到数量上限)作为一次流水线发送，
+ * 再把每条命令的结果分别返回给各自的调用线程
+ */
+public class CommandBatcher implements DisposableBean {
+
+    private final static long DEFAULT_WAIT_MILLIS = 5000;
+
+    private final Map<RedisTemplate<String, Object>, ShardBatchQueue> queues = new IdentityHashMap<>();
+
+    /**
+     * 调用方等待结果的最长时间
+     */
+    private final long waitMillis;
+
+    public CommandBatcher(RedisTemplateRoute redisTemplateRoute, BatchProperties batchProperties, long waitMillis) {
+        this.waitMillis = waitMillis > 0 ? waitMillis : DEFAULT_WAIT_MILLIS;
+        List<RedisTemplate<String, Object>> templates = redisTemplateRoute.getTemplates();
+        for (int i = 0; i < templates.size(); i++) {
+            queues.put(templates.get(i), new ShardBatchQueue("redis-batch-" + i, templates.get(i), batchProperties.getWindowMicros(), batchProperties.getMaxBatchSize()));
+        }
+    }
+
+    /**
+     * 提交命令并等待结果，返回值与RedisTemplate流水线的反序列化结果一致。
+     * 每个命令只能发送一条有返回值的命令：流水线转换结果时会去掉状态回复(SET、SETEX等返回的OK)，
+     * 结果按位置对应命令，所以状态命令不能提交到这里
+     *
+     * @param template 命令所属分片
+     * @param command  基于原始字节的命令
+     * @return
+     */
+    public Object execute(RedisTemplate<String, Object> template, RedisCallback<?> command) {
+        CompletableFuture<Object> future = queues.get(template).submit(command);
+        try {
+            return future.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisSystemException("interrupted while waiting for batched command", e);
+        } catch (TimeoutException e) {
+            // 还在排队的命令会被后台线程跳过；已经发送的命令无法撤回
+            future.cancel(false);
+            throw new QueryTimeoutException("batched command timed out after " + waitMillis + "ms", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RedisSystemException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 当前各分片排队中的命令数
+     *
+     * @return
+     */
+    public List<Integer> getPendingCounts() {
+        List<Integer> pending = new ArrayList<>(queues.size());
+        for (ShardBatchQueue queue : queues.values()) {
+            pending.add(queue.size());
+        }
+        return pending;
+    }
+
+    @Override
+    public void destroy() {
+        for (ShardBatchQueue queue : queues.values()) {
+            queue.shutdown();
+        }
+    }
+}
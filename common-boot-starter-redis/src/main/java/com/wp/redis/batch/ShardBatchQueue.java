@@ -0,0 +1,202 @@
+package com.wp.redis.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个分片的命令队列，由一个后台线程收集并以流水线方式发送
+ */
+class ShardBatchQueue implements Runnable {
+
+    private static Logger logger = LoggerFactory.getLogger(ShardBatchQueue.class);
+
+    private final RedisTemplate<String, Object> template;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final LinkedBlockingQueue<PendingCommand> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    ShardBatchQueue(String name, RedisTemplate<String, Object> template, int windowMicros, int maxBatchSize) {
+        this.template = template;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.worker = new Thread(this, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    CompletableFuture<Object> submit(RedisCallback<?> command) {
+        PendingCommand pending = new PendingCommand(command);
+        if (!running) {
+            pending.future.completeExceptionally(new IllegalStateException("command batcher is shut down"));
+            return pending.future;
+        }
+        queue.add(pending);
+        return pending.future;
+    }
+
+    int size() {
+        return queue.size();
+    }
+
+    void shutdown() {
+        running = false;
+        worker.interrupt();
+    }
+
+    @Override
+    public void run() {
+        List<PendingCommand> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingCommand first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingCommand next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                queue.drainTo(batch, maxBatchSize - batch.size());
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingCommand> batch) {
+        // 调用方等待超时后已取消的命令不再发送，避免超时报错的写命令之后仍被执行
+        batch.removeIf(pending -> pending.future.isCancelled());
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Object> results;
+        try {
+            results = template.execute((RedisCallback<List<Object>>) connection -> {
+                connection.openPipeline();
+                boolean closed = false;
+                try {
+                    for (PendingCommand pending : batch) {
+                        pending.command.doInRedis(connection);
+                    }
+                    closed = true;
+                    return connection.closePipeline();
+                } finally {
+                    if (!closed) {
+                        closePipelineQuietly(connection);
+                    }
+                }
+            });
+        } catch (RedisPipelineException e) {
+            results = e.getPipelineResult();
+        } catch (RuntimeException e) {
+            logger.error("redis batch pipeline failed,size={}", batch.size(), e);
+            for (PendingCommand pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+            return;
+        }
+        if (results == null || results.size() != batch.size()) {
+            // 结果数与命令数不一致时无法对应(有命令只返回状态回复或发送了多条命令)，全部失败而不是把结果交给错误的调用方
+            IllegalStateException e = new IllegalStateException("redis batch pipeline returned " + (results == null ? 0 : results.size())
+                    + " results for " + batch.size() + " commands");
+            logger.error(e.getMessage());
+            for (PendingCommand pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            PendingCommand pending = batch.get(i);
+            Object result = results.get(i);
+            if (result instanceof Exception) {
+                pending.future.completeExceptionally((Exception) result);
+            } else {
+                try {
+                    pending.future.complete(deserialize(result));
+                } catch (RuntimeException e) {
+                    pending.future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    private static void closePipelineQuietly(RedisConnection connection) {
+        try {
+            connection.closePipeline();
+        } catch (RuntimeException e) {
+            logger.debug("close pipeline after failure", e);
+        }
+    }
+
+    /**
+     * 与RedisTemplate.executePipelined相同的反序列化规则
+     */
+    @SuppressWarnings("unchecked")
+    private Object deserialize(Object raw) {
+        RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) template.getValueSerializer();
+        if (raw instanceof byte[]) {
+            return valueSerializer.deserialize((byte[]) raw);
+        }
+        if (raw instanceof Map) {
+            RedisSerializer<Object> hashKeySerializer = (RedisSerializer<Object>) template.getHashKeySerializer();
+            RedisSerializer<Object> hashValueSerializer = (RedisSerializer<Object>) template.getHashValueSerializer();
+            Map<Object, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) raw).entrySet()) {
+                Object key = entry.getKey() instanceof byte[] ? hashKeySerializer.deserialize((byte[]) entry.getKey()) : entry.getKey();
+                Object value = entry.getValue() instanceof byte[] ? hashValueSerializer.deserialize((byte[]) entry.getValue()) : entry.getValue();
+                map.put(key, value);
+            }
+            return map;
+        }
+        if (raw instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (List<?>) raw) {
+                list.add(item instanceof byte[] ? valueSerializer.deserialize((byte[]) item) : item);
+            }
+            return list;
+        }
+        if (raw instanceof Set) {
+            Set<Object> set = new LinkedHashSet<>();
+            for (Object item : (Set<?>) raw) {
+                set.add(item instanceof byte[] ? valueSerializer.deserialize((byte[]) item) : item);
+            }
+            return set;
+        }
+        return raw;
+    }
+
+    private static class PendingCommand {
+        private final RedisCallback<?> command;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        private PendingCommand(RedisCallback<?> command) {
+            this.command = command;
+        }
+    }
+}
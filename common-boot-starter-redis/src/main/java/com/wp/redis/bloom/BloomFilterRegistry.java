@@ -0,0 +1,69 @@
+package com.wp.redis.bloom;
+
+import com.wp.redis.properties.BloomProperties;
+import com.wp.redis.routes.RedisTemplateRoute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 管理布隆过滤器，定时从redis同步各过滤器的本地副本
+ */
+public class BloomFilterRegistry implements DisposableBean {
+
+    private static Logger logger = LoggerFactory.getLogger(BloomFilterRegistry.class);
+
+    private final RedisTemplateRoute redisTemplateRoute;
+    private final BloomProperties bloomProperties;
+    private final ConcurrentMap<String, RedisBloomFilter> filters = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    public BloomFilterRegistry(RedisTemplateRoute redisTemplateRoute, BloomProperties bloomProperties) {
+        this.redisTemplateRoute = redisTemplateRoute;
+        this.bloomProperties = bloomProperties;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-bloom-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int refreshSeconds = Math.max(1, bloomProperties.getRefreshSeconds());
+        scheduler.scheduleWithFixedDelay(this::refreshAll, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 获取过滤器，不存在时创建并从redis加载；同名过滤器的参数以第一次创建为准
+     *
+     * @param name               过滤器名称
+     * @param expectedInsertions 预计元素数
+     * @param fpp                期望误判率，如0.01
+     * @return
+     */
+    public RedisBloomFilter getOrCreate(String name, long expectedInsertions, double fpp) {
+        return filters.computeIfAbsent(name, n -> {
+            RedisBloomFilter filter = new RedisBloomFilter(n, expectedInsertions, fpp, bloomProperties.getSegments(), redisTemplateRoute);
+            filter.refresh();
+            return filter;
+        });
+    }
+
+    private void refreshAll() {
+        for (RedisBloomFilter filter : filters.values()) {
+            try {
+                filter.refresh();
+            } catch (RuntimeException e) {
+                logger.warn("refresh bloom filter {} failed", filter.getName(), e);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,595 @@
+package com.wp.redis.bloom;
+
+import com.wp.redis.routes.RedisTemplateRoute;
+import com.wp.redis.utils.ScriptUtil;
+import org.perf4j.StopWatch;
+import org.perf4j.slf4j.Slf4JStopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import redis.clients.util.MurmurHash;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 基于redis bitmap的布隆过滤器，防止不存在的id穿透到缓存和数据库
+ * bitmap拆成多段，每段是一个redis key，经过TemplateRoute分散到各分片；
+ * 一个id的所有bit都落在同一段里，写入只需一次往返。本地保留一份完整副本，判断是否存在时不访问redis。
+ * <p>
+ * 段的值布局：bitmap 修改计数(u32) 重建标记(u8)。写入有新的bit时修改计数加1，同步时只下载计数变化的段；
+ * 重建开始时给旧版本的段打上重建标记，只有写入带标记的段时才需要记入重建日志。
+ */
+public class RedisBloomFilter {
+
+    private static Logger logger = LoggerFactory.getLogger(RedisBloomFilter.class);
+    private static Logger cacheLogger = LoggerFactory.getLogger("redisCachePerf4j");
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int SEED_SEGMENT = 0x5bd1e995;
+    private static final int SEED_OFFSET = 0x1b873593;
+    /**
+     * 重建期间记录新增id的集合的过期时间，只在重建的实例异常退出时起作用
+     */
+    private static final long REBUILD_LOG_TTL_MILLIS = TimeUnit.DAYS.toMillis(1);
+    /**
+     * 段的bitmap之后的修改计数与重建标记的字节数
+     */
+    private static final int COUNTER_BYTES = 4;
+    private static final int TAIL_BYTES = COUNTER_BYTES + 1;
+    /**
+     * redis字符串的最大长度
+     */
+    private static final long MAX_STRING_BYTES = 512L << 20;
+    private static final long COUNTER_MASK = 0xFFFFFFFFL;
+    /**
+     * KEYS[1] 段, ARGV[1] 1:段不存在时不写入, ARGV[2] 修改计数的bit位置, ARGV[3] 重建标记的bit位置, ARGV[4..] bit位置；
+     * 返回 {0, 0}:段不存在，否则 {写入后的修改计数+1, 重建标记}
+     */
+    private static final byte[] SET_BITS = ("if ARGV[1] == '1' and redis.call('exists', KEYS[1]) == 0 then return {0, 0} end\n"
+            + "local changed = false\n"
+            + "for i = 4, #ARGV do\n"
+            + "  if redis.call('setbit', KEYS[1], ARGV[i], 1) == 0 then changed = true end\n"
+            + "end\n"
+            + "local counter\n"
+            + "if changed then\n"
+            + "  counter = redis.call('bitfield', KEYS[1], 'INCRBY', 'u32', ARGV[2], 1)[1]\n"
+            + "else\n"
+            + "  counter = redis.call('bitfield', KEYS[1], 'GET', 'u32', ARGV[2])[1]\n"
+            + "end\n"
+            + "return {counter + 1, redis.call('bitfield', KEYS[1], 'GET', 'u8', ARGV[3])[1]}").getBytes(UTF_8);
+    /**
+     * KEYS[1] 重建日志, ARGV id；没有在重建时不记录
+     */
+    private static final DefaultRedisScript<Long> LOG_REBUILDING = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 0 then return 0 end\n"
+                    + "for i = 1, #ARGV, 1000 do\n"
+                    + "  redis.call('sadd', KEYS[1], unpack(ARGV, i, math.min(i + 999, #ARGV)))\n"
+                    + "end\n"
+                    + "return 1", Long.class);
+
+    private final String name;
+    private final RedisTemplateRoute redisTemplateRoute;
+    private final int segments;
+    private final long segmentBits;
+    private final int segmentBytes;
+    private final int hashFunctions;
+
+    private volatile Mirror mirror;
+
+    /**
+     * @param name               过滤器名称，用于组成redis key
+     * @param expectedInsertions 预计元素数
+     * @param fpp                期望误判率
+     * @param segments           分段数
+     */
+    public RedisBloomFilter(String name, long expectedInsertions, double fpp, int segments, RedisTemplateRoute redisTemplateRoute) {
+        this.name = name;
+        this.redisTemplateRoute = redisTemplateRoute;
+        this.segments = Math.max(1, segments);
+        long totalBits = (long) Math.ceil(-Math.max(1, expectedInsertions) * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        long bytes = (totalBits / this.segments) / 8 + 1;
+        if (bytes + TAIL_BYTES > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("bloom filter " + name + " needs " + bytes
+                    + " bytes per segment, more than the 512MB redis string limit, increase segments");
+        }
+        this.segmentBytes = (int) bytes;
+        this.segmentBits = bytes * 8;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) totalBits / Math.max(1, expectedInsertions) * Math.log(2)));
+        this.mirror = new Mirror(0, emptySegments(), unknownCounters());
+    }
+
+    /**
+     * 是否可能存在，只查本地副本，返回false时一定不存在
+     *
+     * @param id
+     * @return
+     */
+    public boolean mightContain(String id) {
+        byte[] data = id.getBytes(UTF_8);
+        byte[] segment = mirror.segments[segment(data)];
+        for (long offset : offsets(data)) {
+            if ((segment[(int) (offset >>> 3)] & (0x80 >>> (offset & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 添加id，写入redis并更新本地副本
+     *
+     * @param id
+     */
+    public void put(String id) {
+        List<String> ids = new ArrayList<>(1);
+        ids.add(id);
+        putAll(ids);
+    }
+
+    /**
+     * 批量添加，按分片流水线写入。
+     * 写入的段带有重建标记时记入重建日志，切换版本后由重建的实例重放到新版本；
+     * 写入的段已被删除或记录日志时版本已经切换，同步版本后重新写入
+     *
+     * @param ids
+     */
+    public void putAll(Collection<String> ids) {
+        StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        long currentVersion = mirror.version;
+        Written written = writeBits(currentVersion, ids, true);
+        if (!written.rebuilding.isEmpty()) {
+            logRebuilding(written.rebuilding);
+        }
+        if (!written.missing.isEmpty() || !written.rebuilding.isEmpty()) {
+            long remoteVersion = readVersion();
+            if (remoteVersion != mirror.version) {
+                refresh();
+            }
+            List<String> rewrite = written.missing;
+            if (remoteVersion != currentVersion) {
+                rewrite.addAll(written.rebuilding);
+            }
+            if (!rewrite.isEmpty()) {
+                // 版本未变化时是首次重建前(版本0)或段被淘汰，直接写入
+                writeBits(mirror.version, rewrite, false);
+            }
+        }
+        stopWatch.stop("redis.bloom.put");
+    }
+
+    /**
+     * 用完整的id集合重建过滤器：写入新版本的bitmap后切换版本号，再删除旧版本，
+     * 重建过程中其它实例仍使用旧版本；读取id前给旧版本的段打上重建标记，重建期间新增的id记入重建日志，切换后重放到新版本
+     *
+     * @param ids 全量id
+     * @return 写入的id数
+     */
+    public long rebuild(Iterator<String> ids) {
+        StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        RedisTemplate<String, Object> logTemplate = redisTemplateRoute.getTemplate(rebuildLogKey());
+        byte[] rawLogKey = rawKey(logTemplate, rebuildLogKey());
+        logTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            // 空字符串占位，集合存在即表示正在重建
+            connection.sAdd(rawLogKey, new byte[0]);
+            connection.pExpire(rawLogKey, REBUILD_LOG_TTL_MILLIS);
+            return null;
+        });
+        long oldVersion = readVersion();
+        markRebuilding(oldVersion);
+        byte[][] rebuilt = emptySegments();
+        long count = 0;
+        while (ids.hasNext()) {
+            byte[] data = ids.next().getBytes(UTF_8);
+            setLocal(rebuilt[segment(data)], offsets(data));
+            count++;
+        }
+        stopWatch.lap("redis.bloom.rebuild.build");
+        long newVersion = Math.max(System.currentTimeMillis(), Math.max(oldVersion, mirror.version) + 1);
+        Map<RedisTemplate<String, Object>, List<Integer>> segmentsByShard = groupSegments(newVersion);
+        for (Map.Entry<RedisTemplate<String, Object>, List<Integer>> entry : segmentsByShard.entrySet()) {
+            RedisTemplate<String, Object> template = entry.getKey();
+            template.executePipelined((RedisCallback<Object>) connection -> {
+                for (Integer segment : entry.getValue()) {
+                    // 修改计数与重建标记为0
+                    connection.set(rawKey(template, segmentKey(newVersion, segment)), Arrays.copyOf(rebuilt[segment], segmentBytes + TAIL_BYTES));
+                }
+                return null;
+            });
+        }
+        RedisTemplate<String, Object> versionTemplate = redisTemplateRoute.getTemplate(versionKey());
+        versionTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.set(rawKey(versionTemplate, versionKey()), String.valueOf(newVersion).getBytes(UTF_8));
+            return null;
+        });
+        AtomicLongArray counters = new AtomicLongArray(segments);
+        this.mirror = new Mirror(newVersion, rebuilt, counters);
+        deleteSegments(oldVersion);
+        // 旧版本删除后，仍按旧版本写入的实例会发现段不存在并改写新版本；删除前写入旧版本的id都在日志中
+        Set<byte[]> logged = logTemplate.execute((RedisCallback<Set<byte[]>>) connection -> connection.sMembers(rawLogKey));
+        List<String> replay = new ArrayList<>();
+        if (logged != null) {
+            for (byte[] id : logged) {
+                if (id.length > 0) {
+                    replay.add(new String(id, UTF_8));
+                }
+            }
+        }
+        if (!replay.isEmpty()) {
+            writeBits(newVersion, replay, false);
+        }
+        logTemplate.execute((RedisCallback<Object>) connection -> connection.del(rawLogKey));
+        stopWatch.stop("redis.bloom.rebuild");
+        logger.info("bloom filter {} rebuilt,version={},ids={},replayed={}", name, newVersion, count, replay.size());
+        return count;
+    }
+
+    /**
+     * 从redis同步本地副本：版本变化时整体替换；否则只下载修改计数变化的段，合并其它实例写入的bit
+     */
+    public void refresh() {
+        StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        long remoteVersion = readVersion();
+        Mirror local = mirror;
+        if (remoteVersion != local.version) {
+            List<Integer> all = new ArrayList<>(segments);
+            for (int segment = 0; segment < segments; segment++) {
+                all.add(segment);
+            }
+            byte[][] remote = readSegments(remoteVersion, all);
+            byte[][] replaced = emptySegments();
+            AtomicLongArray counters = unknownCounters();
+            for (int segment = 0; segment < segments; segment++) {
+                if (remote[segment] != null) {
+                    System.arraycopy(remote[segment], 0, replaced[segment], 0, Math.min(remote[segment].length, segmentBytes));
+                    counters.set(segment, counter(remote[segment]));
+                }
+            }
+            this.mirror = new Mirror(remoteVersion, replaced, counters);
+            stopWatch.stop("redis.bloom.refresh.full");
+            return;
+        }
+        long[] remoteCounters = readCounters(remoteVersion);
+        List<Integer> changed = new ArrayList<>();
+        for (int segment = 0; segment < segments; segment++) {
+            if (remoteCounters[segment] != local.counters.get(segment)) {
+                changed.add(segment);
+            }
+        }
+        if (!changed.isEmpty()) {
+            byte[][] remote = readSegments(remoteVersion, changed);
+            for (Integer segment : changed) {
+                byte[] data = remote[segment];
+                if (data == null) {
+                    continue;
+                }
+                byte[] target = local.segments[segment];
+                synchronized (target) {
+                    for (int i = 0; i < Math.min(data.length, segmentBytes); i++) {
+                        target[i] |= data[i];
+                    }
+                }
+                local.counters.set(segment, counter(data));
+            }
+        }
+        stopWatch.stop("redis.bloom.refresh");
+    }
+
+    /**
+     * 是否已经用全量id重建过，未重建的过滤器不能用来拦截请求
+     *
+     * @return
+     */
+    public boolean isInitialized() {
+        return mirror.version > 0;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getVersion() {
+        return mirror.version;
+    }
+
+    /**
+     * 按段分组，各分片流水线SETBIT，同时更新本地副本
+     *
+     * @param segmentVersion 写入的版本
+     * @param ids
+     * @param mustExist      段不存在时不写入
+     * @return 因段不存在没有写入的id，以及写入了带重建标记的段的id
+     */
+    private Written writeBits(long segmentVersion, Collection<String> ids, boolean mustExist) {
+        Map<Integer, List<String>> idsBySegment = new HashMap<>();
+        Map<Integer, List<Long>> offsetsBySegment = new HashMap<>();
+        Mirror snapshot = mirror;
+        byte[][] local = snapshot.segments;
+        for (String id : ids) {
+            byte[] data = id.getBytes(UTF_8);
+            int segment = segment(data);
+            long[] idOffsets = offsets(data);
+            idsBySegment.computeIfAbsent(segment, k -> new ArrayList<>()).add(id);
+            List<Long> offsets = offsetsBySegment.computeIfAbsent(segment, k -> new ArrayList<>());
+            for (long offset : idOffsets) {
+                offsets.add(offset);
+            }
+            setLocal(local[segment], idOffsets);
+        }
+        Map<RedisTemplate<String, Object>, List<Integer>> segmentsByShard = new IdentityHashMap<>();
+        for (Integer segment : idsBySegment.keySet()) {
+            RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(segmentKey(segmentVersion, segment));
+            segmentsByShard.computeIfAbsent(template, t -> new ArrayList<>()).add(segment);
+        }
+        byte[] flag = (mustExist ? "1" : "0").getBytes(UTF_8);
+        byte[] counterOffset = String.valueOf(segmentBits).getBytes(UTF_8);
+        byte[] rebuildingOffset = String.valueOf(segmentBits + COUNTER_BYTES * 8).getBytes(UTF_8);
+        Written written = new Written();
+        for (Map.Entry<RedisTemplate<String, Object>, List<Integer>> entry : segmentsByShard.entrySet()) {
+            RedisTemplate<String, Object> template = entry.getKey();
+            List<Integer> segmentList = entry.getValue();
+            List<Object> results = template.execute((RedisCallback<List<Object>>) connection -> {
+                connection.openPipeline();
+                for (Integer segment : segmentList) {
+                    List<Long> offsets = offsetsBySegment.get(segment);
+                    byte[][] keysAndArgs = new byte[4 + offsets.size()][];
+                    keysAndArgs[0] = rawKey(template, segmentKey(segmentVersion, segment));
+                    keysAndArgs[1] = flag;
+                    keysAndArgs[2] = counterOffset;
+                    keysAndArgs[3] = rebuildingOffset;
+                    for (int i = 0; i < offsets.size(); i++) {
+                        keysAndArgs[4 + i] = String.valueOf(offsets.get(i)).getBytes(UTF_8);
+                    }
+                    connection.eval(SET_BITS, ReturnType.MULTI, 1, keysAndArgs);
+                }
+                return connection.closePipeline();
+            });
+            for (int i = 0; i < segmentList.size(); i++) {
+                Object result = results != null && i < results.size() ? results.get(i) : null;
+                if (!(result instanceof List) || ((List<?>) result).size() < 2) {
+                    continue;
+                }
+                Integer segment = segmentList.get(i);
+                long counter = ((Number) ((List<?>) result).get(0)).longValue() - 1;
+                if (counter < 0) {
+                    written.missing.addAll(idsBySegment.get(segment));
+                    continue;
+                }
+                if (((Number) ((List<?>) result).get(1)).longValue() != 0) {
+                    written.rebuilding.addAll(idsBySegment.get(segment));
+                }
+                if (segmentVersion == snapshot.version) {
+                    // 只有自己的写入时本地副本已经包含这些bit，不必在同步时重新下载
+                    snapshot.counters.compareAndSet(segment, (counter - 1) & COUNTER_MASK, counter);
+                }
+            }
+        }
+        return written;
+    }
+
+    /**
+     * 重建日志还在时把id记入，重建已结束时不记录
+     */
+    private void logRebuilding(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        RedisTemplate<String, Object> logTemplate = redisTemplateRoute.getTemplate(rebuildLogKey());
+        byte[][] keysAndArgs = new byte[1 + ids.size()][];
+        keysAndArgs[0] = rawKey(logTemplate, rebuildLogKey());
+        int i = 1;
+        for (String id : ids) {
+            keysAndArgs[i++] = id.getBytes(UTF_8);
+        }
+        logTemplate.execute((RedisCallback<Long>) connection -> ScriptUtil.eval(connection, LOG_REBUILDING, keysAndArgs));
+    }
+
+    private long readVersion() {
+        RedisTemplate<String, Object> versionTemplate = redisTemplateRoute.getTemplate(versionKey());
+        byte[] rawVersion = versionTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey(versionTemplate, versionKey())));
+        return rawVersion == null ? 0 : Long.parseLong(new String(rawVersion, UTF_8));
+    }
+
+    /**
+     * 给各段打上重建标记，段不存在时创建(内容为空，切换版本后一起删除)
+     */
+    private void markRebuilding(long segmentVersion) {
+        byte[] rebuilding = {1};
+        for (Map.Entry<RedisTemplate<String, Object>, List<Integer>> entry : groupSegments(segmentVersion).entrySet()) {
+            RedisTemplate<String, Object> template = entry.getKey();
+            template.executePipelined((RedisCallback<Object>) connection -> {
+                for (Integer segment : entry.getValue()) {
+                    connection.setRange(rawKey(template, segmentKey(segmentVersion, segment)), rebuilding, segmentBytes + COUNTER_BYTES);
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * @return 各段的完整值，段不存在时为null
+     */
+    private byte[][] readSegments(long segmentVersion, Collection<Integer> segmentIds) {
+        byte[][] remote = new byte[segments][];
+        for (Map.Entry<RedisTemplate<String, Object>, List<Integer>> entry : groupSegments(segmentVersion, segmentIds).entrySet()) {
+            RedisTemplate<String, Object> template = entry.getKey();
+            List<Integer> segmentList = entry.getValue();
+            List<Object> results = template.execute((RedisCallback<List<Object>>) connection -> {
+                connection.openPipeline();
+                for (Integer segment : segmentList) {
+                    connection.get(rawKey(template, segmentKey(segmentVersion, segment)));
+                }
+                return connection.closePipeline();
+            });
+            for (int i = 0; i < segmentList.size(); i++) {
+                Object bytes = results.get(i);
+                if (bytes instanceof byte[]) {
+                    remote[segmentList.get(i)] = (byte[]) bytes;
+                }
+            }
+        }
+        return remote;
+    }
+
+    /**
+     * @return 各段的修改计数，段不存在时为-1
+     */
+    private long[] readCounters(long segmentVersion) {
+        long[] counters = new long[segments];
+        Arrays.fill(counters, -1);
+        for (Map.Entry<RedisTemplate<String, Object>, List<Integer>> entry : groupSegments(segmentVersion).entrySet()) {
+            RedisTemplate<String, Object> template = entry.getKey();
+            List<Integer> segmentList = entry.getValue();
+            List<Object> results = template.execute((RedisCallback<List<Object>>) connection -> {
+                connection.openPipeline();
+                for (Integer segment : segmentList) {
+                    connection.getRange(rawKey(template, segmentKey(segmentVersion, segment)), segmentBytes, segmentBytes + COUNTER_BYTES - 1);
+                }
+                return connection.closePipeline();
+            });
+            for (int i = 0; i < segmentList.size(); i++) {
+                Object bytes = results.get(i);
+                if (bytes instanceof byte[] && ((byte[]) bytes).length == COUNTER_BYTES) {
+                    counters[segmentList.get(i)] = readCounter((byte[]) bytes, 0);
+                }
+            }
+        }
+        return counters;
+    }
+
+    /**
+     * @return 段值中的修改计数，旧格式没有计数时为-1
+     */
+    private long counter(byte[] data) {
+        return data.length >= segmentBytes + COUNTER_BYTES ? readCounter(data, segmentBytes) : -1;
+    }
+
+    /**
+     * BITFIELD u32按大端存放
+     */
+    private static long readCounter(byte[] data, int offset) {
+        return ((data[offset] & 0xFFL) << 24) | ((data[offset + 1] & 0xFFL) << 16) | ((data[offset + 2] & 0xFFL) << 8) | (data[offset + 3] & 0xFFL);
+    }
+
+    private void deleteSegments(long oldVersion) {
+        for (Map.Entry<RedisTemplate<String, Object>, List<Integer>> entry : groupSegments(oldVersion).entrySet()) {
+            List<String> keys = new ArrayList<>();
+            for (Integer segment : entry.getValue()) {
+                keys.add(segmentKey(oldVersion, segment));
+            }
+            entry.getKey().delete(keys);
+        }
+    }
+
+    private Map<RedisTemplate<String, Object>, List<Integer>> groupSegments(long segmentVersion) {
+        List<Integer> all = new ArrayList<>(segments);
+        for (int segment = 0; segment < segments; segment++) {
+            all.add(segment);
+        }
+        return groupSegments(segmentVersion, all);
+    }
+
+    private Map<RedisTemplate<String, Object>, List<Integer>> groupSegments(long segmentVersion, Collection<Integer> segmentIds) {
+        Map<RedisTemplate<String, Object>, List<Integer>> segmentsByShard = new IdentityHashMap<>();
+        for (Integer segment : segmentIds) {
+            RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(segmentKey(segmentVersion, segment));
+            segmentsByShard.computeIfAbsent(template, t -> new ArrayList<>()).add(segment);
+        }
+        return segmentsByShard;
+    }
+
+    private byte[][] emptySegments() {
+        byte[][] empty = new byte[segments][];
+        for (int i = 0; i < segments; i++) {
+            empty[i] = new byte[segmentBytes];
+        }
+        return empty;
+    }
+
+    private AtomicLongArray unknownCounters() {
+        AtomicLongArray counters = new AtomicLongArray(segments);
+        for (int i = 0; i < segments; i++) {
+            counters.set(i, -1);
+        }
+        return counters;
+    }
+
+    private int segment(byte[] data) {
+        return (int) Math.floorMod(MurmurHash.hash64A(data, SEED_SEGMENT), (long) segments);
+    }
+
+    /**
+     * 段内的bit位置，双重hash生成k个位置
+     */
+    private long[] offsets(byte[] data) {
+        long h1 = MurmurHash.hash64A(data, SEED_OFFSET);
+        long h2 = (h1 >>> 32) | 1;
+        long[] offsets = new long[hashFunctions];
+        for (int i = 0; i < hashFunctions; i++) {
+            offsets[i] = Math.floorMod(h1 + i * h2, segmentBits);
+        }
+        return offsets;
+    }
+
+    /**
+     * redis bitmap的bit顺序：offset 0 是第一个字节的最高位
+     */
+    private static void setLocal(byte[] segment, long[] offsets) {
+        synchronized (segment) {
+            for (long offset : offsets) {
+                segment[(int) (offset >>> 3)] |= (0x80 >>> (offset & 7));
+            }
+        }
+    }
+
+    private String versionKey() {
+        return "bloom:" + name + ":version";
+    }
+
+    private String rebuildLogKey() {
+        return "bloom:" + name + ":rebuilding";
+    }
+
+    private String segmentKey(long segmentVersion, int segment) {
+        return "bloom:" + name + ":" + segmentVersion + ":" + segment;
+    }
+
+    /**
+     * 一个版本的本地副本：版本号、各段bitmap、各段已合并到的修改计数(-1表示未知)，一起替换
+     */
+    private static class Mirror {
+        private final long version;
+        private final byte[][] segments;
+        private final AtomicLongArray counters;
+
+        private Mirror(long version, byte[][] segments, AtomicLongArray counters) {
+            this.version = version;
+            this.segments = segments;
+            this.counters = counters;
+        }
+    }
+
+    private static class Written {
+        private final List<String> missing = new ArrayList<>();
+        private final List<String> rebuilding = new ArrayList<>();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static byte[] rawKey(RedisTemplate<String, Object> template, String key) {
+        return ((RedisSerializer<String>) template.getKeySerializer()).serialize(key);
+    }
+}
@@ -0,0 +1,130 @@
+package com.wp.redis.breaker;
+
+import com.wp.redis.properties.BreakerProperties;
+
+/**
+ * 基于最近N次调用的错误率/慢调用率的熔断器
+ * CLOSED -> OPEN: 窗口内错误率或慢调用率达到阈值
+ * OPEN -> HALF_OPEN: 熔断openMillis之后
+ * HALF_OPEN -> CLOSED: 试探调用全部成功；任一失败回到OPEN
+ */
+public class ShardCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final byte SUCCESS = 0;
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+
+    private final BreakerProperties properties;
+    private final long slowCallNanos;
+    private final byte[] window;
+    private int index;
+    private int count;
+    private int failures;
+    private int slowCalls;
+
+    private volatile State state = State.CLOSED;
+    private volatile long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    public ShardCircuitBreaker(BreakerProperties properties) {
+        this.properties = properties;
+        this.slowCallNanos = properties.getSlowCallMillis() * 1000000L;
+        this.window = new byte[Math.max(1, properties.getWindowSize())];
+    }
+
+    /**
+     * 是否允许本次调用
+     *
+     * @return
+     */
+    public boolean tryAcquirePermission() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        synchronized (this) {
+            if (state == State.OPEN) {
+                if (System.currentTimeMillis() - openedAt < properties.getOpenMillis()) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                halfOpenPermits = properties.getHalfOpenCalls();
+                halfOpenSuccesses = 0;
+            }
+            if (state == State.HALF_OPEN) {
+                if (halfOpenPermits <= 0) {
+                    return false;
+                }
+                halfOpenPermits--;
+            }
+            return true;
+        }
+    }
+
+    public synchronized void onSuccess(long elapsedNanos) {
+        if (state == State.HALF_OPEN) {
+            if (elapsedNanos >= slowCallNanos) {
+                open();
+            } else if (++halfOpenSuccesses >= properties.getHalfOpenCalls()) {
+                reset();
+            }
+            return;
+        }
+        record(elapsedNanos >= slowCallNanos ? SLOW : SUCCESS);
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(FAILURE);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    private void record(byte outcome) {
+        if (count == window.length) {
+            byte evicted = window[index];
+            if (evicted == FAILURE) {
+                failures--;
+            } else if (evicted == SLOW) {
+                slowCalls--;
+            }
+        } else {
+            count++;
+        }
+        window[index] = outcome;
+        index = (index + 1) % window.length;
+        if (outcome == FAILURE) {
+            failures++;
+        } else if (outcome == SLOW) {
+            slowCalls++;
+        }
+        if (state == State.CLOSED && count >= properties.getMinimumCalls()) {
+            if (failures * 100 >= properties.getFailureRateThreshold() * count
+                    || slowCalls * 100 >= properties.getSlowCallRateThreshold() * count) {
+                open();
+            }
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+    }
+
+    private void reset() {
+        state = State.CLOSED;
+        index = 0;
+        count = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+}
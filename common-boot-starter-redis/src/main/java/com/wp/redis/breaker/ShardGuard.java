@@ -0,0 +1,80 @@
+package com.wp.redis.breaker;
+
+import com.wp.redis.properties.BreakerProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * 单个分片的并发隔离 + 熔断，拒绝时不等待，直接走降级
+ */
+public class ShardGuard {
+
+    private static Logger logger = LoggerFactory.getLogger(ShardGuard.class);
+
+    private final String name;
+    private final Semaphore bulkhead;
+    private final ShardCircuitBreaker circuitBreaker;
+
+    public ShardGuard(String name, BreakerProperties properties) {
+        this.name = name;
+        this.bulkhead = new Semaphore(properties.getMaxConcurrentCalls());
+        this.circuitBreaker = new ShardCircuitBreaker(properties);
+    }
+
+    /**
+     * 执行命令
+     *
+     * @param call     实际调用
+     * @param fallback 被拒绝时的降级结果，为null时抛出ShardUnavailableException
+     * @return
+     */
+    public <R> R execute(Supplier<R> call, Supplier<R> fallback) {
+        if (!bulkhead.tryAcquire()) {
+            return reject("bulkhead full", fallback);
+        }
+        try {
+            if (!circuitBreaker.tryAcquirePermission()) {
+                return reject("circuit " + circuitBreaker.getState(), fallback);
+            }
+            long start = System.nanoTime();
+            try {
+                R result = call.get();
+                circuitBreaker.onSuccess(System.nanoTime() - start);
+                return result;
+            } catch (DataAccessException e) {
+                circuitBreaker.onFailure();
+                throw e;
+            } catch (RuntimeException e) {
+                //序列化等与分片健康无关的异常
+                circuitBreaker.onSuccess(System.nanoTime() - start);
+                throw e;
+            }
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    private <R> R reject(String reason, Supplier<R> fallback) {
+        logger.debug("redis shard {} rejected call: {}", name, reason);
+        if (fallback == null) {
+            throw new ShardUnavailableException("redis shard " + name + " unavailable: " + reason);
+        }
+        return fallback.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ShardCircuitBreaker.State getState() {
+        return circuitBreaker.getState();
+    }
+
+    public int getAvailablePermits() {
+        return bulkhead.availablePermits();
+    }
+}
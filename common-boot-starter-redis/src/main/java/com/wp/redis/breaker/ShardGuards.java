@@ -0,0 +1,50 @@
+package com.wp.redis.breaker;
+
+import com.wp.redis.properties.BreakerFallback;
+import com.wp.redis.properties.BreakerProperties;
+import com.wp.redis.routes.RedisTemplateRoute;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 每个分片一个ShardGuard
+ */
+public class ShardGuards {
+
+    private final Map<RedisTemplate<String, Object>, ShardGuard> guards = new IdentityHashMap<>();
+
+    private final List<ShardGuard> guardList = new ArrayList<>();
+
+    private final StaleValueStore staleValueStore;
+
+    public ShardGuards(RedisTemplateRoute redisTemplateRoute, BreakerProperties breakerProperties) {
+        List<RedisTemplate<String, Object>> templates = redisTemplateRoute.getTemplates();
+        for (int i = 0; i < templates.size(); i++) {
+            ShardGuard guard = new ShardGuard("shard-" + i, breakerProperties);
+            guards.put(templates.get(i), guard);
+            guardList.add(guard);
+        }
+        this.staleValueStore = breakerProperties.getFallback() == BreakerFallback.STALE ? new StaleValueStore(breakerProperties.getStaleCapacity()) : null;
+    }
+
+    public ShardGuard get(RedisTemplate<String, Object> template) {
+        return guards.get(template);
+    }
+
+    public List<ShardGuard> getGuards() {
+        return guardList;
+    }
+
+    /**
+     * stale降级时的本地值，miss降级时为null
+     *
+     * @return
+     */
+    public StaleValueStore getStaleValueStore() {
+        return staleValueStore;
+    }
+}
@@ -0,0 +1,13 @@
+package com.wp.redis.breaker;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+
+/**
+ * 分片已熔断或并发已满，命令没有发送
+ */
+public class ShardUnavailableException extends DataAccessResourceFailureException {
+
+    public ShardUnavailableException(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,74 @@
+package com.wp.redis.breaker;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 保存最近读到的值(序列化后的字节)，分片不可用时反序列化后作为降级结果返回。
+ * <p>
+ * 按key分条加锁，每条是一个按访问顺序淘汰的LinkedHashMap，读取不争用同一把锁；
+ * 保存字节而不是对象，每次降级返回新的对象，调用方修改返回值不影响之后的调用
+ */
+public class StaleValueStore {
+
+    private final Stripe[] stripes;
+    private final int mask;
+
+    public StaleValueStore(int capacity) {
+        int count = Integer.highestOneBit(Math.max(1, Math.min(64, Runtime.getRuntime().availableProcessors() * 4)));
+        this.stripes = new Stripe[count];
+        this.mask = count - 1;
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(Math.max(1, capacity / count));
+        }
+    }
+
+    /**
+     * @param key
+     * @param value 为null时清除
+     */
+    public void put(String key, byte[] value) {
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            if (value == null) {
+                stripe.remove(key);
+            } else {
+                stripe.put(key, value);
+            }
+        }
+    }
+
+    public byte[] get(String key) {
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.get(key);
+        }
+    }
+
+    public void remove(String key) {
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.remove(key);
+        }
+    }
+
+    private Stripe stripe(String key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    private static final class Stripe extends LinkedHashMap<String, byte[]> {
+
+        private final int capacity;
+
+        private Stripe(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > capacity;
+        }
+    }
+}
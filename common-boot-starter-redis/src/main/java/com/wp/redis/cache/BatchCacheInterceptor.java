@@ -0,0 +1,266 @@
+package com.wp.redis.cache;
+
+import com.wp.redis.expiry.ExpiryPolicy;
+import com.wp.redis.properties.RedisConfigProperties;
+import com.wp.redis.routes.RedisTemplateRoute;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.core.CollectionFactory;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link BatchCacheable} 的方法拦截：按分片批量读取，只加载未命中的id
+ */
+public class BatchCacheInterceptor implements MethodInterceptor {
+
+    /**
+     * 与RedisFacade.writeEmpty一致，空字符串表示已确认不存在
+     */
+    private static final String EMPTY = "";
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final BeanFactory beanFactory;
+    private volatile RedisTemplateRoute route;
+    private volatile ExpiryPolicy expiryPolicy;
+
+    public BatchCacheInterceptor(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Method method = invocation.getMethod();
+        if (invocation.getThis() != null) {
+            method = AopUtils.getMostSpecificMethod(method, AopUtils.getTargetClass(invocation.getThis()));
+        }
+        BatchCacheable batchCacheable = AnnotationUtils.findAnnotation(method, BatchCacheable.class);
+        Object[] args = invocation.getArguments();
+        if (batchCacheable == null || batchCacheable.argIndex() >= args.length || !(args[batchCacheable.argIndex()] instanceof Collection)) {
+            return invocation.proceed();
+        }
+        Class<?> returnType = method.getReturnType();
+        boolean mapResult = Map.class.isAssignableFrom(returnType);
+        if (!mapResult && !Collection.class.isAssignableFrom(returnType)) {
+            return invocation.proceed();
+        }
+        Collection<?> ids = (Collection<?>) args[batchCacheable.argIndex()];
+        if (ids.isEmpty()) {
+            return invocation.proceed();
+        }
+
+        Map<String, Object> requested = new LinkedHashMap<>();
+        for (Object id : ids) {
+            if (id != null) {
+                requested.put(String.valueOf(id), id);
+            }
+        }
+        Map<String, Object> found = multiGet(batchCacheable.prefix(), requested.keySet());
+        List<Object> missing = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : requested.entrySet()) {
+            if (!found.containsKey(entry.getKey())) {
+                missing.add(entry.getValue());
+            }
+        }
+        if (!missing.isEmpty()) {
+            // 参数类型在启动时由BatchCacheablePostProcessor检查过可以创建
+            Collection<Object> missingIds = CollectionFactory.createCollection(method.getParameterTypes()[batchCacheable.argIndex()], missing.size());
+            missingIds.addAll(missing);
+            Object[] missingArgs = args.clone();
+            missingArgs[batchCacheable.argIndex()] = missingIds;
+            Map<String, Object> loaded = toMap(proceed(invocation, missingArgs), mapResult, batchCacheable.idProperty());
+            Map<String, Object> writes = new LinkedHashMap<>();
+            for (Object id : missing) {
+                String idKey = String.valueOf(id);
+                Object value = loaded.get(idKey);
+                if (value != null) {
+                    writes.put(idKey, value);
+                    found.put(idKey, value);
+                } else if (batchCacheable.cacheEmpty()) {
+                    writes.put(idKey, EMPTY);
+                }
+            }
+            write(batchCacheable, writes);
+        }
+        return assemble(requested, found, mapResult, returnType);
+    }
+
+    /**
+     * 用新的参数继续调用，不修改调用方传入的参数数组
+     */
+    private static Object proceed(MethodInvocation invocation, Object[] arguments) throws Throwable {
+        if (invocation instanceof ProxyMethodInvocation) {
+            return ((ProxyMethodInvocation) invocation).invocableClone(arguments).proceed();
+        }
+        Object[] original = invocation.getArguments().clone();
+        System.arraycopy(arguments, 0, invocation.getArguments(), 0, arguments.length);
+        try {
+            return invocation.proceed();
+        } finally {
+            System.arraycopy(original, 0, invocation.getArguments(), 0, original.length);
+        }
+    }
+
+    /**
+     * 按分片分组后每个分片一次MGET，分片读取失败时当作未命中
+     *
+     * @return id -> 值，包含空值占位
+     */
+    private Map<String, Object> multiGet(String prefix, Collection<String> idKeys) {
+        Map<RedisTemplate<String, Object>, List<String>> grouped = group(prefix, idKeys);
+        Map<String, Object> found = new LinkedHashMap<>();
+        for (Map.Entry<RedisTemplate<String, Object>, List<String>> entry : grouped.entrySet()) {
+            List<String> shardIds = entry.getValue();
+            List<String> keys = new ArrayList<>(shardIds.size());
+            for (String idKey : shardIds) {
+                keys.add(prefix + idKey);
+            }
+            List<Object> values;
+            try {
+                values = entry.getKey().opsForValue().multiGet(keys);
+            } catch (DataAccessException e) {
+                logger.warn("batch cache multiGet failed, prefix:{}, keys:{}", prefix, keys.size(), e);
+                continue;
+            }
+            if (values == null) {
+                continue;
+            }
+            for (int i = 0; i < values.size(); i++) {
+                if (values.get(i) != null) {
+                    found.put(shardIds.get(i), values.get(i));
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 按分片pipeline写回，写入失败只记录日志
+     */
+    @SuppressWarnings("unchecked")
+    private void write(BatchCacheable batchCacheable, Map<String, Object> writes) {
+        if (writes.isEmpty()) {
+            return;
+        }
+        String prefix = batchCacheable.prefix();
+        for (Map.Entry<RedisTemplate<String, Object>, List<String>> entry : group(prefix, writes.keySet()).entrySet()) {
+            final RedisTemplate<String, Object> template = entry.getKey();
+            final RedisSerializer<String> keySerializer = (RedisSerializer<String>) template.getKeySerializer();
+            final RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) template.getValueSerializer();
+            final List<String> shardIds = entry.getValue();
+            try {
+                template.executePipelined((RedisCallback<Object>) connection -> {
+                    for (String idKey : shardIds) {
+                        byte[] rawKey = keySerializer.serialize(prefix + idKey);
+                        byte[] rawValue = valueSerializer.serialize(writes.get(idKey));
+                        long millis = expiryPolicy().jitterMillis(batchCacheable.expire(), batchCacheable.timeUnit());
+                        if (millis > 0) {
+                            connection.set(rawKey, rawValue, Expiration.milliseconds(millis), RedisStringCommands.SetOption.UPSERT);
+                        } else {
+                            connection.set(rawKey, rawValue);
+                        }
+                    }
+                    return null;
+                });
+            } catch (DataAccessException e) {
+                logger.warn("batch cache write failed, prefix:{}, keys:{}", prefix, shardIds.size(), e);
+            }
+        }
+    }
+
+    private Map<RedisTemplate<String, Object>, List<String>> group(String prefix, Collection<String> idKeys) {
+        Map<RedisTemplate<String, Object>, List<String>> grouped = new IdentityHashMap<>();
+        for (String idKey : idKeys) {
+            RedisTemplate<String, Object> template = route().getTemplate(prefix + idKey);
+            List<String> shardIds = grouped.get(template);
+            if (shardIds == null) {
+                shardIds = new ArrayList<>();
+                grouped.put(template, shardIds);
+            }
+            shardIds.add(idKey);
+        }
+        return grouped;
+    }
+
+    private static Map<String, Object> toMap(Object result, boolean mapResult, String idProperty) {
+        Map<String, Object> loaded = new LinkedHashMap<>();
+        if (result == null) {
+            return loaded;
+        }
+        if (mapResult) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) result).entrySet()) {
+                loaded.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            return loaded;
+        }
+        for (Object element : (Collection<?>) result) {
+            if (element != null) {
+                Object id = PropertyAccessorFactory.forBeanPropertyAccess(element).getPropertyValue(idProperty);
+                loaded.put(String.valueOf(id), element);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 按请求id的顺序组装返回值，跳过空值占位
+     */
+    private static Object assemble(Map<String, Object> requested, Map<String, Object> found, boolean mapResult, Class<?> returnType) {
+        if (mapResult) {
+            Map<Object, Object> result = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> entry : requested.entrySet()) {
+                Object value = found.get(entry.getKey());
+                if (value != null && !EMPTY.equals(value)) {
+                    result.put(entry.getValue(), value);
+                }
+            }
+            return result;
+        }
+        Collection<Object> result = Set.class.isAssignableFrom(returnType) ? new LinkedHashSet<>() : new ArrayList<>();
+        for (String idKey : requested.keySet()) {
+            Object value = found.get(idKey);
+            if (value != null && !EMPTY.equals(value)) {
+                result.add(value);
+            }
+        }
+        return result;
+    }
+
+    private RedisTemplateRoute route() {
+        if (route == null) {
+            route = beanFactory.getBean(RedisTemplateRoute.class);
+        }
+        return route;
+    }
+
+    private ExpiryPolicy expiryPolicy() {
+        if (expiryPolicy == null) {
+            RedisConfigProperties properties = beanFactory.getBean(RedisConfigProperties.class);
+            expiryPolicy = new ExpiryPolicy(properties.getExpiry().getTtlJitterPercent(), properties.getExpiry().getRefreshBeta());
+        }
+        return expiryPolicy;
+    }
+}
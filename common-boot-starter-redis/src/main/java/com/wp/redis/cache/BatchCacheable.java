@@ -0,0 +1,48 @@
+package com.wp.redis.cache;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按id集合批量查询的方法缓存
+ * <p>
+ * 集合参数中的每个id对应一个key(prefix + id)，按分片分组MGET，只用未命中的id调用方法，
+ * 结果通过pipeline按分片写回。方法返回Map时key为id；返回List/Set时通过idProperty从元素上取id
+ * <pre>
+ * &#64;BatchCacheable(prefix = "book.", idProperty = "id")
+ * public List&lt;Book&gt; findBooks(List&lt;Long&gt; ids)
+ * </pre>
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface BatchCacheable {
+
+    /**
+     * key前缀
+     */
+    String prefix();
+
+    /**
+     * id集合参数的位置
+     */
+    int argIndex() default 0;
+
+    /**
+     * 返回List/Set时元素上id的属性名
+     */
+    String idProperty() default "id";
+
+    long expire() default 600;
+
+    TimeUnit timeUnit() default TimeUnit.SECONDS;
+
+    /**
+     * 方法没有返回的id是否写入空值，避免反复穿透
+     */
+    boolean cacheEmpty() default false;
+}
@@ -0,0 +1,54 @@
+package com.wp.redis.cache;
+
+import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.aop.framework.autoproxy.AbstractBeanFactoryAwareAdvisingPostProcessor;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.core.CollectionFactory;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+
+/**
+ * 为带有 {@link BatchCacheable} 方法的bean创建代理，不依赖AspectJ；
+ * 创建代理前检查id集合参数的类型，未命中的id要用同样类型的集合传给方法
+ */
+public class BatchCacheablePostProcessor extends AbstractBeanFactoryAwareAdvisingPostProcessor {
+
+    public BatchCacheablePostProcessor() {
+        setBeforeExistingAdvisors(true);
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        super.setBeanFactory(beanFactory);
+        this.advisor = new DefaultPointcutAdvisor(AnnotationMatchingPointcut.forMethodAnnotation(BatchCacheable.class),
+                new BatchCacheInterceptor(beanFactory));
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (isEligible(bean, beanName)) {
+            ReflectionUtils.doWithMethods(AopUtils.getTargetClass(bean), BatchCacheablePostProcessor::checkIdsParameter,
+                    method -> AnnotationUtils.findAnnotation(method, BatchCacheable.class) != null);
+        }
+        return super.postProcessAfterInitialization(bean, beanName);
+    }
+
+    private static void checkIdsParameter(Method method) {
+        BatchCacheable batchCacheable = AnnotationUtils.findAnnotation(method, BatchCacheable.class);
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (batchCacheable.argIndex() >= parameterTypes.length || !Collection.class.isAssignableFrom(parameterTypes[batchCacheable.argIndex()])) {
+            throw new IllegalStateException("@BatchCacheable argIndex " + batchCacheable.argIndex() + " is not a collection parameter of " + method);
+        }
+        try {
+            CollectionFactory.createCollection(parameterTypes[batchCacheable.argIndex()], 0);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("@BatchCacheable cannot create " + parameterTypes[batchCacheable.argIndex()].getName()
+                    + " for " + method + ", declare the ids parameter as Collection, List, Set or a collection class with a default constructor", e);
+        }
+    }
+}
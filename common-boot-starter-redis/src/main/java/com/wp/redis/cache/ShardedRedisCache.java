@@ -0,0 +1,222 @@
+package com.wp.redis.cache;
+
+import com.wp.redis.codec.MissingDictionaryException;
+import com.wp.redis.expiry.ExpiryPolicy;
+import com.wp.redis.routes.RedisTemplateRoute;
+import com.wp.redis.scan.KeyScanner;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按key路由到分片的Spring Cache，redis中的key为 cacheName:key
+ * <p>
+ * 开启一级缓存时先查进程内缓存，未命中再查redis；get(key, valueLoader)在同一进程内对同一个key只加载一次
+ */
+public class ShardedRedisCache extends AbstractValueAdaptingCache {
+
+    /**
+     * null值在redis中的占位，json/gzip/jdk序列化结果都不会以0xC0开头
+     */
+    static final byte[] NULL_BYTES = {(byte) 0xC0, 'N', 'U', 'L', 'L'};
+
+    private final String name;
+    private final RedisTemplateRoute route;
+    private final KeyScanner keyScanner;
+    private final RedisSerializer<Object> serializer;
+    private final long ttlMillis;
+    private final int ttlJitterPercent;
+    private final LocalLruCache localCache;
+    private final ConcurrentMap<Object, Object> loadLocks = new ConcurrentHashMap<>();
+
+    /**
+     * @param name             缓存名
+     * @param route            分片路由
+     * @param keyScanner       clear时按 cacheName:* 删除
+     * @param serializer       值序列化
+     * @param ttlMillis        redis过期时间，0表示不过期
+     * @param ttlJitterPercent 过期时间随机延长的百分比
+     * @param localCache       一级缓存，为null时不开启
+     * @param allowNullValues  是否缓存null
+     */
+    public ShardedRedisCache(String name, RedisTemplateRoute route, KeyScanner keyScanner, RedisSerializer<Object> serializer,
+                             long ttlMillis, int ttlJitterPercent, LocalLruCache localCache, boolean allowNullValues) {
+        super(allowNullValues);
+        this.name = name;
+        this.route = route;
+        this.keyScanner = keyScanner;
+        this.serializer = serializer;
+        this.ttlMillis = ttlMillis;
+        this.ttlJitterPercent = ttlJitterPercent;
+        this.localCache = localCache;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return route;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        String redisKey = redisKey(key);
+        if (localCache != null) {
+            Object value = localCache.get(redisKey);
+            if (value != null) {
+                return value;
+            }
+        }
+        final byte[] rawKey = rawKey(redisKey);
+        byte[] bytes = route.getTemplate(redisKey).execute((RedisCallback<byte[]>) connection -> connection.get(rawKey));
+        if (bytes == null) {
+            return null;
+        }
+        Object value;
+        try {
+            value = decode(bytes);
+        } catch (MissingDictionaryException e) {
+            // 字典已丢失的值无法再读取，删除后按未命中重新加载
+            route.getTemplate(redisKey).execute((RedisCallback<Long>) connection -> connection.del(rawKey));
+            return null;
+        }
+        if (value != null && localCache != null) {
+            localCache.put(redisKey, value);
+        }
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        Object value = lookup(key);
+        if (value != null) {
+            return (T) fromStoreValue(value);
+        }
+        Object lock = loadLocks.computeIfAbsent(key, k -> new Object());
+        try {
+            synchronized (lock) {
+                value = lookup(key);
+                if (value != null) {
+                    return (T) fromStoreValue(value);
+                }
+                T loaded;
+                try {
+                    loaded = valueLoader.call();
+                } catch (Throwable ex) {
+                    throw new ValueRetrievalException(key, valueLoader, ex);
+                }
+                put(key, loaded);
+                return loaded;
+            }
+        } finally {
+            loadLocks.remove(key, lock);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        String redisKey = redisKey(key);
+        Object storeValue = toStoreValue(value);
+        final byte[] rawKey = rawKey(redisKey);
+        final byte[] rawValue = encode(storeValue);
+        final long millis = expireMillis();
+        route.getTemplate(redisKey).execute((RedisCallback<Object>) connection -> {
+            if (millis > 0) {
+                connection.set(rawKey, rawValue, Expiration.milliseconds(millis), RedisStringCommands.SetOption.UPSERT);
+            } else {
+                connection.set(rawKey, rawValue);
+            }
+            return null;
+        });
+        if (localCache != null) {
+            localCache.put(redisKey, storeValue);
+        }
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        String redisKey = redisKey(key);
+        Object storeValue = toStoreValue(value);
+        final byte[] rawKey = rawKey(redisKey);
+        final byte[] rawValue = encode(storeValue);
+        final long millis = expireMillis();
+        Object reply = route.getTemplate(redisKey).execute((RedisCallback<Object>) connection -> {
+            if (millis > 0) {
+                return connection.execute("SET", rawKey, rawValue, bytes("PX"), bytes(String.valueOf(millis)), bytes("NX"));
+            }
+            return connection.execute("SET", rawKey, rawValue, bytes("NX"));
+        });
+        if (reply != null) {
+            if (localCache != null) {
+                localCache.put(redisKey, storeValue);
+            }
+            return null;
+        }
+        return toValueWrapper(lookup(key));
+    }
+
+    @Override
+    public void evict(Object key) {
+        String redisKey = redisKey(key);
+        final byte[] rawKey = rawKey(redisKey);
+        route.getTemplate(redisKey).execute((RedisCallback<Long>) connection -> connection.del(rawKey));
+        if (localCache != null) {
+            localCache.remove(redisKey);
+        }
+    }
+
+    /**
+     * 在所有分片上并发SCAN本缓存的key，分批UNLINK并限速
+     */
+    @Override
+    public void clear() {
+        keyScanner.deleteByPattern(name + ":*");
+        if (localCache != null) {
+            localCache.clear();
+        }
+    }
+
+    private long expireMillis() {
+        return ttlMillis > 0 ? ExpiryPolicy.jitterMillis(ttlMillis, TimeUnit.MILLISECONDS, ttlJitterPercent) : 0;
+    }
+
+    private String redisKey(Object key) {
+        return name + ":" + key;
+    }
+
+    private byte[] rawKey(String redisKey) {
+        return bytes(redisKey);
+    }
+
+    private byte[] encode(Object storeValue) {
+        if (storeValue == NullValue.INSTANCE) {
+            return NULL_BYTES;
+        }
+        return serializer.serialize(storeValue);
+    }
+
+    private Object decode(byte[] bytes) {
+        if (Arrays.equals(bytes, NULL_BYTES)) {
+            return NullValue.INSTANCE;
+        }
+        return serializer.deserialize(bytes);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
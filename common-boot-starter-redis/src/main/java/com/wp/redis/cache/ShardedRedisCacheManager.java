@@ -0,0 +1,121 @@
+package com.wp.redis.cache;
+
+import com.wp.redis.codec.DictionaryCompressor;
+import com.wp.redis.policy.KeyPolicy;
+import com.wp.redis.policy.KeyPolicyTable;
+import com.wp.redis.properties.CacheProperties;
+import com.wp.redis.properties.CacheSerializerType;
+import com.wp.redis.properties.CacheSpecProperties;
+import com.wp.redis.properties.CompressionType;
+import com.wp.redis.routes.RedisTemplateRoute;
+import com.wp.redis.scan.KeyScanner;
+import com.wp.redis.serializer.DictionaryJsonRedisSerializer;
+import com.wp.redis.serializer.Jackson2JsonRedisGzipSerializer;
+import com.wp.redis.utils.ObjectMapperUtil;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.Assert;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于分片路由的CacheManager，缓存按名称懒创建，每个缓存的ttl、序列化、一级缓存可单独配置；
+ * 没有单独配置的项按 名称: 匹配common.redis.policies中的策略，再沿用common.redis.cache的默认值
+ */
+public class ShardedRedisCacheManager implements CacheManager {
+
+    private final RedisTemplateRoute route;
+    private final KeyScanner keyScanner;
+    private final CacheProperties cacheProperties;
+    private final int ttlJitterPercent;
+    private final DictionaryCompressor dictionaryCompressor;
+    private final KeyPolicyTable keyPolicies;
+    private final ConcurrentMap<String, Cache> caches = new ConcurrentHashMap<>();
+
+    public ShardedRedisCacheManager(RedisTemplateRoute route, KeyScanner keyScanner, CacheProperties cacheProperties, int ttlJitterPercent) {
+        this(route, keyScanner, cacheProperties, ttlJitterPercent, null, null);
+    }
+
+    /**
+     * @param dictionaryCompressor 未开启字典压缩时为null，此时不能使用DICT_JSON
+     * @param keyPolicies          按前缀的策略，为null时只用cache配置
+     */
+    public ShardedRedisCacheManager(RedisTemplateRoute route, KeyScanner keyScanner, CacheProperties cacheProperties, int ttlJitterPercent,
+                                    DictionaryCompressor dictionaryCompressor, KeyPolicyTable keyPolicies) {
+        this.route = route;
+        this.keyScanner = keyScanner;
+        this.cacheProperties = cacheProperties;
+        this.ttlJitterPercent = ttlJitterPercent;
+        this.dictionaryCompressor = dictionaryCompressor;
+        this.keyPolicies = keyPolicies;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    private Cache createCache(String name) {
+        CacheSpecProperties spec = cacheProperties.getSpecs().get(name);
+        if (spec == null) {
+            spec = new CacheSpecProperties();
+        }
+        KeyPolicy policy = keyPolicies != null ? keyPolicies.resolve(name + ":") : null;
+        int ttlSeconds = spec.getTtlSeconds() != null ? spec.getTtlSeconds()
+                : policy != null && policy.getTtlSeconds() != null ? policy.getTtlSeconds() : cacheProperties.getTtlSeconds();
+        boolean l1Enabled = spec.getL1Enabled() != null ? spec.getL1Enabled()
+                : policy != null && policy.getNearCache() != null ? policy.getNearCache() : cacheProperties.isL1Enabled();
+        int l1MaxSize = spec.getL1MaxSize() != null ? spec.getL1MaxSize() : cacheProperties.getL1MaxSize();
+        int l1TtlSeconds = spec.getL1TtlSeconds() != null ? spec.getL1TtlSeconds() : cacheProperties.getL1TtlSeconds();
+        CacheSerializerType serializer = spec.getSerializer() != null ? spec.getSerializer()
+                : policy != null && policy.getCompression() != null ? serializerOf(policy.getCompression()) : cacheProperties.getSerializer();
+        int jitterPercent = policy != null ? policy.getTtlJitterPercent() : ttlJitterPercent;
+        boolean allowNullValues = policy != null && policy.getCacheEmpty() != null ? policy.getCacheEmpty() : cacheProperties.isAllowNullValues();
+
+        LocalLruCache localCache = l1Enabled ? new LocalLruCache(l1MaxSize, TimeUnit.SECONDS.toMillis(l1TtlSeconds)) : null;
+        return new ShardedRedisCache(name, route, keyScanner, createSerializer(name, serializer), TimeUnit.SECONDS.toMillis(ttlSeconds),
+                jitterPercent, localCache, allowNullValues);
+    }
+
+    private static CacheSerializerType serializerOf(CompressionType compression) {
+        switch (compression) {
+            case GZIP:
+                return CacheSerializerType.GZIP_JSON;
+            case DICTIONARY:
+                return CacheSerializerType.DICT_JSON;
+            default:
+                return CacheSerializerType.JSON;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<Object> createSerializer(String name, CacheSerializerType type) {
+        switch (type) {
+            case DICT_JSON:
+                Assert.state(dictionaryCompressor != null, "cache " + name + " uses DICT_JSON but common.redis.dictionary is not enabled");
+                return new DictionaryJsonRedisSerializer(dictionaryCompressor, name + ":");
+            case GZIP_JSON:
+                Jackson2JsonRedisGzipSerializer<Object> gzip = new Jackson2JsonRedisGzipSerializer<>(Object.class);
+                gzip.setObjectMapper(ObjectMapperUtil.createTypedMapper());
+                return gzip;
+            case JDK:
+                return (RedisSerializer) new JdkSerializationRedisSerializer();
+            default:
+                Jackson2JsonRedisSerializer<Object> json = new Jackson2JsonRedisSerializer<>(Object.class);
+                json.setObjectMapper(ObjectMapperUtil.createTypedMapper());
+                return json;
+        }
+    }
+}
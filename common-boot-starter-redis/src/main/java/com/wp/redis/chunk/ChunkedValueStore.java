@@ -0,0 +1,320 @@
+package com.wp.redis.chunk;
+
+import com.wp.redis.breaker.ShardGuards;
+import com.wp.redis.properties.ChunkProperties;
+import com.wp.redis.routes.RedisTemplateRoute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * 大值分块存储：值拆成多个块，块key带有写入版本，按key分散到各分片；原key保存清单(版本、块数、总长度、CRC32)。
+ * <p>
+ * 写入时先写完所有新版本的块再用GETSET替换清单，读取时先读清单再按清单中的版本读块，
+ * 同一版本的块写入后不再修改，读者不会读到新旧混合的内容；被替换的旧版本块在graceSeconds后删除。
+ * 未超过阈值的值直接保存在原key中。
+ * 开启熔断时清单与每个块的读写都经过各自分片的熔断器，分片不可用时抛出ShardUnavailableException
+ */
+public class ChunkedValueStore implements DisposableBean {
+
+    private static Logger logger = LoggerFactory.getLogger(ChunkedValueStore.class);
+
+    /**
+     * 清单的头两个字节，Jackson/jdk序列化的值不会以此开头
+     */
+    private static final byte MAGIC_0 = (byte) 0xC5;
+    private static final byte MAGIC_1 = (byte) 0x4B;
+
+    /**
+     * magic(2) 版本(8) 块数(4) 总长度(4) CRC32(4)
+     */
+    private static final int MANIFEST_LENGTH = 22;
+
+    private final RedisTemplateRoute redisTemplateRoute;
+    private final ChunkProperties chunkProperties;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * 分片熔断与并发隔离，未开启时为null
+     */
+    private ShardGuards shardGuards;
+
+    public ChunkedValueStore(RedisTemplateRoute redisTemplateRoute, ChunkProperties chunkProperties) {
+        this.redisTemplateRoute = redisTemplateRoute;
+        this.chunkProperties = chunkProperties;
+        AtomicInteger index = new AtomicInteger();
+        this.executor = Executors.newScheduledThreadPool(Math.max(1, chunkProperties.getThreads()), r -> {
+            Thread thread = new Thread(r, "redis-chunk-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void setShardGuards(ShardGuards shardGuards) {
+        this.shardGuards = shardGuards;
+    }
+
+    /**
+     * 写入值，超过阈值时分块
+     *
+     * @param key
+     * @param value        序列化后的值
+     * @param expireMillis 过期时间，块比清单多保留graceSeconds
+     */
+    public void write(String key, byte[] value, long expireMillis) {
+        byte[] stored = value;
+        if (value.length > chunkProperties.getThresholdKb() * 1024L) {
+            long version = System.currentTimeMillis() << 20 | ThreadLocalRandom.current().nextInt(1 << 20);
+            int chunkSize = Math.max(1, chunkProperties.getChunkKb()) * 1024;
+            Manifest manifest = new Manifest(version, (value.length + chunkSize - 1) / chunkSize, value.length, crc(value, value.length));
+            writeChunks(key, manifest, value, chunkSize, expireMillis + TimeUnit.SECONDS.toMillis(chunkProperties.getGraceSeconds()));
+            stored = manifest.toBytes();
+        }
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        byte[] rawKey = rawKey(template, key);
+        byte[] storedValue = stored;
+        List<Object> results = guard(template, () -> template.executePipelined((RedisCallback<Object>) connection -> {
+            connection.getSet(rawKey, storedValue);
+            connection.pExpire(rawKey, expireMillis);
+            return null;
+        }, null));
+        retire(key, (byte[]) results.get(0));
+    }
+
+    /**
+     * 读取值，分块的值并发读取各分片后拼接
+     *
+     * @param key
+     * @return 不存在、块已过期或校验失败时返回null
+     */
+    public byte[] read(String key) {
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        byte[] rawKey = rawKey(template, key);
+        // 块缺失说明读取期间清单已被替换且旧块已删除，重读一次清单
+        for (int attempt = 0; attempt < 2; attempt++) {
+            byte[] stored = guard(template, () -> template.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey)));
+            Manifest manifest = Manifest.parse(stored);
+            if (manifest == null) {
+                return stored;
+            }
+            byte[] value = readChunks(key, manifest);
+            if (value != null) {
+                return value;
+            }
+        }
+        logger.warn("chunked value {} is incomplete", key);
+        return null;
+    }
+
+    /**
+     * 删除值，分块的值在graceSeconds后删除各块
+     *
+     * @param key
+     */
+    public void delete(String key) {
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        byte[] rawKey = rawKey(template, key);
+        List<Object> results = guard(template, () -> template.executePipelined((RedisCallback<Object>) connection -> {
+            connection.get(rawKey);
+            connection.del(rawKey);
+            return null;
+        }, null));
+        retire(key, (byte[]) results.get(0));
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private void writeChunks(String key, Manifest manifest, byte[] value, int chunkSize, long expireMillis) {
+        Map<RedisTemplate<String, Object>, List<Integer>> byShard = groupByShard(key, manifest);
+        List<Future<?>> futures = new ArrayList<>(byShard.size());
+        for (Map.Entry<RedisTemplate<String, Object>, List<Integer>> entry : byShard.entrySet()) {
+            RedisTemplate<String, Object> template = entry.getKey();
+            futures.add(executor.submit(() -> guard(template, () -> template.executePipelined((RedisCallback<Object>) connection -> {
+                for (int index : entry.getValue()) {
+                    byte[] chunk = Arrays.copyOfRange(value, index * chunkSize, Math.min(value.length, (index + 1) * chunkSize));
+                    connection.set(rawKey(template, chunkKey(key, manifest.version, index)), chunk,
+                            Expiration.milliseconds(expireMillis), RedisStringCommands.SetOption.upsert());
+                }
+                return null;
+            }, null))));
+        }
+        try {
+            await(futures);
+        } catch (RuntimeException e) {
+            // 清单还没有替换，读者仍读旧版本，已写入的新块直接删除；删除失败时等待块过期
+            try {
+                deleteChunks(key, manifest);
+            } catch (RuntimeException deleteFailure) {
+                logger.warn("delete chunks of {} version {} failed", key, manifest.version, deleteFailure);
+            }
+            throw e;
+        }
+    }
+
+    private byte[] readChunks(String key, Manifest manifest) {
+        Map<RedisTemplate<String, Object>, List<Integer>> byShard = groupByShard(key, manifest);
+        byte[][] chunks = new byte[manifest.chunkCount][];
+        List<Future<?>> futures = new ArrayList<>(byShard.size());
+        for (Map.Entry<RedisTemplate<String, Object>, List<Integer>> entry : byShard.entrySet()) {
+            RedisTemplate<String, Object> template = entry.getKey();
+            List<Integer> indexes = entry.getValue();
+            futures.add(executor.submit(() -> {
+                byte[][] rawKeys = new byte[indexes.size()][];
+                for (int i = 0; i < indexes.size(); i++) {
+                    rawKeys[i] = rawKey(template, chunkKey(key, manifest.version, indexes.get(i)));
+                }
+                List<byte[]> values = guard(template, () -> template.execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(rawKeys)));
+                for (int i = 0; i < indexes.size(); i++) {
+                    chunks[indexes.get(i)] = values.get(i);
+                }
+            }));
+        }
+        await(futures);
+        byte[] value = new byte[manifest.totalLength];
+        int position = 0;
+        for (byte[] chunk : chunks) {
+            if (chunk == null || position + chunk.length > value.length) {
+                return null;
+            }
+            System.arraycopy(chunk, 0, value, position, chunk.length);
+            position += chunk.length;
+        }
+        if (position != value.length || crc(value, value.length) != manifest.crc) {
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * 被替换或删除的是分块清单时，延迟删除旧版本的块
+     */
+    private void retire(String key, byte[] previous) {
+        Manifest manifest = Manifest.parse(previous);
+        if (manifest == null) {
+            return;
+        }
+        executor.schedule(() -> {
+            try {
+                deleteChunks(key, manifest);
+            } catch (RuntimeException e) {
+                // 块带有过期时间，删除失败时等待过期
+                logger.warn("delete chunks of {} version {} failed", key, manifest.version, e);
+            }
+        }, chunkProperties.getGraceSeconds(), TimeUnit.SECONDS);
+    }
+
+    private void deleteChunks(String key, Manifest manifest) {
+        for (Map.Entry<RedisTemplate<String, Object>, List<Integer>> entry : groupByShard(key, manifest).entrySet()) {
+            RedisTemplate<String, Object> template = entry.getKey();
+            byte[][] rawKeys = new byte[entry.getValue().size()][];
+            for (int i = 0; i < rawKeys.length; i++) {
+                rawKeys[i] = rawKey(template, chunkKey(key, manifest.version, entry.getValue().get(i)));
+            }
+            guard(template, () -> template.execute((RedisCallback<Long>) connection -> connection.del(rawKeys)));
+        }
+    }
+
+    /**
+     * 经过该分片的熔断器执行，分片不可用时抛出ShardUnavailableException
+     */
+    private <R> R guard(RedisTemplate<String, Object> template, Supplier<R> call) {
+        if (shardGuards == null) {
+            return call.get();
+        }
+        return shardGuards.get(template).execute(call, null);
+    }
+
+    private Map<RedisTemplate<String, Object>, List<Integer>> groupByShard(String key, Manifest manifest) {
+        Map<RedisTemplate<String, Object>, List<Integer>> byShard = new IdentityHashMap<>();
+        for (int index = 0; index < manifest.chunkCount; index++) {
+            RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(chunkKey(key, manifest.version, index));
+            byShard.computeIfAbsent(template, t -> new ArrayList<>()).add(index);
+        }
+        return byShard;
+    }
+
+    private static void await(List<Future<?>> futures) {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisSystemException("interrupted while accessing chunks", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DataAccessException) {
+                throw (DataAccessException) cause;
+            }
+            throw new RedisSystemException("failed to access chunks", cause);
+        }
+    }
+
+    private static String chunkKey(String key, long version, int index) {
+        return key + ":chunk:" + Long.toHexString(version) + ":" + index;
+    }
+
+    private static int crc(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return (int) crc.getValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static byte[] rawKey(RedisTemplate<String, Object> template, String key) {
+        return ((RedisSerializer<String>) template.getKeySerializer()).serialize(key);
+    }
+
+    private static final class Manifest {
+        private final long version;
+        private final int chunkCount;
+        private final int totalLength;
+        private final int crc;
+
+        private Manifest(long version, int chunkCount, int totalLength, int crc) {
+            this.version = version;
+            this.chunkCount = chunkCount;
+            this.totalLength = totalLength;
+            this.crc = crc;
+        }
+
+        private static Manifest parse(byte[] bytes) {
+            if (bytes == null || bytes.length != MANIFEST_LENGTH || bytes[0] != MAGIC_0 || bytes[1] != MAGIC_1) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 2, MANIFEST_LENGTH - 2);
+            return new Manifest(buffer.getLong(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+        }
+
+        private byte[] toBytes() {
+            return ByteBuffer.allocate(MANIFEST_LENGTH).put(MAGIC_0).put(MAGIC_1)
+                    .putLong(version).putInt(chunkCount).putInt(totalLength).putInt(crc).array();
+        }
+    }
+}
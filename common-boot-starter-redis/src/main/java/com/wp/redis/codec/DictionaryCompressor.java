@@ -0,0 +1,438 @@
+package com.wp.redis.codec;
+
+import com.wp.redis.properties.DictionaryProperties;
+import com.wp.redis.routes.RedisTemplateRoute;
+import com.wp.redis.scan.KeyScanner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 按key前缀使用预训练字典的deflate压缩。字典在每个分片上各保存一份，并在本地目录保留副本，每次训练分配一个新的版本号，
+ * 压缩后的值头部带有字典版本号，字典更新后旧值仍按原字典解压；字典全部丢失时解压抛出MissingDictionaryException，按未命中处理。
+ * <p>
+ * 格式：0xD1 字典版本(4字节) raw deflate数据；没有字典或压缩后不变小时保存原始字节。
+ * 解压时也识别gzip(0x1f8b)，由gzip序列化切换过来的旧值仍可读
+ */
+public class DictionaryCompressor implements DisposableBean {
+
+    private static Logger logger = LoggerFactory.getLogger(DictionaryCompressor.class);
+
+    public static final byte MAGIC = (byte) 0xD1;
+
+    private static final int HEADER_LENGTH = 5;
+
+    /**
+     * deflate只能引用最近32KB
+     */
+    private static final int MAX_DICTIONARY = 32 * 1024;
+
+    private final RedisTemplateRoute redisTemplateRoute;
+    private final DictionaryProperties dictionaryProperties;
+    private final KeyScanner keyScanner;
+    /**
+     * 按长度降序，先匹配最长的前缀
+     */
+    private final List<String> prefixes;
+    private final ConcurrentMap<String, Integer> currentIds = new ConcurrentHashMap<>();
+    /**
+     * 字典内容不变，加载后一直保留
+     */
+    private final ConcurrentMap<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+    /**
+     * 找不到的字典及查找时间，一段时间内不再重复查找
+     */
+    private final ConcurrentMap<Integer, Long> missing = new ConcurrentHashMap<>();
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+    private final ScheduledExecutorService scheduler;
+
+    public DictionaryCompressor(RedisTemplateRoute redisTemplateRoute, DictionaryProperties dictionaryProperties, KeyScanner keyScanner) {
+        this.redisTemplateRoute = redisTemplateRoute;
+        this.dictionaryProperties = dictionaryProperties;
+        this.keyScanner = keyScanner;
+        this.prefixes = dictionaryProperties.getPrefixes().stream()
+                .sorted(Comparator.comparingInt(String::length).reversed())
+                .collect(Collectors.toList());
+        int level = Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION, dictionaryProperties.getLevel()));
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level, true));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-dictionary-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresh();
+        int refreshSeconds = Math.max(1, dictionaryProperties.getRefreshSeconds());
+        scheduler.scheduleWithFixedDelay(this::refresh, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 用key匹配到的前缀的当前字典压缩
+     *
+     * @param key   redis key或缓存名称加冒号
+     * @param bytes 未压缩的值
+     * @return 压缩后的值，没有字典或压缩后不变小时返回原值
+     */
+    public byte[] compress(String key, byte[] bytes) {
+        String prefix = match(key);
+        Integer id = prefix == null ? null : currentIds.get(prefix);
+        byte[] dictionary = id == null ? null : dictionaries.get(id);
+        if (dictionary == null || bytes.length <= HEADER_LENGTH) {
+            return bytes;
+        }
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setDictionary(dictionary);
+        deflater.setInput(bytes);
+        deflater.finish();
+        byte[] out = new byte[bytes.length];
+        out[0] = MAGIC;
+        writeInt(out, 1, id);
+        int position = HEADER_LENGTH;
+        while (!deflater.finished()) {
+            if (position == out.length) {
+                return bytes;
+            }
+            position += deflater.deflate(out, position, out.length - position);
+        }
+        return Arrays.copyOf(out, position);
+    }
+
+    /**
+     * 是否为字典压缩的值
+     */
+    public static boolean isCompressed(byte[] bytes) {
+        return bytes != null && bytes.length > HEADER_LENGTH && bytes[0] == MAGIC;
+    }
+
+    /**
+     * 解压compress的结果，也识别gzip，其它内容原样返回
+     *
+     * @param bytes
+     * @return
+     * @throws MissingDictionaryException 压缩时使用的字典已全部丢失
+     */
+    public byte[] decompress(byte[] bytes) {
+        if (isCompressed(bytes)) {
+            byte[] dictionary = dictionary(readInt(bytes, 1));
+            Inflater inflater = inflaters.get();
+            inflater.reset();
+            inflater.setInput(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+            inflater.setDictionary(dictionary);
+            byte[] out = new byte[bytes.length * 4];
+            int position = 0;
+            try {
+                while (!inflater.finished()) {
+                    if (position == out.length) {
+                        out = Arrays.copyOf(out, out.length * 2);
+                    }
+                    int inflated = inflater.inflate(out, position, out.length - position);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IllegalStateException("truncated dictionary compressed value");
+                    }
+                    position += inflated;
+                }
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("corrupt dictionary compressed value", e);
+            }
+            return Arrays.copyOf(out, position);
+        }
+        if (Gzip.isGzip(bytes)) {
+            return Gzip.decompress(bytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * 从redis采样前缀下的值训练新字典并发布，各实例在下次同步后用新字典压缩
+     *
+     * @param prefix 配置中的前缀
+     * @return 新字典的版本号，没有可用样本时返回null
+     */
+    public Integer train(String prefix) {
+        checkPrefix(prefix);
+        List<byte[]> samples = new ArrayList<>();
+        try (Stream<String> keys = keyScanner.scan(prefix + "*")) {
+            keys.distinct().limit(Math.max(1, dictionaryProperties.getSampleCount())).forEach(key -> {
+                byte[] value = sample(key);
+                if (value != null && value.length > 0) {
+                    samples.add(value);
+                }
+            });
+        }
+        return train(prefix, samples);
+    }
+
+    /**
+     * 用给定的样本训练新字典并发布
+     *
+     * @param prefix  配置中的前缀
+     * @param samples 未压缩的值
+     * @return 新字典的版本号，样本之间没有公共内容时返回null
+     */
+    public Integer train(String prefix, List<byte[]> samples) {
+        checkPrefix(prefix);
+        int maxSize = Math.min(MAX_DICTIONARY, Math.max(1, dictionaryProperties.getDictionaryKb()) * 1024);
+        byte[] dictionary = DictionaryTrainer.train(samples, maxSize, dictionaryProperties.getSegmentLength());
+        if (dictionary.length == 0) {
+            logger.warn("no common content in {} samples of prefix {}, dictionary not published", samples.size(), prefix);
+            return null;
+        }
+        int id = publish(prefix, dictionary);
+        logger.info("published dictionary {} for prefix {},size={},samples={}", id, prefix, dictionary.length, samples.size());
+        return id;
+    }
+
+    /**
+     * 前缀当前使用的字典版本
+     *
+     * @param prefix
+     * @return 还没有字典时返回null
+     */
+    public Integer currentId(String prefix) {
+        return currentIds.get(prefix);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    private String match(String key) {
+        for (String prefix : prefixes) {
+            if (key.startsWith(prefix)) {
+                return prefix;
+            }
+        }
+        return null;
+    }
+
+    private void checkPrefix(String prefix) {
+        Assert.isTrue(prefixes.contains(prefix), "prefix " + prefix + " is not in common.redis.dictionary.prefixes");
+    }
+
+    private byte[] sample(String key) {
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        try {
+            byte[] value = template.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey(template, key)));
+            return value == null ? null : decompress(value);
+        } catch (DataAccessException | IllegalStateException e) {
+            // 非string类型或无法解压的值不作为样本
+            logger.debug("skip dictionary sample {}", key, e);
+            return null;
+        }
+    }
+
+    private int publish(String prefix, byte[] dictionary) {
+        int id = nextId();
+        String dictionaryKey = dictionaryKey(id);
+        for (RedisTemplate<String, Object> template : redisTemplateRoute.getTemplates()) {
+            template.execute((RedisCallback<Object>) connection -> {
+                connection.set(rawKey(template, dictionaryKey), dictionary);
+                return null;
+            });
+        }
+        saveLocal(id, dictionary);
+        dictionaries.put(id, dictionary);
+        missing.remove(id);
+
+        String currentKey = currentKey(prefix);
+        RedisTemplate<String, Object> currentTemplate = redisTemplateRoute.getTemplate(currentKey);
+        currentTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.set(rawKey(currentTemplate, currentKey), String.valueOf(id).getBytes(StandardCharsets.UTF_8));
+            return null;
+        });
+        currentIds.put(prefix, id);
+        return id;
+    }
+
+    private void refresh() {
+        for (String prefix : prefixes) {
+            try {
+                String currentKey = currentKey(prefix);
+                RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(currentKey);
+                byte[] value = template.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey(template, currentKey)));
+                if (value == null) {
+                    continue;
+                }
+                int id = Integer.parseInt(new String(value, StandardCharsets.UTF_8));
+                // 先加载字典再切换版本，压缩时不会遇到字典缺失
+                dictionary(id);
+                currentIds.put(prefix, id);
+            } catch (RuntimeException e) {
+                logger.warn("refresh dictionary of prefix {} failed", prefix, e);
+            }
+        }
+    }
+
+    /**
+     * 分配新的版本号；序号所在分片被清空后INCR会从头开始，跳过在任一分片或本地已存在的版本，避免覆盖旧字典
+     */
+    private int nextId() {
+        String sequenceKey = dictionaryProperties.getKeyPrefix() + "seq";
+        RedisTemplate<String, Object> sequenceTemplate = redisTemplateRoute.getTemplate(sequenceKey);
+        while (true) {
+            Long sequence = sequenceTemplate.execute((RedisCallback<Long>) connection -> connection.incr(rawKey(sequenceTemplate, sequenceKey)));
+            int id = sequence.intValue();
+            if (!dictionaries.containsKey(id) && !existsLocal(id) && !existsOnAnyShard(id)) {
+                return id;
+            }
+            logger.warn("dictionary {} already exists, sequence {} was reset, skipped", id, sequenceKey);
+        }
+    }
+
+    private boolean existsOnAnyShard(int id) {
+        String dictionaryKey = dictionaryKey(id);
+        for (RedisTemplate<String, Object> template : redisTemplateRoute.getTemplates()) {
+            Boolean exists = template.execute((RedisCallback<Boolean>) connection -> connection.exists(rawKey(template, dictionaryKey)));
+            if (Boolean.TRUE.equals(exists)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 依次从各分片、本地文件查找字典，找到后补齐缺失的分片副本和本地副本
+     */
+    private byte[] dictionary(int id) {
+        byte[] dictionary = dictionaries.get(id);
+        if (dictionary != null) {
+            return dictionary;
+        }
+        Long missedAt = missing.get(id);
+        long retryMillis = TimeUnit.SECONDS.toMillis(Math.max(1, dictionaryProperties.getRefreshSeconds()));
+        if (missedAt != null && System.currentTimeMillis() - missedAt < retryMillis) {
+            throw new MissingDictionaryException(id);
+        }
+        String dictionaryKey = dictionaryKey(id);
+        List<RedisTemplate<String, Object>> lost = new ArrayList<>();
+        for (RedisTemplate<String, Object> template : redisTemplateRoute.getTemplates()) {
+            try {
+                byte[] copy = template.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey(template, dictionaryKey)));
+                if (copy == null) {
+                    lost.add(template);
+                } else if (dictionary == null) {
+                    dictionary = copy;
+                }
+            } catch (DataAccessException e) {
+                logger.warn("read dictionary {} failed", id, e);
+            }
+        }
+        if (dictionary == null) {
+            dictionary = loadLocal(id);
+        } else if (!existsLocal(id)) {
+            saveLocal(id, dictionary);
+        }
+        if (dictionary == null) {
+            missing.put(id, System.currentTimeMillis());
+            throw new MissingDictionaryException(id);
+        }
+        byte[] found = dictionary;
+        for (RedisTemplate<String, Object> template : lost) {
+            try {
+                template.execute((RedisCallback<Boolean>) connection -> connection.setNX(rawKey(template, dictionaryKey), found));
+            } catch (DataAccessException e) {
+                logger.warn("restore dictionary {} failed", id, e);
+            }
+        }
+        missing.remove(id);
+        byte[] previous = dictionaries.putIfAbsent(id, dictionary);
+        return previous != null ? previous : dictionary;
+    }
+
+    /**
+     * 本地副本的路径，文件名带上keyPrefix，同一台机器上的不同应用不会互相覆盖
+     */
+    private Path localFile(int id) {
+        String localDir = dictionaryProperties.getLocalDir();
+        if (localDir == null || localDir.isEmpty()) {
+            return null;
+        }
+        return Paths.get(localDir, dictionaryProperties.getKeyPrefix().replaceAll("[^A-Za-z0-9._-]", "_") + id + ".dict");
+    }
+
+    private boolean existsLocal(int id) {
+        Path file = localFile(id);
+        return file != null && Files.isRegularFile(file);
+    }
+
+    private byte[] loadLocal(int id) {
+        Path file = localFile(id);
+        if (file == null || !Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException e) {
+            logger.warn("read local dictionary {} failed", file, e);
+            return null;
+        }
+    }
+
+    private void saveLocal(int id, byte[] dictionary) {
+        Path file = localFile(id);
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            Files.write(temp, dictionary);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("save local dictionary {} failed", file, e);
+        }
+    }
+
+    private String dictionaryKey(int id) {
+        return dictionaryProperties.getKeyPrefix() + "id:" + id;
+    }
+
+    private String currentKey(String prefix) {
+        return dictionaryProperties.getKeyPrefix() + "current:" + prefix;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static byte[] rawKey(RedisTemplate<String, Object> template, String key) {
+        return ((RedisSerializer<String>) template.getKeySerializer()).serialize(key);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,126 @@
+package com.wp.redis.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * 从样本中训练deflate预置字典：统计8字节片段在多少个样本中出现，贪心挑选覆盖高频片段最多的样本片段，
+ * 已被选中的片段不再计分；得分最高的片段放在字典末尾，压缩时引用距离最短
+ */
+public final class DictionaryTrainer {
+
+    private static final int GRAM = 8;
+
+    private DictionaryTrainer() {
+    }
+
+    /**
+     * @param samples       样本(未压缩的值)
+     * @param maxSize       字典最大字节数
+     * @param segmentLength 挑选的片段长度
+     * @return 字典，样本之间没有公共内容时返回空数组
+     */
+    public static byte[] train(List<byte[]> samples, int maxSize, int segmentLength) {
+        int length = Math.max(GRAM, segmentLength);
+        Map<Long, Integer> frequencies = new HashMap<>();
+        for (byte[] sample : samples) {
+            Set<Long> seen = new HashSet<>();
+            for (int i = 0; i + GRAM <= sample.length; i++) {
+                long gram = gram(sample, i);
+                if (seen.add(gram)) {
+                    frequencies.merge(gram, 1, Integer::sum);
+                }
+            }
+        }
+        // 只在一个样本中出现的片段对其它值没有帮助
+        frequencies.values().removeIf(frequency -> frequency < 2);
+
+        PriorityQueue<Segment> queue = new PriorityQueue<>((a, b) -> Long.compare(b.score, a.score));
+        int step = Math.max(1, length / 4);
+        for (byte[] sample : samples) {
+            for (int start = 0; start < sample.length; start += step) {
+                Segment segment = new Segment(sample, start, Math.min(length, sample.length - start));
+                segment.score = score(frequencies, segment);
+                if (segment.score > 0) {
+                    queue.add(segment);
+                }
+                if (start + length >= sample.length) {
+                    break;
+                }
+            }
+        }
+
+        List<Segment> chosen = new ArrayList<>();
+        int size = 0;
+        while (!queue.isEmpty() && size < maxSize) {
+            Segment segment = queue.poll();
+            // 得分只会下降，重新计算后仍不低于队首才选中，否则放回
+            long score = score(frequencies, segment);
+            if (score <= 0) {
+                continue;
+            }
+            if (!queue.isEmpty() && score < queue.peek().score) {
+                segment.score = score;
+                queue.add(segment);
+                continue;
+            }
+            chosen.add(segment);
+            size += segment.length;
+            for (int i = segment.start; i + GRAM <= segment.start + segment.length; i++) {
+                frequencies.remove(gram(segment.bytes, i));
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        for (int i = chosen.size() - 1; i >= 0; i--) {
+            Segment segment = chosen.get(i);
+            out.write(segment.bytes, segment.start, segment.length);
+        }
+        byte[] dictionary = out.toByteArray();
+        if (dictionary.length > maxSize) {
+            byte[] trimmed = new byte[maxSize];
+            System.arraycopy(dictionary, dictionary.length - maxSize, trimmed, 0, maxSize);
+            return trimmed;
+        }
+        return dictionary;
+    }
+
+    private static long score(Map<Long, Integer> frequencies, Segment segment) {
+        Set<Long> distinct = new HashSet<>();
+        long score = 0;
+        for (int i = segment.start; i + GRAM <= segment.start + segment.length; i++) {
+            long gram = gram(segment.bytes, i);
+            if (distinct.add(gram)) {
+                score += frequencies.getOrDefault(gram, 0);
+            }
+        }
+        return score;
+    }
+
+    private static long gram(byte[] bytes, int offset) {
+        long gram = 0;
+        for (int i = 0; i < GRAM; i++) {
+            gram = (gram << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return gram;
+    }
+
+    private static final class Segment {
+        private final byte[] bytes;
+        private final int start;
+        private final int length;
+        private long score;
+
+        private Segment(byte[] bytes, int start, int length) {
+            this.bytes = bytes;
+            this.start = start;
+            this.length = length;
+        }
+    }
+}
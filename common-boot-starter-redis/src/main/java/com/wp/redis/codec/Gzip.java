@@ -0,0 +1,40 @@
+package com.wp.redis.codec;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * gzip压缩与识别(头两个字节为0x1f8b)
+ */
+public final class Gzip {
+
+    private Gzip() {
+    }
+
+    public static boolean isGzip(byte[] bytes) {
+        return bytes != null && bytes.length > 2 && bytes[0] == (byte) 0x1f && bytes[1] == (byte) 0x8b;
+    }
+
+    public static byte[] compress(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 32);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new IllegalStateException("gzip failed", e);
+        }
+        return out.toByteArray();
+    }
+
+    public static byte[] decompress(byte[] bytes) {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return IOUtils.toByteArray(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("corrupt gzip value", e);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.wp.redis.codec;
+
+/**
+ * 值压缩时使用的字典在各分片和本地文件中都已不存在，值无法再解压，按缓存未命中处理
+ */
+public class MissingDictionaryException extends IllegalStateException {
+
+    private final int dictionaryId;
+
+    public MissingDictionaryException(int dictionaryId) {
+        super("dictionary " + dictionaryId + " not found in redis or local files");
+        this.dictionaryId = dictionaryId;
+    }
+
+    public int getDictionaryId() {
+        return dictionaryId;
+    }
+}
@@ -0,0 +1,441 @@
+package com.wp.redis.codec;
+
+import com.alibaba.fastjson.JSON;
+import org.bson.types.ObjectId;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+
+/**
+ * 把bean的属性打包成一个二进制块：数值用zigzag变长整数，Date存毫秒，ObjectId存12字节，枚举存名称，
+ * 其它类型(包括Timestamp等Date的子类)用fastjson。块头部带有按属性名、类型和编码方式计算的schema版本，
+ * 类结构变化后旧数据解码失败，按未命中处理。
+ * <p>
+ * 格式：格式号(1) schema版本(4) 属性是否为null的位图 非null属性的值(按属性名排序)
+ */
+public class PackedBeanCodec {
+
+    /**
+     * 二进制块所在的hash字段
+     */
+    public static final String PACKED_FIELD = "_p";
+
+    private static final byte FORMAT = 1;
+
+    private final ConcurrentMap<Class<?>, BeanSchema> schemas = new ConcurrentHashMap<>();
+
+    /**
+     * 标注了 {@link PackedSeparate} 的属性名
+     *
+     * @param type
+     * @return
+     */
+    public Set<String> separateFields(Class<?> type) {
+        return Collections.unmodifiableSet(schema(type).separate);
+    }
+
+    public byte[] encode(Object bean) {
+        BeanSchema schema = schema(bean.getClass());
+        List<PackedProperty> properties = schema.properties;
+        Object[] values = new Object[properties.size()];
+        byte[] bitmap = new byte[(properties.size() + 7) / 8];
+        for (int i = 0; i < properties.size(); i++) {
+            values[i] = properties.get(i).read(bean);
+            if (values[i] != null) {
+                bitmap[i >>> 3] |= 1 << (i & 7);
+            }
+        }
+        Writer writer = new Writer(64 + properties.size() * 4);
+        writer.writeByte(FORMAT);
+        writer.writeFixedInt(schema.version);
+        writer.writeBytes(bitmap);
+        for (int i = 0; i < properties.size(); i++) {
+            if (values[i] != null) {
+                properties.get(i).encode(writer, values[i]);
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * 把二进制块中的属性写入bean
+     *
+     * @param bytes
+     * @param bean
+     * @return 格式或schema版本不一致时返回false，bean不变
+     */
+    public boolean decodeInto(byte[] bytes, Object bean) {
+        BeanSchema schema = schema(bean.getClass());
+        Reader reader = new Reader(bytes);
+        if (bytes.length < 5 || reader.readByte() != FORMAT || reader.readFixedInt() != schema.version) {
+            return false;
+        }
+        List<PackedProperty> properties = schema.properties;
+        byte[] bitmap = reader.readBytes((properties.size() + 7) / 8);
+        Object[] values = new Object[properties.size()];
+        for (int i = 0; i < properties.size(); i++) {
+            if ((bitmap[i >>> 3] & (1 << (i & 7))) != 0) {
+                values[i] = properties.get(i).decode(reader);
+            }
+        }
+        for (int i = 0; i < properties.size(); i++) {
+            if (values[i] != null) {
+                properties.get(i).write(bean, values[i]);
+            }
+        }
+        return true;
+    }
+
+    private BeanSchema schema(Class<?> type) {
+        BeanSchema schema = schemas.get(type);
+        if (schema == null) {
+            schema = schemas.computeIfAbsent(type, BeanSchema::new);
+        }
+        return schema;
+    }
+
+    private enum Kind {
+        BOOLEAN, BYTE, SHORT, CHAR, INT, LONG, FLOAT, DOUBLE, STRING, DATE, OBJECT_ID, ENUM, STRING_ARRAY, JSON
+    }
+
+    private static final class BeanSchema {
+        private final List<PackedProperty> properties = new ArrayList<>();
+        private final Set<String> separate = new LinkedHashSet<>();
+        private final int version;
+
+        private BeanSchema(Class<?> type) {
+            BeanInfo beanInfo;
+            try {
+                beanInfo = Introspector.getBeanInfo(type);
+            } catch (IntrospectionException e) {
+                throw new IllegalArgumentException("cannot introspect " + type, e);
+            }
+            List<PropertyDescriptor> descriptors = new ArrayList<>(Arrays.asList(beanInfo.getPropertyDescriptors()));
+            descriptors.sort(Comparator.comparing(PropertyDescriptor::getName));
+            CRC32 crc = new CRC32();
+            for (PropertyDescriptor descriptor : descriptors) {
+                if (descriptor.getReadMethod() == null || descriptor.getWriteMethod() == null) {
+                    continue;
+                }
+                if (isSeparate(type, descriptor)) {
+                    separate.add(descriptor.getName());
+                    continue;
+                }
+                PackedProperty property = new PackedProperty(descriptor);
+                properties.add(property);
+                crc.update((descriptor.getName() + ":" + descriptor.getReadMethod().getGenericReturnType().getTypeName()
+                        + ":" + property.kind + ";").getBytes(StandardCharsets.UTF_8));
+            }
+            this.version = (int) crc.getValue();
+        }
+
+        private static boolean isSeparate(Class<?> type, PropertyDescriptor descriptor) {
+            if (descriptor.getReadMethod().isAnnotationPresent(PackedSeparate.class)) {
+                return true;
+            }
+            for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                try {
+                    Field field = current.getDeclaredField(descriptor.getName());
+                    return field.isAnnotationPresent(PackedSeparate.class);
+                } catch (NoSuchFieldException e) {
+                    // 继续查找父类
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class PackedProperty {
+        private final Method readMethod;
+        private final Method writeMethod;
+        private final Class<?> type;
+        private final Type genericType;
+        private final Kind kind;
+
+        private PackedProperty(PropertyDescriptor descriptor) {
+            this.readMethod = descriptor.getReadMethod();
+            this.writeMethod = descriptor.getWriteMethod();
+            this.type = descriptor.getPropertyType();
+            this.genericType = readMethod.getGenericReturnType();
+            this.kind = kindOf(type);
+        }
+
+        private static Kind kindOf(Class<?> type) {
+            if (type == boolean.class || type == Boolean.class) {
+                return Kind.BOOLEAN;
+            } else if (type == byte.class || type == Byte.class) {
+                return Kind.BYTE;
+            } else if (type == short.class || type == Short.class) {
+                return Kind.SHORT;
+            } else if (type == char.class || type == Character.class) {
+                return Kind.CHAR;
+            } else if (type == int.class || type == Integer.class) {
+                return Kind.INT;
+            } else if (type == long.class || type == Long.class) {
+                return Kind.LONG;
+            } else if (type == float.class || type == Float.class) {
+                return Kind.FLOAT;
+            } else if (type == double.class || type == Double.class) {
+                return Kind.DOUBLE;
+            } else if (type == String.class) {
+                return Kind.STRING;
+            } else if (type == Date.class) {
+                // 子类(Timestamp的纳秒、java.sql.Date)只存毫秒会丢失类型，走JSON
+                return Kind.DATE;
+            } else if (type == ObjectId.class) {
+                return Kind.OBJECT_ID;
+            } else if (type.isEnum()) {
+                return Kind.ENUM;
+            } else if (type == String[].class) {
+                return Kind.STRING_ARRAY;
+            }
+            return Kind.JSON;
+        }
+
+        private Object read(Object bean) {
+            try {
+                return readMethod.invoke(bean);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("cannot read " + readMethod, e);
+            }
+        }
+
+        private void write(Object bean, Object value) {
+            try {
+                writeMethod.invoke(bean, value);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("cannot write " + writeMethod, e);
+            }
+        }
+
+        private void encode(Writer writer, Object value) {
+            switch (kind) {
+                case BOOLEAN:
+                    writer.writeByte((Boolean) value ? 1 : 0);
+                    break;
+                case BYTE:
+                    writer.writeByte((Byte) value);
+                    break;
+                case SHORT:
+                    writer.writeVarLong((Short) value);
+                    break;
+                case CHAR:
+                    writer.writeVarLong((Character) value);
+                    break;
+                case INT:
+                    writer.writeVarLong((Integer) value);
+                    break;
+                case LONG:
+                    writer.writeVarLong((Long) value);
+                    break;
+                case FLOAT:
+                    writer.writeFixedInt(Float.floatToIntBits((Float) value));
+                    break;
+                case DOUBLE:
+                    long bits = Double.doubleToLongBits((Double) value);
+                    writer.writeFixedInt((int) (bits >>> 32));
+                    writer.writeFixedInt((int) bits);
+                    break;
+                case STRING:
+                    writer.writeString((String) value);
+                    break;
+                case DATE:
+                    writer.writeVarLong(((Date) value).getTime());
+                    break;
+                case OBJECT_ID:
+                    writer.writeBytes(((ObjectId) value).toByteArray());
+                    break;
+                case ENUM:
+                    writer.writeString(((Enum<?>) value).name());
+                    break;
+                case STRING_ARRAY:
+                    String[] array = (String[]) value;
+                    writer.writeVarLong(array.length);
+                    for (String item : array) {
+                        writer.writeNullableString(item);
+                    }
+                    break;
+                default:
+                    writer.writeString(JSON.toJSONString(value));
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Object decode(Reader reader) {
+            switch (kind) {
+                case BOOLEAN:
+                    return reader.readByte() != 0;
+                case BYTE:
+                    return reader.readByte();
+                case SHORT:
+                    return (short) reader.readVarLong();
+                case CHAR:
+                    return (char) reader.readVarLong();
+                case INT:
+                    return (int) reader.readVarLong();
+                case LONG:
+                    return reader.readVarLong();
+                case FLOAT:
+                    return Float.intBitsToFloat(reader.readFixedInt());
+                case DOUBLE:
+                    long high = reader.readFixedInt() & 0xFFFFFFFFL;
+                    long low = reader.readFixedInt() & 0xFFFFFFFFL;
+                    return Double.longBitsToDouble((high << 32) | low);
+                case STRING:
+                    return reader.readString();
+                case DATE:
+                    return new Date(reader.readVarLong());
+                case OBJECT_ID:
+                    return new ObjectId(reader.readBytes(12));
+                case ENUM:
+                    return Enum.valueOf((Class<? extends Enum>) type, reader.readString());
+                case STRING_ARRAY:
+                    String[] array = new String[(int) reader.readVarLong()];
+                    for (int i = 0; i < array.length; i++) {
+                        array[i] = reader.readNullableString();
+                    }
+                    return array;
+                default:
+                    return JSON.parseObject(reader.readString(), genericType);
+            }
+        }
+    }
+
+    private static final class Writer {
+        private byte[] buffer;
+        private int position;
+
+        private Writer(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        private void ensure(int length) {
+            if (position + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+            }
+        }
+
+        private void writeByte(int value) {
+            ensure(1);
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private void writeFixedInt(int value) {
+            ensure(4);
+            buffer[position++] = (byte) (value >>> 24);
+            buffer[position++] = (byte) (value >>> 16);
+            buffer[position++] = (byte) (value >>> 8);
+            buffer[position++] = (byte) value;
+        }
+
+        /**
+         * zigzag后按7位一组的变长编码，小的正负数都只占1~2字节
+         */
+        private void writeVarLong(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            ensure(10);
+            while ((zigzag & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buffer[position++] = (byte) zigzag;
+        }
+
+        private void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            writeBytes(bytes);
+        }
+
+        /**
+         * null写为长度-1
+         */
+        private void writeNullableString(String value) {
+            if (value == null) {
+                writeVarLong(-1);
+            } else {
+                writeString(value);
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buffer;
+        private int position;
+
+        private Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        private byte readByte() {
+            return buffer[position++];
+        }
+
+        private byte[] readBytes(int length) {
+            byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+            position += length;
+            return bytes;
+        }
+
+        private int readFixedInt() {
+            return ((buffer[position++] & 0xFF) << 24) | ((buffer[position++] & 0xFF) << 16)
+                    | ((buffer[position++] & 0xFF) << 8) | (buffer[position++] & 0xFF);
+        }
+
+        private long readVarLong() {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer[position++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        private String readString() {
+            int length = (int) readVarLong();
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private String readNullableString() {
+            int length = (int) readVarLong();
+            if (length < 0) {
+                return null;
+            }
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.wp.redis.codec;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 紧凑编码时该属性仍作为单独的hash字段保存，可以用HGET/HMGET单独读取；可以标注在字段或getter上
+ */
+@Target({ElementType.FIELD, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface PackedSeparate {
+}
@@ -0,0 +1,40 @@
+package com.wp.redis.codec;
+
+import java.util.Arrays;
+
+/**
+ * setRaw存入的值的格式标记：第一个字节记录原样、gzip或字典压缩，读取时只按标记解码，
+ * 不根据内容的头部猜测，调用方的字节以任何值开头都能原样读回
+ */
+public final class RawFormat {
+
+    public static final byte PLAIN = 0;
+    public static final byte GZIP = 1;
+    public static final byte DICTIONARY = 2;
+
+    private RawFormat() {
+    }
+
+    public static byte[] tag(byte format, byte[] payload) {
+        byte[] out = new byte[payload.length + 1];
+        out[0] = format;
+        System.arraycopy(payload, 0, out, 1, payload.length);
+        return out;
+    }
+
+    /**
+     * @param value 带标记的值
+     * @return 格式标记
+     * @throws IllegalStateException 不是setRaw存入的值
+     */
+    public static byte format(byte[] value) {
+        if (value.length == 0 || value[0] < PLAIN || value[0] > DICTIONARY) {
+            throw new IllegalStateException("not a raw value, unknown format tag");
+        }
+        return value[0];
+    }
+
+    public static byte[] payload(byte[] value) {
+        return Arrays.copyOfRange(value, 1, value.length);
+    }
+}
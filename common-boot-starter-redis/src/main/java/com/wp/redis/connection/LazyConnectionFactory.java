@@ -0,0 +1,91 @@
+package com.wp.redis.connection;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConnection;
+
+import java.util.function.Supplier;
+
+/**
+ * 第一次获取连接时才创建真正的连接工厂，用于很少访问的分片，不拖慢启动
+ */
+public class LazyConnectionFactory implements RedisConnectionFactory, DisposableBean {
+
+    private final String hostName;
+    private final Supplier<RedisConnectionFactory> creator;
+    private volatile RedisConnectionFactory delegate;
+
+    public LazyConnectionFactory(String hostName, Supplier<RedisConnectionFactory> creator) {
+        this.hostName = hostName;
+        this.creator = creator;
+    }
+
+    /**
+     * 获取真正的连接工厂，未初始化时创建
+     *
+     * @return
+     */
+    public RedisConnectionFactory getDelegate() {
+        RedisConnectionFactory factory = delegate;
+        if (factory == null) {
+            synchronized (this) {
+                factory = delegate;
+                if (factory == null) {
+                    factory = creator.get();
+                    delegate = factory;
+                }
+            }
+        }
+        return factory;
+    }
+
+    /**
+     * 已初始化时返回真正的连接工厂，否则返回null
+     *
+     * @return
+     */
+    public RedisConnectionFactory getDelegateIfInitialized() {
+        return delegate;
+    }
+
+    public String getHostName() {
+        return hostName;
+    }
+
+    @Override
+    public RedisConnection getConnection() {
+        return getDelegate().getConnection();
+    }
+
+    @Override
+    public RedisClusterConnection getClusterConnection() {
+        return getDelegate().getClusterConnection();
+    }
+
+    @Override
+    public boolean getConvertPipelineAndTxResults() {
+        return getDelegate().getConvertPipelineAndTxResults();
+    }
+
+    @Override
+    public RedisSentinelConnection getSentinelConnection() {
+        return getDelegate().getSentinelConnection();
+    }
+
+    @Override
+    public DataAccessException translateExceptionIfPossible(RuntimeException ex) {
+        RedisConnectionFactory factory = delegate;
+        return factory != null ? factory.translateExceptionIfPossible(ex) : null;
+    }
+
+    @Override
+    public synchronized void destroy() throws Exception {
+        if (delegate instanceof DisposableBean) {
+            ((DisposableBean) delegate).destroy();
+        }
+        delegate = null;
+    }
+}
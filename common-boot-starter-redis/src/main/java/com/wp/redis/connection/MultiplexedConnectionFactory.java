@@ -0,0 +1,120 @@
+package com.wp.redis.connection;
+
+import com.lambdaworks.redis.resource.ClientResources;
+import com.lambdaworks.redis.resource.DefaultClientResources;
+import com.wp.redis.properties.RedisConfigProperties;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个分片的多路复用连接工厂
+ * 内部持有少量共享的Lettuce长连接，按轮询分配给调用方，多个线程的命令在同一连接上流水线发送，
+ * 不再需要为每个并发请求占用一个socket。所有分片共用一组netty事件循环线程。
+ */
+public class MultiplexedConnectionFactory implements RedisConnectionFactory, InitializingBean, DisposableBean {
+
+    private static ClientResources sharedResources;
+    private static int sharedResourcesRefCount;
+
+    private final String hostName;
+    private final RedisConfigProperties redisConfigProperties;
+    private final List<LettuceConnectionFactory> factories = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+
+    public MultiplexedConnectionFactory(String hostName, RedisConfigProperties redisConfigProperties) {
+        this.hostName = hostName;
+        this.redisConfigProperties = redisConfigProperties;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        ClientResources clientResources = acquireResources();
+        int connections = Math.max(1, redisConfigProperties.getConnectionsPerShard());
+        for (int i = 0; i < connections; i++) {
+            LettuceConnectionFactory factory = new LettuceConnectionFactory();
+            factory.setClientResources(clientResources);
+            factory.setHostName(hostName);
+            factory.setPort(redisConfigProperties.getPort());
+            factory.setPassword(redisConfigProperties.getPassword());
+            factory.setTimeout(redisConfigProperties.getTimeout());
+            factory.setDatabase(redisConfigProperties.getDatabase());
+            factory.setShareNativeConnection(true);
+            factory.afterPropertiesSet();
+            factories.add(factory);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        for (LettuceConnectionFactory factory : factories) {
+            factory.destroy();
+        }
+        factories.clear();
+        releaseResources();
+    }
+
+    private LettuceConnectionFactory nextFactory() {
+        return factories.get((next.getAndIncrement() & Integer.MAX_VALUE) % factories.size());
+    }
+
+    @Override
+    public RedisConnection getConnection() {
+        return nextFactory().getConnection();
+    }
+
+    /**
+     * 分片模式没有配置集群，交给Lettuce工厂抛出Spring的InvalidDataAccessApiUsageException
+     */
+    @Override
+    public RedisClusterConnection getClusterConnection() {
+        return factories.get(0).getClusterConnection();
+    }
+
+    @Override
+    public boolean getConvertPipelineAndTxResults() {
+        return factories.get(0).getConvertPipelineAndTxResults();
+    }
+
+    /**
+     * 分片模式没有配置哨兵，交给Lettuce工厂抛出Spring的InvalidDataAccessResourceUsageException
+     */
+    @Override
+    public RedisSentinelConnection getSentinelConnection() {
+        return factories.get(0).getSentinelConnection();
+    }
+
+    @Override
+    public DataAccessException translateExceptionIfPossible(RuntimeException ex) {
+        return factories.get(0).translateExceptionIfPossible(ex);
+    }
+
+    public String getHostName() {
+        return hostName;
+    }
+
+    private static synchronized ClientResources acquireResources() {
+        if (sharedResources == null) {
+            sharedResources = DefaultClientResources.create();
+        }
+        sharedResourcesRefCount++;
+        return sharedResources;
+    }
+
+    private static synchronized void releaseResources() {
+        if (sharedResources != null && --sharedResourcesRefCount == 0) {
+            sharedResources.shutdown(0, 2, TimeUnit.SECONDS);
+            sharedResources = null;
+        }
+    }
+}
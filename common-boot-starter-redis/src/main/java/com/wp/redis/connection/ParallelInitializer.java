@@ -0,0 +1,59 @@
+package com.wp.redis.connection;
+
+import org.springframework.beans.factory.BeanCreationException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * 启动时并发初始化各分片，结果与输入顺序一致(分片顺序决定一致性hash路由)
+ */
+public class ParallelInitializer {
+
+    /**
+     * @param inputs  如host列表
+     * @param creator 初始化逻辑
+     * @param threads 线程数，小于等于1或只有一个输入时在当前线程依次执行
+     * @return 与inputs顺序一致的结果
+     */
+    public static <I, T> List<T> map(List<I> inputs, Function<I, T> creator, int threads) {
+        List<T> results = new ArrayList<>(inputs.size());
+        if (threads <= 1 || inputs.size() <= 1) {
+            for (I input : inputs) {
+                results.add(creator.apply(input));
+            }
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, inputs.size()), r -> {
+            Thread thread = new Thread(r, "redis-init");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<T>> futures = new ArrayList<>(inputs.size());
+            for (I input : inputs) {
+                futures.add(executor.submit(() -> creator.apply(input)));
+            }
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BeanCreationException("interrupted while initializing redis shards", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new BeanCreationException("failed to initialize redis shards", cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.wp.redis.connection;
+
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.util.Pool;
+
+/**
+ * 保留连接池引用的JedisConnectionFactory，用于采集每个分片的连接池指标
+ */
+public class ShardJedisConnectionFactory extends JedisConnectionFactory {
+
+    private volatile Pool<Jedis> pool;
+
+    @Override
+    protected Pool<Jedis> createRedisPool() {
+        Pool<Jedis> redisPool = super.createRedisPool();
+        this.pool = redisPool;
+        return redisPool;
+    }
+
+    /**
+     * 获取连接池，未启用连接池时返回null
+     *
+     * @return
+     */
+    public Pool<Jedis> getPool() {
+        return pool;
+    }
+}
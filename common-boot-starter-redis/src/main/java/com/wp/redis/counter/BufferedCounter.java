@@ -0,0 +1,282 @@
+package com.wp.redis.counter;
+
+import com.wp.redis.properties.CounterProperties;
+import com.wp.redis.routes.RedisTemplateRoute;
+import com.wp.redis.utils.ScriptUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 计数器本地聚合：自增先累加到进程内的LongAdder，定时或达到阈值时按分片INCRBY到redis，关闭时刷新剩余的增量
+ * <p>
+ * 返回值为最近一次刷新得到的redis值加上本地未刷新的增量，是近似值；新的key在第一次刷新前只有本地增量，
+ * redis值由刷新脚本返回，请求线程不访问redis。
+ * 每个分片的增量用一个带刷新标记的脚本原子写入，收到回复后删除标记；失败时保留标记并用它重试，部分写入或重复发送都不会重复计数
+ */
+public class BufferedCounter implements DisposableBean {
+
+    private static Logger logger = LoggerFactory.getLogger(BufferedCounter.class);
+
+    /**
+     * 连续这么多个刷新周期没有自增的key从本地移除
+     */
+    private static final int IDLE_FLUSHES = 10;
+
+    /**
+     * 每次自增以1/64的概率检查是否达到刷新阈值，避免每次都汇总计数
+     */
+    private static final int THRESHOLD_CHECK_MASK = 63;
+
+    /**
+     * 每个脚本写入的最大key数
+     */
+    private static final int FLUSH_BATCH = 1000;
+
+    /**
+     * 刷新标记的过期时间，失败的刷新需要在这个时间内重试成功；成功的刷新随即删除标记，只有删除失败时才等待过期
+     */
+    private static final long FLUSH_MARK_TTL_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * KEYS[1] 刷新标记, KEYS[2..] 计数器, ARGV[1] 标记过期毫秒, ARGV[2..] 增量；
+     * 标记已存在(上次已写入只是没有收到回复)时只读取当前值，返回各计数器写入后的值
+     */
+    private static final DefaultRedisScript<List<Object>> FLUSH = new DefaultRedisScript<>();
+
+    static {
+        FLUSH.setScriptText("local applied = redis.call('exists', KEYS[1]) == 1\n"
+                + "local values = {}\n"
+                + "for i = 2, #KEYS do\n"
+                + "  if applied then\n"
+                + "    values[i - 1] = tonumber(redis.call('get', KEYS[i]) or '0')\n"
+                + "  else\n"
+                + "    values[i - 1] = redis.call('incrby', KEYS[i], ARGV[i])\n"
+                + "  end\n"
+                + "end\n"
+                + "if not applied then redis.call('set', KEYS[1], '1', 'PX', ARGV[1]) end\n"
+                + "return values");
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final RedisTemplateRoute redisTemplateRoute;
+    private final CounterProperties counterProperties;
+    private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<>();
+    private final LongAdder pendingOps = new LongAdder();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+    /**
+     * 刷新标记前缀，每个实例不同
+     */
+    private final String markPrefix = "counter:flush:" + UUID.randomUUID() + ":";
+    private final AtomicLong flushSequence = new AtomicLong();
+    /**
+     * 写入失败、等待用同一个标记重试的刷新
+     */
+    private final List<PendingFlush> retries = new ArrayList<>();
+
+    public BufferedCounter(RedisTemplateRoute redisTemplateRoute, CounterProperties counterProperties) {
+        this.redisTemplateRoute = redisTemplateRoute;
+        this.counterProperties = counterProperties;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-counter-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long flushMillis = Math.max(10, counterProperties.getFlushMillis());
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 是否需要直接INCRBY
+     *
+     * @param key
+     * @return
+     */
+    public boolean isExact(String key) {
+        for (String prefix : counterProperties.getExactPrefixes()) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 累加到本地
+     *
+     * @param key
+     * @param delta
+     * @return 近似的自增后的值
+     */
+    public long add(String key, long delta) {
+        Slot slot = slots.computeIfAbsent(key, k -> new Slot());
+        slot.pending.add(delta);
+        slot.lastAdd = System.currentTimeMillis();
+        pendingOps.increment();
+        if ((ThreadLocalRandom.current().nextInt() & THRESHOLD_CHECK_MASK) == 0
+                && pendingOps.sum() >= counterProperties.getFlushThreshold()
+                && flushRequested.compareAndSet(false, true)) {
+            scheduler.execute(this::flushQuietly);
+        }
+        return slot.flushed + slot.pending.sum();
+    }
+
+    /**
+     * 把所有本地增量刷新到redis，先重试上次失败的刷新；失败的刷新保留原来的标记等待下次重试
+     */
+    public synchronized void flush() {
+        flushRequested.set(false);
+        pendingOps.reset();
+        List<PendingFlush> failed = new ArrayList<>(retries);
+        retries.clear();
+        for (PendingFlush retry : failed) {
+            apply(retry);
+        }
+        long idleBefore = System.currentTimeMillis() - (long) IDLE_FLUSHES * Math.max(10, counterProperties.getFlushMillis());
+        Map<RedisTemplate<String, Object>, List<String>> keysByShard = new IdentityHashMap<>();
+        Map<String, Long> deltas = new HashMap<>();
+        for (Map.Entry<String, Slot> entry : slots.entrySet()) {
+            String key = entry.getKey();
+            Slot slot = entry.getValue();
+            long delta = slot.pending.sum();
+            if (delta == 0) {
+                if (slot.lastAdd < idleBefore) {
+                    evict(key, slot);
+                }
+                continue;
+            }
+            // 只减去读到的部分，汇总期间并发的自增留在本地
+            slot.pending.add(-delta);
+            deltas.put(key, delta);
+            RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+            List<String> keys = keysByShard.get(template);
+            if (keys == null) {
+                keys = new ArrayList<>();
+                keysByShard.put(template, keys);
+            }
+            keys.add(key);
+        }
+        for (Map.Entry<RedisTemplate<String, Object>, List<String>> entry : keysByShard.entrySet()) {
+            flushShard(entry.getKey(), entry.getValue(), deltas);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void flushShard(RedisTemplate<String, Object> template, List<String> keys, Map<String, Long> deltas) {
+        RedisSerializer<String> keySerializer = (RedisSerializer<String>) template.getKeySerializer();
+        for (int from = 0; from < keys.size(); from += FLUSH_BATCH) {
+            List<String> batch = keys.subList(from, Math.min(keys.size(), from + FLUSH_BATCH));
+            byte[][] keysAndArgs = new byte[2 + batch.size() * 2][];
+            // 标记与计数器在同一个分片上，脚本才能原子执行
+            keysAndArgs[0] = keySerializer.serialize(markPrefix + flushSequence.incrementAndGet());
+            keysAndArgs[1 + batch.size()] = String.valueOf(FLUSH_MARK_TTL_MILLIS).getBytes(UTF_8);
+            for (int i = 0; i < batch.size(); i++) {
+                keysAndArgs[1 + i] = keySerializer.serialize(batch.get(i));
+                keysAndArgs[2 + batch.size() + i] = String.valueOf(deltas.get(batch.get(i))).getBytes(UTF_8);
+            }
+            apply(new PendingFlush(template, new ArrayList<>(batch), keysAndArgs));
+        }
+    }
+
+    /**
+     * 执行刷新脚本并删除标记，成功时更新各key的redis值；失败时放入重试列表，
+     * 删除标记失败时重试只会读取已写入的值
+     */
+    private void apply(PendingFlush pendingFlush) {
+        List<Object> results;
+        try {
+            results = pendingFlush.template.execute((RedisCallback<List<Object>>) connection -> {
+                List<Object> values = ScriptUtil.eval(connection, FLUSH, ReturnType.MULTI, 1 + pendingFlush.keys.size(), pendingFlush.keysAndArgs);
+                connection.del(pendingFlush.keysAndArgs[0]);
+                return values;
+            });
+        } catch (DataAccessException e) {
+            logger.warn("flush {} counters failed, retry next time", pendingFlush.keys.size(), e);
+            retries.add(pendingFlush);
+            return;
+        }
+        for (int i = 0; results != null && i < pendingFlush.keys.size() && i < results.size(); i++) {
+            Slot slot = slots.get(pendingFlush.keys.get(i));
+            if (slot != null && results.get(i) instanceof Long) {
+                slot.flushed = (Long) results.get(i);
+            }
+        }
+    }
+
+    /**
+     * 移除空闲的key；移除前已取到旧slot的线程写入的增量会在下面转移到新slot
+     */
+    private void evict(String key, Slot slot) {
+        if (slots.remove(key, slot)) {
+            long rest = slot.pending.sum();
+            if (rest != 0) {
+                slots.computeIfAbsent(key, k -> new Slot()).pending.add(rest);
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.warn("flush counters failed", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    private static class Slot {
+        private final LongAdder pending = new LongAdder();
+        private volatile long lastAdd = System.currentTimeMillis();
+        /**
+         * 最近一次刷新后redis中的值，第一次刷新前为0
+         */
+        private volatile long flushed;
+    }
+
+    private static class PendingFlush {
+        private final RedisTemplate<String, Object> template;
+        private final List<String> keys;
+        private final byte[][] keysAndArgs;
+
+        private PendingFlush(RedisTemplate<String, Object> template, List<String> keys, byte[][] keysAndArgs) {
+            this.template = template;
+            this.keys = keys;
+            this.keysAndArgs = keysAndArgs;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.wp.redis.expiry;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 过期时间随机化与XFetch概率提前刷新
+ */
+public class ExpiryPolicy {
+
+    private final int ttlJitterPercent;
+    private final double refreshBeta;
+
+    public ExpiryPolicy(int ttlJitterPercent, double refreshBeta) {
+        this.ttlJitterPercent = Math.max(0, ttlJitterPercent);
+        this.refreshBeta = refreshBeta;
+    }
+
+    /**
+     * 在原过期时间上随机延长 [0, ttlJitterPercent%]
+     *
+     * @param time
+     * @param timeUnit
+     * @return 毫秒
+     */
+    public long jitterMillis(long time, TimeUnit timeUnit) {
+        return jitterMillis(time, timeUnit, ttlJitterPercent);
+    }
+
+    /**
+     * 在原过期时间上随机延长 [0, jitterPercent%]
+     *
+     * @return 毫秒
+     */
+    public static long jitterMillis(long time, TimeUnit timeUnit, int jitterPercent) {
+        long millis = timeUnit.toMillis(time);
+        if (jitterPercent <= 0 || millis <= 0) {
+            return millis;
+        }
+        long bound = millis * jitterPercent / 100;
+        return bound > 0 ? millis + ThreadLocalRandom.current().nextLong(bound + 1) : millis;
+    }
+
+    /**
+     * XFetch：剩余时间越短、计算越耗时，越可能提前刷新；各调用方独立随机，同一时刻只有少数调用方去刷新
+     *
+     * @param computeMillis   上次计算耗时
+     * @param remainingMillis 剩余过期时间
+     * @return
+     */
+    public boolean shouldRefresh(long computeMillis, long remainingMillis) {
+        if (remainingMillis < 0) {
+            //没有过期时间
+            return false;
+        }
+        double random = 1.0 - ThreadLocalRandom.current().nextDouble();
+        return -computeMillis * refreshBeta * Math.log(random) >= remainingMillis;
+    }
+}
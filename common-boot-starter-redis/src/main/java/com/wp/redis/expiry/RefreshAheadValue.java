@@ -0,0 +1,36 @@
+package com.wp.redis.expiry;
+
+/**
+ * 提前刷新模式下缓存的值，带上计算耗时
+ */
+public class RefreshAheadValue {
+    private Object value;
+    /**
+     * 加载耗时(毫秒)
+     */
+    private long computeMillis;
+
+    public RefreshAheadValue() {
+    }
+
+    public RefreshAheadValue(Object value, long computeMillis) {
+        this.value = value;
+        this.computeMillis = computeMillis;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public void setValue(Object value) {
+        this.value = value;
+    }
+
+    public long getComputeMillis() {
+        return computeMillis;
+    }
+
+    public void setComputeMillis(long computeMillis) {
+        this.computeMillis = computeMillis;
+    }
+}
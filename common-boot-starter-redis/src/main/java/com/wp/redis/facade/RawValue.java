@@ -0,0 +1,45 @@
+package com.wp.redis.facade;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 未经值序列化的原始字节，用于直接输出到响应
+ */
+public class RawValue {
+
+    private final byte[] bytes;
+    private final boolean gzip;
+
+    public RawValue(byte[] bytes, boolean gzip) {
+        this.bytes = bytes;
+        this.gzip = gzip;
+    }
+
+    /**
+     * @return 为true时内容是gzip压缩的，响应需要加 Content-Encoding: gzip
+     */
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int length() {
+        return bytes.length;
+    }
+
+    /**
+     * 只读的ByteBuffer，不复制
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes);
+    }
+}
@@ -1,20 +1,65 @@
 package com.wp.redis.facade;
 
+import com.wp.redis.batch.CommandBatcher;
+import com.wp.redis.bloom.RedisBloomFilter;
+import com.wp.redis.breaker.ShardGuards;
+import com.wp.redis.breaker.ShardUnavailableException;
+import com.wp.redis.codec.DictionaryCompressor;
+import com.wp.redis.codec.Gzip;
+import com.wp.redis.codec.MissingDictionaryException;
+import com.wp.redis.codec.PackedBeanCodec;
+import com.wp.redis.codec.RawFormat;
+import com.wp.redis.breaker.StaleValueStore;
+import com.wp.redis.chunk.ChunkedValueStore;
+import com.wp.redis.counter.BufferedCounter;
+import com.wp.redis.expiry.ExpiryPolicy;
+import com.wp.redis.expiry.RefreshAheadValue;
+import com.wp.redis.hash.HashScripts;
+import com.wp.redis.hotset.HotKeyTracker;
+import com.wp.redis.list.ListScripts;
+import com.wp.redis.lock.LockProvider;
+import com.wp.redis.lock.SingleServerLockProvider;
+import com.wp.redis.nearcache.NearCache;
+import com.wp.redis.policy.KeyPolicy;
+import com.wp.redis.policy.KeyPolicyTable;
 import com.wp.redis.routes.RedisTemplateRoute;
+import com.wp.redis.properties.CompressionType;
 import com.wp.redis.properties.RedisConfigProperties;
+import com.wp.redis.replica.ReplicaReader;
+import com.wp.redis.scan.KeyScanner;
 import com.wp.redis.utils.ObjectUtil;
+import com.wp.redis.writebehind.HashWrite;
+import com.wp.redis.writebehind.WriteBehindQueue;
 import org.perf4j.StopWatch;
 import org.perf4j.slf4j.Slf4JStopWatch;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * 操作redis
@@ -30,12 +75,123 @@ public class RedisFacade {
 
     private RedisTemplateRoute redisTemplateRoute;
 
-    private RedissonClient redissonClient;
+    private LockProvider lockProvider;
+
+    /**
+     * 过期时间随机化与提前刷新
+     */
+    private ExpiryPolicy expiryPolicy;
+
+    /**
+     * 按key前缀的缓存策略
+     */
+    private final KeyPolicyTable keyPolicies;
+
+    /**
+     * 跨线程合并命令，未开启时为null
+     */
+    private CommandBatcher commandBatcher;
+
+    /**
+     * 分片熔断与并发隔离，未开启时为null
+     */
+    private ShardGuards shardGuards;
+
+    /**
+     * 副本读与对冲请求，未开启时为null
+     */
+    private ReplicaReader replicaReader;
+
+    /**
+     * 计数器本地聚合，未开启时为null
+     */
+    private BufferedCounter bufferedCounter;
+
+    /**
+     * 异步写，未开启时为null
+     */
+    private WriteBehindQueue writeBehindQueue;
+
+    /**
+     * 按模式扫描/删除key
+     */
+    private KeyScanner keyScanner;
+
+    /**
+     * 堆外近端缓存，未开启时为null
+     */
+    private NearCache nearCache;
+
+    /**
+     * 预训练字典压缩，未开启时为null
+     */
+    private DictionaryCompressor dictionaryCompressor;
+
+    /**
+     * 大值分块存储，未开启时为null
+     */
+    private ChunkedValueStore chunkedValueStore;
+
+    /**
+     * 热点key统计，未开启时为null
+     */
+    private HotKeyTracker hotKeyTracker;
+
+    /**
+     * hash对象的紧凑二进制编码，按类缓存schema
+     */
+    private final PackedBeanCodec packedBeanCodec = new PackedBeanCodec();
 
     public RedisFacade(RedisConfigProperties redisConfigProperties, RedisTemplateRoute redisTemplateRoute, RedissonClient redissonClient) {
+        this(redisConfigProperties, redisTemplateRoute, new SingleServerLockProvider(redissonClient));
+    }
+
+    public RedisFacade(RedisConfigProperties redisConfigProperties, RedisTemplateRoute redisTemplateRoute, LockProvider lockProvider) {
         this.redisConfigProperties = redisConfigProperties;
         this.redisTemplateRoute = redisTemplateRoute;
-        this.redissonClient = redissonClient;
+        this.lockProvider = lockProvider;
+        this.expiryPolicy = new ExpiryPolicy(redisConfigProperties.getExpiry().getTtlJitterPercent(), redisConfigProperties.getExpiry().getRefreshBeta());
+        this.keyPolicies = new KeyPolicyTable(redisConfigProperties.getPolicies(), redisConfigProperties.getExpiry().getTtlJitterPercent());
+    }
+
+    public void setCommandBatcher(CommandBatcher commandBatcher) {
+        this.commandBatcher = commandBatcher;
+    }
+
+    public void setShardGuards(ShardGuards shardGuards) {
+        this.shardGuards = shardGuards;
+    }
+
+    public void setReplicaReader(ReplicaReader replicaReader) {
+        this.replicaReader = replicaReader;
+    }
+
+    public void setBufferedCounter(BufferedCounter bufferedCounter) {
+        this.bufferedCounter = bufferedCounter;
+    }
+
+    public void setWriteBehindQueue(WriteBehindQueue writeBehindQueue) {
+        this.writeBehindQueue = writeBehindQueue;
+    }
+
+    public void setKeyScanner(KeyScanner keyScanner) {
+        this.keyScanner = keyScanner;
+    }
+
+    public void setNearCache(NearCache nearCache) {
+        this.nearCache = nearCache;
+    }
+
+    public void setDictionaryCompressor(DictionaryCompressor dictionaryCompressor) {
+        this.dictionaryCompressor = dictionaryCompressor;
+    }
+
+    public void setChunkedValueStore(ChunkedValueStore chunkedValueStore) {
+        this.chunkedValueStore = chunkedValueStore;
+    }
+
+    public void setHotKeyTracker(HotKeyTracker hotKeyTracker) {
+        this.hotKeyTracker = hotKeyTracker;
     }
 
     /**
@@ -47,8 +203,12 @@ public class RedisFacade {
      */
     public void writeEmpty(String key, long time, TimeUnit timeUnit) {
         StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        KeyPolicy policy = keyPolicies.resolve(key);
+        if (!policy.isCacheEmpty()) {
+            return;
+        }
         logger.debug("返回值为null，缓存空值,key={},time={},timeUnit={}", key, time, timeUnit);
-        redisTemplateRoute.getTemplate(key).boundValueOps(key).set("", time, timeUnit);
+        setValue(key, "", policy.jitterMillis(time, timeUnit), TimeUnit.MILLISECONDS);
         logger.debug("空值写入成功,key={}", key);
         stopWatch.stop("redis.writeEmpty");
     }
@@ -64,7 +224,7 @@ public class RedisFacade {
     public void writeString(String key, String value, long time, TimeUnit timeUnit) {
         StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
         logger.debug("写入缓存,key={},value={},time={},timeUnit={}", key, value, time, timeUnit);
-        redisTemplateRoute.getTemplate(key).boundValueOps(key).set(value, time, timeUnit);
+        setValue(key, value, expireMillis(key, time, timeUnit), TimeUnit.MILLISECONDS);
         logger.debug("缓存写入成功,key={}", key);
         stopWatch.stop("redis.writeCache");
     }
@@ -78,7 +238,22 @@ public class RedisFacade {
     public void writeString(String key, String value) {
         StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
         logger.debug("写入缓存,key={},value={}", key, value);
-        redisTemplateRoute.getTemplate(key).boundValueOps(key).set(value);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        if (writeBehindQueue != null) {
+            byte[] rawKey = rawKey(template, key);
+            byte[] rawValue = rawValue(template, value);
+            writeBehindQueue.submit(template, key, connection -> {
+                connection.set(rawKey, rawValue);
+                return null;
+            });
+        } else {
+            // SET只有状态回复，流水线结果中不包含，不能交给CommandBatcher按位置对应结果
+            guard(template, () -> {
+                template.boundValueOps(key).set(value);
+                return null;
+            }, () -> null);
+        }
+        forgetLocal(key);
         logger.debug("缓存写入成功,key={}", key);
         stopWatch.stop("redis.writeCache");
     }
@@ -89,8 +264,14 @@ public class RedisFacade {
      * @return
      */
     public String getValue(String key) {
+        touch(key);
         StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
-        Object value = redisTemplateRoute.getTemplate(key).boundValueOps(key).get();
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        Object value = nearGet(template, key);
+        if (value == null) {
+            value = readThrough(template, key, connection -> connection.get(rawKey(template, key)),
+                    node -> node.boundValueOps(key).get(), null);
+        }
         stopWatch.stop("redis.getValue");
         if (value != null) {
             return value.toString();
@@ -99,6 +280,306 @@ public class RedisFacade {
         }
     }
 
+    /**
+     * 先查布隆过滤器，id一定不存在时直接返回null，不访问redis
+     *
+     * @param key
+     * @param bloomFilter 已重建过的过滤器，未重建时不拦截
+     * @param id          业务id
+     * @return
+     */
+    public String getValue(String key, RedisBloomFilter bloomFilter, String id) {
+        if (rejectedByBloom(bloomFilter, id)) {
+            return null;
+        }
+        return getValue(key);
+    }
+
+    /**
+     * 读取缓存，未命中时调用loader加载并写入；
+     * 临近过期时按XFetch概率提前刷新(剩余时间越短、加载越慢越早刷新)，热点key不会在过期瞬间集中回源
+     *
+     * @param key
+     * @param loader   加载数据，返回null时不缓存
+     * @param time
+     * @param timeUnit
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getOrLoad(String key, Supplier<T> loader, long time, TimeUnit timeUnit) {
+        touch(key);
+        StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        List<Object> results = guard(template, () -> template.executePipelined((RedisCallback<Object>) connection -> {
+            byte[] rawKey = rawKey(template, key);
+            connection.get(rawKey);
+            connection.pTtl(rawKey);
+            return null;
+        }), () -> null);
+        if (results != null && results.get(0) instanceof RefreshAheadValue) {
+            RefreshAheadValue cached = (RefreshAheadValue) results.get(0);
+            Long remainingMillis = (Long) results.get(1);
+            if (!expiryPolicy.shouldRefresh(cached.getComputeMillis(), remainingMillis != null ? remainingMillis : -1)) {
+                stopWatch.stop("redis.getOrLoad.hit");
+                return (T) cached.getValue();
+            }
+        }
+        long start = System.currentTimeMillis();
+        T value = loader.get();
+        long computeMillis = System.currentTimeMillis() - start;
+        if (value != null) {
+            setValue(key, new RefreshAheadValue(value, computeMillis), expireMillis(key, time, timeUnit), TimeUnit.MILLISECONDS);
+        }
+        stopWatch.stop("redis.getOrLoad.load");
+        return value;
+    }
+
+    /**
+     * 压缩后存入：压缩方式和阈值由key前缀的策略决定，未配置时使用预训练字典，前缀还没有字典时按原样存入
+     *
+     * @param key
+     * @param value
+     * @param time
+     * @param timeUnit
+     */
+    public void writeCompressed(String key, Object value, long time, TimeUnit timeUnit) {
+        StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        KeyPolicy policy = keyPolicies.resolve(key);
+        byte[] rawValue = compress(key, policy, rawValue(template, value));
+        stopWatch.lap("redis.writeCompressed.compress");
+        byte[] rawKey = rawKey(template, key);
+        long millis = policy.expireMillis(time, timeUnit);
+        RedisCallback<Object> command = connection -> {
+            connection.set(rawKey, rawValue, Expiration.milliseconds(millis), RedisStringCommands.SetOption.upsert());
+            return null;
+        };
+        if (writeBehindQueue != null) {
+            writeBehindQueue.submit(template, key, command);
+        } else {
+            guard(template, () -> template.execute(command), () -> null);
+        }
+        forgetLocal(key);
+        stopWatch.stop("redis.writeCompressed");
+    }
+
+    /**
+     * 读取writeCompressed存入的值，按值的头部识别压缩方式(字典压缩按记录的字典版本解压)，策略变化前写入的值仍可读
+     *
+     * @param key
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getCompressed(String key) {
+        touch(key);
+        StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        byte[] bytes = readRaw(template, key);
+        if (bytes == null) {
+            stopWatch.stop("redis.getCompressed.miss");
+            return null;
+        }
+        byte[] decompressed = decompressOrEvict(template, key, () -> decompress(bytes));
+        if (decompressed == null) {
+            stopWatch.stop("redis.getCompressed.miss");
+            return null;
+        }
+        T value = (T) template.getValueSerializer().deserialize(decompressed);
+        stopWatch.stop("redis.getCompressed");
+        return value;
+    }
+
+    /**
+     * 不经过值序列化直接存入字节(如已经序列化好的JSON)，按key前缀的策略压缩；
+     * 值的第一个字节记录压缩方式({@link RawFormat})，只能用getRaw读取
+     *
+     * @param key
+     * @param value
+     * @param time
+     * @param timeUnit
+     */
+    public void setRaw(String key, byte[] value, long time, TimeUnit timeUnit) {
+        StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        KeyPolicy policy = keyPolicies.resolve(key);
+        CompressionType compression = policy.getCompression() != null ? policy.getCompression() : CompressionType.NONE;
+        byte[] compressed = compression == CompressionType.NONE ? value : compress(key, policy, value);
+        byte format = compressed == value ? RawFormat.PLAIN
+                : compression == CompressionType.GZIP ? RawFormat.GZIP : RawFormat.DICTIONARY;
+        byte[] rawValue = RawFormat.tag(format, compressed);
+        byte[] rawKey = rawKey(template, key);
+        long millis = policy.expireMillis(time, timeUnit);
+        RedisCallback<Object> command = connection -> {
+            connection.set(rawKey, rawValue, Expiration.milliseconds(millis), RedisStringCommands.SetOption.upsert());
+            return null;
+        };
+        if (writeBehindQueue != null) {
+            writeBehindQueue.submit(template, key, command);
+        } else {
+            guard(template, () -> template.execute(command), () -> null);
+        }
+        forgetLocal(key);
+        stopWatch.stop("redis.setRaw");
+    }
+
+    /**
+     * 读取setRaw存入的原始字节，不经过值序列化；压缩的值解压后返回
+     *
+     * @param key
+     * @return 不存在时返回null
+     */
+    public byte[] getRaw(String key) {
+        RawValue value = getRaw(key, false);
+        return value != null ? value.getBytes() : null;
+    }
+
+    /**
+     * 读取原始字节
+     *
+     * @param key
+     * @param acceptGzip 客户端接受gzip时，gzip压缩的值不解压直接返回(RawValue.isGzip为true)
+     * @return 不存在时返回null
+     */
+    public RawValue getRaw(String key, boolean acceptGzip) {
+        touch(key);
+        StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        boolean nearCacheable = nearCacheable(key);
+        byte[] bytes = nearCacheable ? nearCache.get(key) : null;
+        if (bytes == null) {
+            long generation = nearCacheable ? nearCache.generation(key) : 0;
+            bytes = readRaw(template, key);
+            if (bytes != null && nearCacheable) {
+                nearCache.put(key, bytes, generation);
+            }
+        }
+        if (bytes == null) {
+            stopWatch.stop("redis.getRaw.miss");
+            return null;
+        }
+        byte format = RawFormat.format(bytes);
+        byte[] payload = RawFormat.payload(bytes);
+        if (format == RawFormat.GZIP && acceptGzip) {
+            stopWatch.stop("redis.getRaw");
+            return new RawValue(payload, true);
+        }
+        byte[] decompressed;
+        if (format == RawFormat.GZIP) {
+            decompressed = Gzip.decompress(payload);
+        } else if (format == RawFormat.DICTIONARY) {
+            decompressed = decompressOrEvict(template, key, () -> {
+                Assert.state(dictionaryCompressor != null, "common.redis.dictionary is not enabled");
+                return dictionaryCompressor.decompress(payload);
+            });
+        } else {
+            decompressed = payload;
+        }
+        if (decompressed == null) {
+            stopWatch.stop("redis.getRaw.miss");
+            return null;
+        }
+        RawValue value = new RawValue(decompressed, false);
+        stopWatch.stop("redis.getRaw");
+        return value;
+    }
+
+    /**
+     * 读取原始字节并包装为只读的ByteBuffer
+     *
+     * @param key
+     * @return 不存在时返回null
+     */
+    public ByteBuffer getRawBuffer(String key) {
+        RawValue value = getRaw(key, false);
+        return value != null ? value.asByteBuffer() : null;
+    }
+
+    /**
+     * 读取原始字节直接写入输出流(如HttpServletResponse的输出流)
+     *
+     * @param key
+     * @param out
+     * @return 不存在时返回false，不写入
+     * @throws IOException
+     */
+    public boolean copyRaw(String key, OutputStream out) throws IOException {
+        RawValue value = getRaw(key, false);
+        if (value == null) {
+            return false;
+        }
+        value.writeTo(out);
+        return true;
+    }
+
+    /**
+     * 存入可能很大的值(如完整的章节列表)：序列化后超过阈值时拆成多个块分散到各分片，原key只保存清单；
+     * 替换清单前写完所有新块，读者不会读到新旧混合的内容
+     *
+     * @param key
+     * @param value
+     * @param time
+     * @param timeUnit
+     */
+    public void writeLarge(String key, Object value, long time, TimeUnit timeUnit) {
+        StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        Assert.state(chunkedValueStore != null, "common.redis.chunk is not enabled");
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        byte[] rawValue = rawValue(template, value);
+        stopWatch.lap("redis.writeLarge.serialize");
+        // 清单与各块经过各自分片的熔断器
+        try {
+            chunkedValueStore.write(key, rawValue, expireMillis(key, time, timeUnit));
+        } catch (ShardUnavailableException e) {
+            logger.warn("write large value {} skipped: {}", key, e.getMessage());
+        }
+        forgetLocal(key);
+        stopWatch.stop("redis.writeLarge");
+    }
+
+    /**
+     * 读取writeLarge存入的值，分块时并发读取各分片后拼接
+     *
+     * @param key
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getLarge(String key) {
+        StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        Assert.state(chunkedValueStore != null, "common.redis.chunk is not enabled");
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        byte[] bytes;
+        try {
+            bytes = chunkedValueStore.read(key);
+        } catch (ShardUnavailableException e) {
+            bytes = null;
+        }
+        if (bytes == null) {
+            stopWatch.stop("redis.getLarge.miss");
+            return null;
+        }
+        T value = (T) template.getValueSerializer().deserialize(bytes);
+        stopWatch.stop("redis.getLarge");
+        return value;
+    }
+
+    /**
+     * 删除writeLarge存入的值及其所有块
+     *
+     * @param key
+     */
+    public void deleteLarge(String key) {
+        Assert.state(chunkedValueStore != null, "common.redis.chunk is not enabled");
+        try {
+            chunkedValueStore.delete(key);
+        } catch (ShardUnavailableException e) {
+            logger.warn("delete large value {} skipped: {}", key, e.getMessage());
+        }
+        forgetLocal(key);
+    }
+
     /**
      * 设置key 过期时间
      *
@@ -109,21 +590,43 @@ public class RedisFacade {
      */
     public Boolean setExpireTime(String key, long timeOut, TimeUnit timeUnit) {
         StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
-        Boolean result = redisTemplateRoute.getTemplate(key).expire(key, timeOut, timeUnit);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        Boolean result = expire(template, key, expireMillis(key, timeOut, timeUnit));
         stopWatch.stop("redis.setExpireTime");
         return result;
     }
 
     /**
-     * 自增并返回自增后的值
+     * 自增并返回自增后的值；开启计数器本地聚合时先累加在本地，返回近似值
      *
      * @param key
      * @param delta
      * @return
      */
     public Long incAndGet(String key, long delta) {
+        if (bufferedCounter != null && !bufferedCounter.isExact(key)) {
+            StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+            long value = bufferedCounter.add(key, delta);
+            forgetLocal(key);
+            stopWatch.stop("redis.incAndGet.buffered");
+            return value;
+        }
+        return incAndGetExact(key, delta);
+    }
+
+    /**
+     * 直接INCRBY并返回自增后的精确值，不经过本地聚合
+     *
+     * @param key
+     * @param delta
+     * @return
+     */
+    public Long incAndGetExact(String key, long delta) {
         StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
-        Long increment = redisTemplateRoute.getTemplate(key).boundValueOps(key).increment(delta);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        Long increment = execute(template, connection -> connection.incrBy(rawKey(template, key), delta),
+                () -> template.boundValueOps(key).increment(delta), null);
+        forgetLocal(key);
         stopWatch.stop("redis.incAndGet");
         return increment;
     }
@@ -144,12 +647,227 @@ public class RedisFacade {
         } catch (Exception e) {
             e.printStackTrace();
         }
-        redisTemplateRoute.getTemplate(key).boundHashOps(key).putAll(mappedHash);
-        stopWatch.lap("redis.writeHash");
-        redisTemplateRoute.getTemplate(key).boundHashOps(key).expire(timeOut, timeUnit);
+        Map<String, ?> hash = mappedHash;
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        if (writeBehindQueue != null) {
+            byte[] rawKey = rawKey(template, key);
+            Map<byte[], byte[]> rawHash = rawHash(template, hash);
+            long millis = expireMillis(key, timeOut, timeUnit);
+            writeBehindQueue.submit(template, key, new HashWrite(rawKey, rawHash, millis));
+            forgetLocal(key);
+            stopWatch.stop("redis.writeHash.behind");
+            return;
+        }
+        guard(template, () -> {
+            template.boundHashOps(key).putAll(hash);
+            stopWatch.lap("redis.writeHash");
+            template.boundHashOps(key).expire(expireMillis(key, timeOut, timeUnit), TimeUnit.MILLISECONDS);
+            return null;
+        }, () -> null);
+        forgetLocal(key);
         stopWatch.stop("redis.setHashExpireTime");
     }
 
+    /**
+     * 只写入与previous相比变化的字段：值变化的字段HSET，变为null的字段HDEL，并重新设置过期时间；
+     * previous为null或key已不存在时等同于writeHash
+     *
+     * @param key
+     * @param value    当前的对象
+     * @param previous 修改前的对象
+     * @param <T>
+     */
+    public <T> void writeHash(String key, T value, T previous, int timeOut, TimeUnit timeUnit) {
+        if (previous == null) {
+            writeHash(key, value, timeOut, timeUnit);
+            return;
+        }
+        StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        Map<String, byte[]> current = serializeFields(template, value);
+        Map<String, byte[]> before = serializeFields(template, previous);
+        if (current == null || before == null) {
+            stopWatch.stop("redis.writeHash.delta.fail");
+            return;
+        }
+        writeHashDiff(template, key, before, current, expireMillis(key, timeOut, timeUnit));
+        stopWatch.stop("redis.writeHash.delta");
+    }
+
+    /**
+     * 先读取redis中当前的hash，只写入变化的字段并删除对象中已为null的字段；
+     * 比writeHash多一次读取，适合字段多、每次只改少数字段的对象
+     *
+     * @param key
+     * @param value
+     * @param <T>
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void writeHashDelta(String key, T value, int timeOut, TimeUnit timeUnit) {
+        StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        Map<String, byte[]> current = serializeFields(template, value);
+        if (current == null) {
+            stopWatch.stop("redis.writeHash.delta.fail");
+            return;
+        }
+        byte[] rawKey = rawKey(template, key);
+        Map<byte[], byte[]> stored = guard(template, () -> template.execute((RedisCallback<Map<byte[], byte[]>>) connection -> connection.hGetAll(rawKey)), () -> null);
+        if (stored == null) {
+            stopWatch.stop("redis.writeHash.delta.fail");
+            return;
+        }
+        RedisSerializer<String> hashKeySerializer = (RedisSerializer<String>) template.getHashKeySerializer();
+        Map<String, byte[]> before = new LinkedHashMap<>(stored.size());
+        for (Map.Entry<byte[], byte[]> entry : stored.entrySet()) {
+            before.put(hashKeySerializer.deserialize(entry.getKey()), entry.getValue());
+        }
+        writeHashDiff(template, key, before, current, expireMillis(key, timeOut, timeUnit));
+        stopWatch.stop("redis.writeHash.delta");
+    }
+
+    /**
+     * 以紧凑二进制存入hash：除 {@link com.wp.redis.codec.PackedSeparate} 标注的属性外，所有属性打包到字段
+     * {@link PackedBeanCodec#PACKED_FIELD} 中；标注的属性按writeHash的规则单独存放，可以用loadHashFields部分读取
+     *
+     * @param key
+     * @param value
+     * @param <T>
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void writePackedHash(String key, T value, int timeOut, TimeUnit timeUnit) {
+        StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        Set<String> separate = packedBeanCodec.separateFields(value.getClass());
+        Map<String, byte[]> fields = separate.isEmpty() ? Collections.emptyMap() : serializeFields(template, value);
+        if (fields == null) {
+            stopWatch.stop("redis.writePackedHash.fail");
+            return;
+        }
+        byte[] packed;
+        try {
+            packed = packedBeanCodec.encode(value);
+        } catch (RuntimeException e) {
+            logger.error("encode packed hash failed,key={},class={}", key, value.getClass(), e);
+            stopWatch.stop("redis.writePackedHash.fail");
+            return;
+        }
+        RedisSerializer<String> hashKeySerializer = (RedisSerializer<String>) template.getHashKeySerializer();
+        Map<byte[], byte[]> rawHash = new LinkedHashMap<>();
+        rawHash.put(hashKeySerializer.serialize(PackedBeanCodec.PACKED_FIELD), packed);
+        List<byte[]> removed = new ArrayList<>();
+        for (String field : separate) {
+            byte[] bytes = fields.get(field);
+            if (bytes != null) {
+                rawHash.put(hashKeySerializer.serialize(field), bytes);
+            } else {
+                removed.add(hashKeySerializer.serialize(field));
+            }
+        }
+        stopWatch.lap("redis.writePackedHash.encode");
+        byte[] rawKey = rawKey(template, key);
+        long millis = expireMillis(key, timeOut, timeUnit);
+        RedisCallback<Object> command = connection -> {
+            connection.hMSet(rawKey, rawHash);
+            if (!removed.isEmpty()) {
+                connection.hDel(rawKey, removed.toArray(new byte[removed.size()][]));
+            }
+            connection.pExpire(rawKey, millis);
+            return null;
+        };
+        if (writeBehindQueue != null) {
+            writeBehindQueue.submit(template, key, command);
+        } else {
+            guard(template, () -> template.executePipelined(command), () -> null);
+        }
+        forgetLocal(key);
+        stopWatch.stop("redis.writePackedHash");
+    }
+
+    /**
+     * 读取writePackedHash写入的hash，schema版本不一致(类结构已变化)时按未命中返回null
+     *
+     * @param key
+     * @param beanClass
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T loadPackedHash(String key, Class<T> beanClass) {
+        touch(key);
+        StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        byte[] rawKey = rawKey(template, key);
+        Map<byte[], byte[]> stored = guard(template, () -> template.execute((RedisCallback<Map<byte[], byte[]>>) connection -> connection.hGetAll(rawKey)), () -> null);
+        if (CollectionUtils.isEmpty(stored)) {
+            return null;
+        }
+        RedisSerializer<String> hashKeySerializer = (RedisSerializer<String>) template.getHashKeySerializer();
+        RedisSerializer<Object> hashValueSerializer = (RedisSerializer<Object>) template.getHashValueSerializer();
+        byte[] packed = null;
+        Map<String, Object> separate = new LinkedHashMap<>();
+        for (Map.Entry<byte[], byte[]> entry : stored.entrySet()) {
+            String field = hashKeySerializer.deserialize(entry.getKey());
+            if (PackedBeanCodec.PACKED_FIELD.equals(field)) {
+                packed = entry.getValue();
+            } else {
+                separate.put(field, hashValueSerializer.deserialize(entry.getValue()));
+            }
+        }
+        if (packed == null) {
+            return null;
+        }
+        try {
+            T bean = (T) ObjectUtil.convertMap(beanClass, separate);
+            if (!packedBeanCodec.decodeInto(packed, bean)) {
+                cacheLogger.debug("packed hash schema changed,key={},class={}", key, beanClass);
+                return null;
+            }
+            return bean;
+        } catch (Exception e) {
+            logger.error("decode packed hash failed,key={},class={}", key, beanClass, e);
+            return null;
+        } finally {
+            stopWatch.stop("redis.loadPackedHash");
+        }
+    }
+
+    /**
+     * 只读取hash中的部分字段(HMGET)并转为对象，其它属性为默认值；用于writeHash或writePackedHash单独存放的字段
+     *
+     * @param key
+     * @param beanClass
+     * @param fields    属性名
+     * @param <T>
+     * @return 所有字段都不存在时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T loadHashFields(String key, Class<T> beanClass, String... fields) {
+        StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        List<Object> values = guard(template, () -> template.<String, Object>opsForHash().multiGet(key, Arrays.asList(fields)), () -> null);
+        if (values == null) {
+            return null;
+        }
+        Map<String, Object> loaded = new LinkedHashMap<>();
+        for (int i = 0; i < fields.length; i++) {
+            if (values.get(i) != null) {
+                loaded.put(fields[i], values.get(i));
+            }
+        }
+        if (loaded.isEmpty()) {
+            return null;
+        }
+        try {
+            return (T) ObjectUtil.convertMap(beanClass, loaded);
+        } catch (Exception e) {
+            logger.error("convert hash fields failed,key={},class={}", key, beanClass, e);
+            return null;
+        } finally {
+            stopWatch.stop("redis.loadHashFields");
+        }
+    }
+
     /**
      * 缓存hash空值
      *
@@ -159,9 +877,18 @@ public class RedisFacade {
      */
     public void writeHashEmpty(String key, long time, TimeUnit timeUnit) {
         StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        KeyPolicy policy = keyPolicies.resolve(key);
+        if (!policy.isCacheEmpty()) {
+            return;
+        }
         logger.debug("返回值为null，缓存空值,key={},time={},timeUnit={}", key, time, timeUnit);
-        redisTemplateRoute.getTemplate(key).boundHashOps(key).put(EMPTY_VALUE, EMPTY_VALUE);
-        this.setExpireTime(key, time, timeUnit);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        guard(template, () -> {
+            template.boundHashOps(key).put(EMPTY_VALUE, EMPTY_VALUE);
+            return null;
+        }, () -> null);
+        forgetLocal(key);
+        expire(template, key, policy.jitterMillis(time, timeUnit));
         logger.debug("空值写入成功,key={}", key);
         stopWatch.stop("redis.writeHashEmpty");
     }
@@ -176,7 +903,7 @@ public class RedisFacade {
      */
     public <T> T loadHash(String key, Class<T> beanClass) {
         StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
-        Map loadedHash = redisTemplateRoute.getTemplate(key).boundHashOps(key).entries();
+        Map loadedHash = loadEntries(key);
         if (loadedHash.isEmpty() || (loadedHash.containsKey(EMPTY_VALUE) && loadedHash.containsValue(EMPTY_VALUE))) {
             return null;
         }
@@ -192,6 +919,23 @@ public class RedisFacade {
         return (T) obj;
     }
 
+    /**
+     * 先查布隆过滤器，id一定不存在时直接返回null，不访问redis
+     *
+     * @param key
+     * @param beanClass
+     * @param bloomFilter 已重建过的过滤器，未重建时不拦截
+     * @param id          业务id
+     * @param <T>
+     * @return
+     */
+    public <T> T loadHash(String key, Class<T> beanClass, RedisBloomFilter bloomFilter, String id) {
+        if (rejectedByBloom(bloomFilter, id)) {
+            return null;
+        }
+        return loadHash(key, beanClass);
+    }
+
     /**
      * 判断是否空值
      *
@@ -199,7 +943,7 @@ public class RedisFacade {
      * @return
      */
     public boolean isEmpty(String key) {
-        Map loadedHash = redisTemplateRoute.getTemplate(key).boundHashOps(key).entries();
+        Map loadedHash = loadEntries(key);
         if (loadedHash.containsKey(EMPTY_VALUE) && loadedHash.containsValue(EMPTY_VALUE)) {
             return true;
         }
@@ -215,28 +959,7 @@ public class RedisFacade {
      * @return
      */
     public <T> Long writeList(String key, List<T> value) {
-        StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
-        if (!CollectionUtils.isEmpty(value)) {
-            if (redisTemplateRoute.getTemplate(key).boundListOps(key).size() < 1) {
-                String lockKey = "lock." + key;
-                RLock lock = redissonClient.getLock(lockKey);
-                try {
-                    boolean b = lock.tryLock(redisConfigProperties.getWaitTime(), redisConfigProperties.getLockTime(), TimeUnit.SECONDS);
-                    if (b) {
-                        //双检锁，以免存入两份章节列表
-                        if (redisTemplateRoute.getTemplate(key).boundListOps(key).size() < 1) {
-                            return redisTemplateRoute.getTemplate(key).boundListOps(key).leftPushAll(value.toArray());
-                        }
-                    }
-                } catch (InterruptedException e) {
-                    logger.error("get lock exception,{}", e);
-                } finally {
-                    lock.unlockAsync();
-                    stopWatch.stop("redis.writeList");
-                }
-            }
-        }
-        return 0L;
+        return fillList(key, value, true);
     }
 
     /**
@@ -248,28 +971,64 @@ public class RedisFacade {
      * @return
      */
     public <T> Long writeRightList(String key, List<T> value) {
-        StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
-        if (!CollectionUtils.isEmpty(value)) {
-            if (redisTemplateRoute.getTemplate(key).boundListOps(key).size() < 1) {
-                String lockKey = "lock." + key;
-                RLock lock = redissonClient.getLock(lockKey);
-                try {
-                    boolean b = lock.tryLock(redisConfigProperties.getWaitTime(), redisConfigProperties.getLockTime(), TimeUnit.SECONDS);
-                    if (b) {
-                        //双检锁，以免存入两份章节列表
-                        if (redisTemplateRoute.getTemplate(key).boundListOps(key).size() < 1) {
-                            return redisTemplateRoute.getTemplate(key).boundListOps(key).rightPushAll(value.toArray());
-                        }
-                    }
-                } catch (InterruptedException e) {
-                    logger.error("get lock exception,{}", e);
-                } finally {
-                    lock.unlockAsync();
-                    stopWatch.stop("redis.writeList");
-                }
-            }
+        return fillList(key, value, false);
+    }
+
+    /**
+     * 在已存在的list末尾追加元素，裁剪到最多保留最后maxLength个并续期，一次往返完成
+     *
+     * @param key
+     * @param values    追加的元素
+     * @param maxLength 最大长度，<=0不裁剪
+     * @param time      续期时间，<=0不续期
+     * @param timeUnit
+     * @param <T>
+     * @return 追加后的长度；list不存在(未缓存或已过期)时不写入并返回0，需要用writeRightList完整写入
+     */
+    public <T> long appendList(String key, List<T> values, long maxLength, long time, TimeUnit timeUnit) {
+        return pushList(key, values, true, maxLength, time, timeUnit);
+    }
+
+    /**
+     * 在已存在的list开头插入元素(保持values的顺序)，裁剪到最多保留最前maxLength个并续期，一次往返完成
+     *
+     * @param key
+     * @param values    插入的元素
+     * @param maxLength 最大长度，<=0不裁剪
+     * @param time      续期时间，<=0不续期
+     * @param timeUnit
+     * @param <T>
+     * @return 插入后的长度；list不存在时不写入并返回0，需要用writeList完整写入
+     */
+    public <T> long prependList(String key, List<T> values, long maxLength, long time, TimeUnit timeUnit) {
+        return pushList(key, values, false, maxLength, time, timeUnit);
+    }
+
+    /**
+     * 从start开始原地替换list中已存在的元素并续期，超出列表范围的元素忽略
+     *
+     * @param key
+     * @param start    起始下标，负数从末尾计算
+     * @param values   新元素
+     * @param time     续期时间，<=0不续期
+     * @param timeUnit
+     * @param <T>
+     * @return 替换的元素个数，list不存在时返回0
+     */
+    public <T> long replaceListRange(String key, long start, List<T> values, long time, TimeUnit timeUnit) {
+        if (CollectionUtils.isEmpty(values)) {
+            return 0L;
         }
-        return 0L;
+        StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        byte[] rawKey = rawKey(template, key);
+        List<byte[]> rawValues = rawValues(template, values);
+        long millis = time > 0 ? expireMillis(key, time, timeUnit) : 0L;
+        Long replaced = guard(template, () -> template.execute((RedisCallback<Long>) connection ->
+                ListScripts.replaceRange(connection, rawKey, start, millis, rawValues)), () -> 0L);
+        forgetLocal(key);
+        stopWatch.stop("redis.replaceListRange");
+        return replaced != null ? replaced : 0L;
     }
 
     /**
@@ -280,8 +1039,11 @@ public class RedisFacade {
      * @param end
      */
     public List loadList(String key, long start, long end) {
+        touch(key);
         StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
-        List list = redisTemplateRoute.getTemplate(key).opsForList().range(key, start, end);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        List list = read(template, connection -> connection.lRange(rawKey(template, key), start, end),
+                node -> node.opsForList().range(key, start, end), Collections::emptyList);
         stopWatch.stop("redis.loadList");
         return list;
     }
@@ -295,9 +1057,15 @@ public class RedisFacade {
      */
     public Long writeListEmpty(String key, long time, TimeUnit timeUnit, Collection<?> values) {
         StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        KeyPolicy policy = keyPolicies.resolve(key);
+        if (!policy.isCacheEmpty()) {
+            return 0L;
+        }
         logger.debug("返回值为null，缓存空值,key={},time={},timeUnit={}", key, time, timeUnit);
-        Long result = redisTemplateRoute.getTemplate(key).boundListOps(key).leftPushAll(values);
-        this.setExpireTime(key, (int) time, timeUnit);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        Long result = guard(template, () -> template.boundListOps(key).leftPushAll(values), () -> 0L);
+        forgetLocal(key);
+        expire(template, key, policy.jitterMillis(time, timeUnit));
         logger.debug("空值写入成功,key={}", key);
         stopWatch.stop("redis.writeHashEmpty");
         return result;
@@ -310,8 +1078,14 @@ public class RedisFacade {
      * @return
      */
     public List loadListAll(String key) {
+        touch(key);
         StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
-        List list = redisTemplateRoute.getTemplate(key).opsForList().range(key, 0, -1);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        List list = (List) nearGet(template, key);
+        if (list == null) {
+            list = readThrough(template, key, connection -> connection.lRange(rawKey(template, key), 0, -1),
+                    node -> node.opsForList().range(key, 0, -1), Collections.emptyList());
+        }
         stopWatch.stop("redis.loadListAll");
         return list;
     }
@@ -323,7 +1097,15 @@ public class RedisFacade {
      */
     public void delete(String key) {
         StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
-        redisTemplateRoute.getTemplate(key).delete(key);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        if (writeBehindQueue != null) {
+            writeBehindQueue.discard(template, key);
+        }
+        execute(template, connection -> connection.del(rawKey(template, key)), () -> {
+            template.delete(key);
+            return null;
+        }, null);
+        forgetLocal(key);
         stopWatch.stop("redis.delete");
     }
 
@@ -336,12 +1118,52 @@ public class RedisFacade {
         StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
         if (!CollectionUtils.isEmpty(keys)) {
             keys.forEach(key -> {
-                redisTemplateRoute.getTemplate(key).delete(key);
+                RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+                if (writeBehindQueue != null) {
+                    writeBehindQueue.discard(template, key);
+                }
+                guard(template, () -> {
+                    template.delete(key);
+                    return null;
+                }, null);
+                forgetLocal(key);
             });
         }
         stopWatch.stop("redis.deletes");
     }
 
+    /**
+     * 在所有分片上扫描匹配的key，结果是惰性的流，使用完需要close
+     *
+     * @param pattern 如 book.*
+     * @return
+     */
+    public Stream<String> scan(String pattern) {
+        Assert.state(keyScanner != null, "KeyScanner is not configured");
+        return keyScanner.scan(pattern);
+    }
+
+    /**
+     * 在所有分片上删除匹配的key，分批UNLINK并限速
+     *
+     * @param pattern 如 book.*
+     * @return 删除的key数
+     */
+    public long deleteByPattern(String pattern) {
+        StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        Assert.state(keyScanner != null, "KeyScanner is not configured");
+        if (writeBehindQueue != null) {
+            writeBehindQueue.discardMatching(pattern);
+        }
+        long deleted = keyScanner.deleteByPattern(pattern);
+        if (nearCache != null) {
+            nearCache.clear();
+        }
+        logger.info("按模式删除key,pattern={},deleted={}", pattern, deleted);
+        stopWatch.stop("redis.deleteByPattern");
+        return deleted;
+    }
+
     /**
      * 获取list长度
      *
@@ -350,7 +1172,9 @@ public class RedisFacade {
      */
     public long getListLen(String key) {
         StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
-        Long size = redisTemplateRoute.getTemplate(key).boundListOps(key).size();
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        Long size = read(template, connection -> connection.lLen(rawKey(template, key)),
+                node -> node.boundListOps(key).size(), () -> 0L);
         stopWatch.stop("redis.llen");
         return size;
     }
@@ -363,8 +1187,401 @@ public class RedisFacade {
      */
     public boolean hasKey(String key) {
         StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
-        boolean flag = redisTemplateRoute.getTemplate(key).hasKey(key);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        boolean flag = read(template, connection -> connection.exists(rawKey(template, key)),
+                node -> node.hasKey(key), () -> Boolean.FALSE);
         stopWatch.stop("redis.hasKey");
         return flag;
     }
+
+    private void setValue(String key, Object value, long time, TimeUnit timeUnit) {
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        if (writeBehindQueue != null) {
+            byte[] rawKey = rawKey(template, key);
+            byte[] rawValue = rawValue(template, value);
+            writeBehindQueue.submit(template, key, connection -> {
+                connection.set(rawKey, rawValue, Expiration.from(time, timeUnit), RedisStringCommands.SetOption.upsert());
+                return null;
+            });
+            forgetLocal(key);
+            return;
+        }
+        guard(template, () -> {
+            template.boundValueOps(key).set(value, time, timeUnit);
+            return null;
+        }, () -> null);
+        forgetLocal(key);
+    }
+
+    private Map loadEntries(String key) {
+        touch(key);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        Map entries = (Map) nearGet(template, key);
+        if (entries == null) {
+            entries = readThrough(template, key, connection -> connection.hGetAll(rawKey(template, key)),
+                    node -> node.boundHashOps(key).entries(), Collections.emptyMap());
+        }
+        return entries;
+    }
+
+    /**
+     * 从近端缓存读取并用模板的值序列化反序列化
+     */
+    @SuppressWarnings("unchecked")
+    private Object nearGet(RedisTemplate<String, Object> template, String key) {
+        if (!nearCacheable(key)) {
+            return null;
+        }
+        byte[] bytes = nearCache.get(key);
+        return bytes == null ? null : ((RedisSerializer<Object>) template.getValueSerializer()).deserialize(bytes);
+    }
+
+    /**
+     * 不经过值序列化读取字节，开启副本读时在主节点与副本之间分发
+     */
+    private byte[] readRaw(RedisTemplate<String, Object> template, String key) {
+        byte[] rawKey = rawKey(template, key);
+        RedisCallback<byte[]> command = connection -> connection.get(rawKey);
+        if (replicaReader == null) {
+            return guard(template, () -> template.execute(command), () -> null);
+        }
+        return guard(template, () -> replicaReader.read(template, node -> node.execute(command)), () -> null);
+    }
+
+    /**
+     * 按策略压缩，小于阈值或压缩后不变小时返回原值
+     */
+    private byte[] compress(String key, KeyPolicy policy, byte[] bytes) {
+        if (bytes.length < policy.getCompressionThresholdBytes()) {
+            return bytes;
+        }
+        CompressionType compression = policy.getCompression() != null ? policy.getCompression() : CompressionType.DICTIONARY;
+        switch (compression) {
+            case GZIP:
+                byte[] gzipped = Gzip.compress(bytes);
+                return gzipped.length < bytes.length ? gzipped : bytes;
+            case DICTIONARY:
+                Assert.state(dictionaryCompressor != null, "common.redis.dictionary is not enabled");
+                return dictionaryCompressor.compress(key, bytes);
+            default:
+                return bytes;
+        }
+    }
+
+    /**
+     * 解压；压缩时使用的字典已丢失时删除这个值并返回null，按未命中处理
+     */
+    private byte[] decompressOrEvict(RedisTemplate<String, Object> template, String key, Supplier<byte[]> decompress) {
+        try {
+            return decompress.get();
+        } catch (MissingDictionaryException e) {
+            logger.warn("dictionary {} of key {} is lost, value deleted", e.getDictionaryId(), key);
+            byte[] rawKey = rawKey(template, key);
+            guard(template, () -> template.execute((RedisCallback<Long>) connection -> connection.del(rawKey)), () -> null);
+            forgetLocal(key);
+            return null;
+        }
+    }
+
+    private byte[] decompress(byte[] bytes) {
+        if (DictionaryCompressor.isCompressed(bytes)) {
+            Assert.state(dictionaryCompressor != null, "common.redis.dictionary is not enabled");
+            return dictionaryCompressor.decompress(bytes);
+        }
+        return Gzip.isGzip(bytes) ? Gzip.decompress(bytes) : bytes;
+    }
+
+    /**
+     * 策略中配置了nearCache时以策略为准，否则按近端缓存的前缀判断
+     */
+    private boolean nearCacheable(String key) {
+        if (nearCache == null) {
+            return false;
+        }
+        Boolean policy = keyPolicies.resolve(key).getNearCache();
+        return policy != null ? policy : nearCache.accepts(key);
+    }
+
+    /**
+     * 按key的策略计算过期时间
+     */
+    private long expireMillis(String key, long time, TimeUnit timeUnit) {
+        return keyPolicies.resolve(key).expireMillis(time, timeUnit);
+    }
+
+    private Boolean expire(RedisTemplate<String, Object> template, String key, long millis) {
+        return execute(template, connection -> connection.pExpire(rawKey(template, key), millis),
+                () -> template.expire(key, millis, TimeUnit.MILLISECONDS), () -> Boolean.FALSE);
+    }
+
+    private boolean rejectedByBloom(RedisBloomFilter bloomFilter, String id) {
+        if (bloomFilter.isInitialized() && !bloomFilter.mightContain(id)) {
+            cacheLogger.debug("bloom filter {} rejected id {}", bloomFilter.getName(), id);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * list为空时加锁写入
+     *
+     * @param leftPush true:leftPushAll false:rightPushAll
+     */
+    private <T> Long fillList(String key, List<T> value, boolean leftPush) {
+        StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        if (!CollectionUtils.isEmpty(value)) {
+            RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+            forgetLocal(key);
+            Long size = guard(template, () -> template.boundListOps(key).size(), () -> null);
+            if (size == null || size >= 1) {
+                return 0L;
+            }
+            // 等锁不算分片的慢调用，只有redis命令经过熔断器
+            RLock lock = lockProvider.getLock(key);
+            try {
+                boolean b = lock.tryLock(redisConfigProperties.getWaitTime(), redisConfigProperties.getLockTime(), TimeUnit.SECONDS);
+                if (b) {
+                    //双检锁，以免存入两份章节列表
+                    return guard(template, () -> {
+                        if (template.boundListOps(key).size() < 1) {
+                            return leftPush ? template.boundListOps(key).leftPushAll(value.toArray())
+                                    : template.boundListOps(key).rightPushAll(value.toArray());
+                        }
+                        return 0L;
+                    }, () -> 0L);
+                }
+            } catch (InterruptedException e) {
+                logger.error("get lock exception,{}", e);
+            } finally {
+                lock.unlockAsync();
+                stopWatch.stop("redis.writeList");
+            }
+        }
+        return 0L;
+    }
+
+    /**
+     * 增量写入list两端，list不存在时脚本不写入
+     */
+    private <T> long pushList(String key, List<T> values, boolean right, long maxLength, long time, TimeUnit timeUnit) {
+        if (CollectionUtils.isEmpty(values)) {
+            return 0L;
+        }
+        StopWatch stopWatch = new Slf4JStopWatch(cacheLogger);
+        RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(key);
+        byte[] rawKey = rawKey(template, key);
+        List<byte[]> rawValues = rawValues(template, values);
+        long millis = time > 0 ? expireMillis(key, time, timeUnit) : 0L;
+        Long length = guard(template, () -> template.execute((RedisCallback<Long>) connection ->
+                ListScripts.push(connection, rawKey, right, maxLength, millis, rawValues)), () -> 0L);
+        forgetLocal(key);
+        stopWatch.stop(right ? "redis.appendList" : "redis.prependList");
+        return length != null ? length : 0L;
+    }
+
+    /**
+     * 开启合并时交给CommandBatcher与同分片的其它并发命令一起流水线发送，否则直接执行；
+     * 只有状态回复的命令(SET、SETEX等)不能走这里，见CommandBatcher.execute
+     *
+     * @param template 分片
+     * @param command  基于原始字节的命令
+     * @param direct   未开启合并时的执行方式
+     * @param fallback 分片熔断时的降级结果，为null时抛出ShardUnavailableException
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private <R> R execute(RedisTemplate<String, Object> template, RedisCallback<?> command, Supplier<R> direct, Supplier<R> fallback) {
+        if (commandBatcher == null) {
+            return guard(template, direct, fallback);
+        }
+        return guard(template, () -> (R) commandBatcher.execute(template, command), fallback);
+    }
+
+    /**
+     * 只读命令，开启副本读时在分片的主节点与副本之间分发(此时不参与跨线程合并)
+     *
+     * @param template 分片主节点
+     * @param command  基于原始字节的命令，用于跨线程合并
+     * @param direct   在指定节点上执行
+     * @param fallback 分片熔断时的降级结果
+     * @return
+     */
+    private <R> R read(RedisTemplate<String, Object> template, RedisCallback<?> command, Function<RedisTemplate<String, Object>, R> direct, Supplier<R> fallback) {
+        if (replicaReader == null) {
+            return execute(template, command, () -> direct.apply(template), fallback);
+        }
+        return guard(template, () -> replicaReader.read(template, direct), fallback);
+    }
+
+    /**
+     * 读取后记录stale值并放入近端缓存；熔断降级返回的是旧值或空值，不再记录也不放入近端缓存，以免分片恢复后继续返回旧值
+     *
+     * @param miss 没有stale值时的降级返回值
+     */
+    private <R> R readThrough(RedisTemplate<String, Object> template, String key, RedisCallback<?> command,
+                              Function<RedisTemplate<String, Object>, R> direct, R miss) {
+        long generation = nearCacheable(key) ? nearCache.generation(key) : 0;
+        AtomicBoolean degraded = new AtomicBoolean();
+        R value = read(template, command, direct, () -> {
+            degraded.set(true);
+            return staleOrMiss(template, key, miss);
+        });
+        if (!degraded.get()) {
+            remember(template, key, value, generation);
+        }
+        return value;
+    }
+
+    /**
+     * 经过分片的并发隔离与熔断执行
+     */
+    private <R> R guard(RedisTemplate<String, Object> template, Supplier<R> call, Supplier<R> fallback) {
+        if (shardGuards == null) {
+            return call.get();
+        }
+        return shardGuards.get(template).execute(call, fallback);
+    }
+
+    /**
+     * 读到的值只序列化一次，记录为stale降级值并放入近端缓存；空值清除stale值，不放入近端缓存
+     *
+     * @param generation 读redis之前取得的近端缓存失效版本，读取期间key被失效时不放入
+     */
+    private void remember(RedisTemplate<String, Object> template, String key, Object value, long generation) {
+        StaleValueStore staleValueStore = shardGuards == null ? null : shardGuards.getStaleValueStore();
+        boolean nearCacheable = nearCacheable(key);
+        if (staleValueStore == null && !nearCacheable) {
+            return;
+        }
+        boolean empty = value == null || (value instanceof Collection && ((Collection) value).isEmpty())
+                || (value instanceof Map && ((Map) value).isEmpty());
+        byte[] bytes = empty ? null : rawValue(template, value);
+        if (staleValueStore != null) {
+            staleValueStore.put(key, bytes);
+        }
+        if (nearCacheable && bytes != null) {
+            nearCache.put(key, bytes, generation);
+        }
+    }
+
+    /**
+     * 记录一次读取，用于热点key快照
+     */
+    private void touch(String key) {
+        if (hotKeyTracker != null) {
+            hotKeyTracker.record(key);
+        }
+    }
+
+    /**
+     * 写入或删除后清除本地的旧值(熔断备用值与近端缓存)
+     */
+    private void forgetLocal(String key) {
+        StaleValueStore staleValueStore = shardGuards == null ? null : shardGuards.getStaleValueStore();
+        if (staleValueStore != null) {
+            staleValueStore.remove(key);
+        }
+        if (nearCache != null) {
+            nearCache.remove(key);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> R staleOrMiss(RedisTemplate<String, Object> template, String key, R miss) {
+        StaleValueStore staleValueStore = shardGuards == null ? null : shardGuards.getStaleValueStore();
+        byte[] stale = staleValueStore == null ? null : staleValueStore.get(key);
+        return stale != null ? (R) ((RedisSerializer<Object>) template.getValueSerializer()).deserialize(stale) : miss;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static byte[] rawKey(RedisTemplate<String, Object> template, String key) {
+        return ((RedisSerializer<String>) template.getKeySerializer()).serialize(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static byte[] rawValue(RedisTemplate<String, Object> template, Object value) {
+        return ((RedisSerializer<Object>) template.getValueSerializer()).serialize(value);
+    }
+
+    private static List<byte[]> rawValues(RedisTemplate<String, Object> template, List<?> values) {
+        List<byte[]> rawValues = new ArrayList<>(values.size());
+        for (Object value : values) {
+            rawValues.add(rawValue(template, value));
+        }
+        return rawValues;
+    }
+
+    /**
+     * 对象按writeHash相同的规则转为字段，值用hash值序列化转为字节，转换失败时返回null
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, byte[]> serializeFields(RedisTemplate<String, Object> template, Object value) {
+        Map<String, ?> fields;
+        try {
+            fields = ObjectUtil.convertBean(value);
+        } catch (Exception e) {
+            logger.error("convert bean to hash failed,class={}", value.getClass(), e);
+            return null;
+        }
+        RedisSerializer<Object> hashValueSerializer = (RedisSerializer<Object>) template.getHashValueSerializer();
+        Map<String, byte[]> serialized = new LinkedHashMap<>(fields.size());
+        for (Map.Entry<String, ?> entry : fields.entrySet()) {
+            serialized.put(entry.getKey(), hashValueSerializer.serialize(entry.getValue()));
+        }
+        return serialized;
+    }
+
+    /**
+     * 按字节比较，值变化或新增的字段HSET，before中有而current中没有的字段HDEL，key存在时用脚本原子写入；
+     * key已过期或被淘汰时改为写入完整的current，不会留下只有变化字段的hash。
+     * 增量写入不能被合并，所以不走异步写队列，写入前先写完同一个key排队中的写入，避免被排队的旧值覆盖
+     */
+    @SuppressWarnings("unchecked")
+    private void writeHashDiff(RedisTemplate<String, Object> template, String key, Map<String, byte[]> before,
+                               Map<String, byte[]> current, long expireMillis) {
+        RedisSerializer<String> hashKeySerializer = (RedisSerializer<String>) template.getHashKeySerializer();
+        Map<byte[], byte[]> changed = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> entry : current.entrySet()) {
+            if (!Arrays.equals(entry.getValue(), before.get(entry.getKey()))) {
+                changed.put(hashKeySerializer.serialize(entry.getKey()), entry.getValue());
+            }
+        }
+        List<byte[]> removed = new ArrayList<>();
+        for (String field : before.keySet()) {
+            if (!current.containsKey(field)) {
+                removed.add(hashKeySerializer.serialize(field));
+            }
+        }
+        byte[] rawKey = rawKey(template, key);
+        if (writeBehindQueue != null) {
+            writeBehindQueue.flush(template, key);
+        }
+        Long patched = guard(template, () -> template.execute((RedisCallback<Long>) connection ->
+                HashScripts.patch(connection, rawKey, changed, removed, expireMillis)), () -> null);
+        if (patched != null && patched == 0 && !current.isEmpty()) {
+            Map<byte[], byte[]> full = new LinkedHashMap<>(current.size());
+            for (Map.Entry<String, byte[]> entry : current.entrySet()) {
+                full.put(hashKeySerializer.serialize(entry.getKey()), entry.getValue());
+            }
+            guard(template, () -> template.executePipelined((RedisCallback<Object>) connection -> {
+                connection.hMSet(rawKey, full);
+                connection.pExpire(rawKey, expireMillis);
+                return null;
+            }), () -> null);
+            cacheLogger.debug("writeHash delta on missing key, written in full,key={}", key);
+        }
+        forgetLocal(key);
+        cacheLogger.debug("writeHash delta,key={},changed={},removed={}", key, changed.size(), removed.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<byte[], byte[]> rawHash(RedisTemplate<String, Object> template, Map<String, ?> hash) {
+        RedisSerializer<String> hashKeySerializer = (RedisSerializer<String>) template.getHashKeySerializer();
+        RedisSerializer<Object> hashValueSerializer = (RedisSerializer<Object>) template.getHashValueSerializer();
+        Map<byte[], byte[]> rawHash = new LinkedHashMap<>(hash.size());
+        for (Map.Entry<String, ?> entry : hash.entrySet()) {
+            rawHash.put(hashKeySerializer.serialize(entry.getKey()), hashValueSerializer.serialize(entry.getValue()));
+        }
+        return rawHash;
+    }
 }
@@ -0,0 +1,59 @@
+package com.wp.redis.hash;
+
+import com.wp.redis.utils.ScriptUtil;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * hash增量写入的lua脚本，key不存在时不写入并返回0，避免在已过期的缓存上写出只有变化字段的不完整hash
+ */
+public final class HashScripts {
+
+    /**
+     * KEYS[1] hash, ARGV[1] 过期毫秒(<=0不续期), ARGV[2] 写入的字段数n, ARGV[3..2+2n] 字段和值, 其后为删除的字段
+     */
+    private static final DefaultRedisScript<Long> PATCH = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 0 then return 0 end\n"
+                    + "local last = 2 + tonumber(ARGV[2]) * 2\n"
+                    + "for i = 3, last, 1000 do\n"
+                    + "  redis.call('hmset', KEYS[1], unpack(ARGV, i, math.min(i + 999, last)))\n"
+                    + "end\n"
+                    + "for i = last + 1, #ARGV, 1000 do\n"
+                    + "  redis.call('hdel', KEYS[1], unpack(ARGV, i, math.min(i + 999, #ARGV)))\n"
+                    + "end\n"
+                    + "local ttl = tonumber(ARGV[1])\n"
+                    + "if ttl > 0 then redis.call('pexpire', KEYS[1], ttl) end\n"
+                    + "return 1", Long.class);
+
+    private HashScripts() {
+    }
+
+    /**
+     * 在已存在的hash上写入变化的字段、删除字段并续期，原子执行
+     *
+     * @param connection
+     * @param rawKey
+     * @param changed      序列化后的字段和值
+     * @param removed      序列化后的字段
+     * @param expireMillis 过期毫秒，<=0不续期
+     * @return 1:已写入 0:hash不存在
+     */
+    public static Long patch(RedisConnection connection, byte[] rawKey, Map<byte[], byte[]> changed, List<byte[]> removed, long expireMillis) {
+        byte[][] keysAndArgs = new byte[3 + changed.size() * 2 + removed.size()][];
+        keysAndArgs[0] = rawKey;
+        keysAndArgs[1] = ScriptUtil.bytes(expireMillis);
+        keysAndArgs[2] = ScriptUtil.bytes(changed.size());
+        int i = 3;
+        for (Map.Entry<byte[], byte[]> entry : changed.entrySet()) {
+            keysAndArgs[i++] = entry.getKey();
+            keysAndArgs[i++] = entry.getValue();
+        }
+        for (byte[] field : removed) {
+            keysAndArgs[i++] = field;
+        }
+        return ScriptUtil.eval(connection, PATCH, keysAndArgs);
+    }
+}
@@ -0,0 +1,85 @@
+package com.wp.redis.hotset;
+
+import com.wp.redis.properties.HotSetProperties;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 抽样统计key的读取次数，每次快照后计数减半，近期读取多的key排在前面
+ */
+public class HotKeyTracker {
+
+    private final ConcurrentMap<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+    private final int sampleMask;
+    private final int maxTrackedKeys;
+
+    public HotKeyTracker(HotSetProperties hotSetProperties) {
+        int recordOneIn = Math.max(1, hotSetProperties.getRecordOneIn());
+        this.sampleMask = Integer.highestOneBit(recordOneIn) - 1;
+        this.maxTrackedKeys = Math.max(1, hotSetProperties.getMaxTrackedKeys());
+    }
+
+    /**
+     * 记录一次读取
+     *
+     * @param key
+     */
+    public void record(String key) {
+        if (sampleMask != 0 && (ThreadLocalRandom.current().nextInt() & sampleMask) != 0) {
+            return;
+        }
+        AtomicInteger count = counts.get(key);
+        if (count == null) {
+            if (counts.size() >= maxTrackedKeys) {
+                return;
+            }
+            count = counts.computeIfAbsent(key, k -> new AtomicInteger());
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * 读取次数最多的key
+     *
+     * @param limit
+     * @return 按次数从多到少
+     */
+    public List<String> top(int limit) {
+        PriorityQueue<Map.Entry<String, Integer>> heap = new PriorityQueue<>(Math.max(1, limit), Map.Entry.comparingByValue());
+        for (Map.Entry<String, AtomicInteger> entry : counts.entrySet()) {
+            int count = entry.getValue().get();
+            if (heap.size() < limit) {
+                heap.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), count));
+            } else if (!heap.isEmpty() && heap.peek().getValue() < count) {
+                heap.poll();
+                heap.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), count));
+            }
+        }
+        List<String> keys = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            keys.add(heap.poll().getKey());
+        }
+        Collections.reverse(keys);
+        return keys;
+    }
+
+    /**
+     * 计数减半，减到0的key移除，给新的热点key留出位置
+     */
+    public void decay() {
+        counts.entrySet().removeIf(entry -> entry.getValue().updateAndGet(count -> count >> 1) == 0);
+    }
+
+    public int size() {
+        return counts.size();
+    }
+}
@@ -0,0 +1,426 @@
+package com.wp.redis.hotset;
+
+import com.wp.redis.properties.HotSetProperties;
+import com.wp.redis.routes.RedisTemplateRoute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 热点key快照：按热度分批，各分片并发流水线DUMP/PTTL读取最常读取的key，边读边追加到本地内存映射文件；
+ * 导入时按批读取映射文件，按当前的分片路由分组，各分片并发流水线RESTORE。
+ * <p>
+ * 文件格式：magic(4) 格式版本(4) 创建时间(8) 条目数(4)，每个条目为 key长度(4) key 过期时间点(8，0为不过期) 值长度(4) DUMP值。
+ * 先写临时文件再原子替换，写到一半崩溃不会损坏上一次的快照
+ */
+public class HotSetSnapshotter implements DisposableBean {
+
+    private static Logger logger = LoggerFactory.getLogger(HotSetSnapshotter.class);
+
+    private static final int MAGIC = 0x48534E50;
+    private static final int FORMAT = 1;
+    private static final int HEADER_LENGTH = 20;
+    private static final int ENTRY_OVERHEAD = 16;
+    private static final byte[] RESTORE_REPLACE = "REPLACE".getBytes(StandardCharsets.UTF_8);
+
+    private final RedisTemplateRoute redisTemplateRoute;
+    private final HotSetProperties hotSetProperties;
+    private final HotKeyTracker hotKeyTracker;
+    private final Path file;
+    private final ScheduledExecutorService scheduler;
+
+    public HotSetSnapshotter(RedisTemplateRoute redisTemplateRoute, HotSetProperties hotSetProperties, HotKeyTracker hotKeyTracker) {
+        this.redisTemplateRoute = redisTemplateRoute;
+        this.hotSetProperties = hotSetProperties;
+        this.hotKeyTracker = hotKeyTracker;
+        this.file = Paths.get(hotSetProperties.getFile());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-hotset-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (hotSetProperties.isImportOnStartup()) {
+            scheduler.execute(() -> {
+                try {
+                    importColdShards();
+                } catch (RuntimeException e) {
+                    logger.warn("import hot set snapshot {} failed", file, e);
+                }
+            });
+        }
+        int intervalSeconds = hotSetProperties.getIntervalSeconds();
+        if (intervalSeconds > 0) {
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    snapshot();
+                } catch (RuntimeException e) {
+                    logger.warn("hot set snapshot {} failed", file, e);
+                }
+            }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 把当前最热的key写入快照文件，之后热度减半。
+     * 按热度每batchSize个key一批，读取一批就追加到文件，超过文件大小上限时停止，内存中只保留一批的值
+     *
+     * @return 写入的key数
+     */
+    public synchronized int snapshot() {
+        long start = System.currentTimeMillis();
+        List<String> keys = hotKeyTracker.top(Math.max(1, hotSetProperties.getMaxKeys()));
+        int batchSize = Math.max(1, hotSetProperties.getBatchSize());
+        long maxBytes = Math.min(Integer.MAX_VALUE, (long) Math.max(1, hotSetProperties.getMaxFileMb()) << 20);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long size = HEADER_LENGTH;
+        int count = 0;
+        ExecutorService executor = newShardExecutor();
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                boolean full = false;
+                for (int from = 0; from < keys.size() && !full; from += batchSize) {
+                    List<Entry> entries = dump(executor, keys, from, Math.min(keys.size(), from + batchSize), maxBytes - size);
+                    long batchBytes = 0;
+                    int accepted = 0;
+                    // 按热度顺序放入，放不下时后面的都不要
+                    for (Entry entry : entries) {
+                        if (size + batchBytes + entry.length() > maxBytes) {
+                            full = true;
+                            break;
+                        }
+                        batchBytes += entry.length();
+                        accepted++;
+                    }
+                    if (accepted > 0) {
+                        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, size, batchBytes);
+                        for (Entry entry : entries.subList(0, accepted)) {
+                            buffer.putInt(entry.key.length).put(entry.key).putLong(entry.expireAt).putInt(entry.value.length).put(entry.value);
+                        }
+                        buffer.force();
+                        size += batchBytes;
+                        count += accepted;
+                    }
+                }
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_LENGTH);
+                header.putInt(MAGIC).putInt(FORMAT).putLong(start).putInt(count);
+                header.force();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("write hot set snapshot " + file + " failed", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        hotKeyTracker.decay();
+        logger.info("hot set snapshot {} written,keys={},bytes={},cost={}ms", file, count, size, System.currentTimeMillis() - start);
+        return count;
+    }
+
+    /**
+     * 从快照文件恢复到所有分片
+     *
+     * @param replace true:覆盖已存在的key(RESTORE REPLACE) false:已存在的key保持不变
+     * @return 恢复的key数，文件不存在或已过期时返回0
+     */
+    public int importSnapshot(boolean replace) {
+        return importSnapshot(replace, false);
+    }
+
+    /**
+     * 只恢复到冷的分片：空的(DBSIZE为0)或快照之后重启过的(运行时间短于快照的年龄)。
+     * 正常发布重启应用时分片是热的，不导入，避免把快照之后删除(缓存失效)的key恢复成旧值
+     *
+     * @return 恢复的key数
+     */
+    public int importColdShards() {
+        return importSnapshot(false, true);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    private synchronized int importSnapshot(boolean replace, boolean coldOnly) {
+        if (!Files.isRegularFile(file)) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        int restored = 0;
+        ExecutorService executor = newShardExecutor();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT) {
+                logger.warn("{} is not a hot set snapshot", file);
+                return 0;
+            }
+            long created = buffer.getLong();
+            int count = buffer.getInt();
+            int maxAgeSeconds = hotSetProperties.getMaxAgeSeconds();
+            if (maxAgeSeconds > 0 && start - created > TimeUnit.SECONDS.toMillis(maxAgeSeconds)) {
+                logger.warn("hot set snapshot {} is older than {}s, skipped", file, maxAgeSeconds);
+                return 0;
+            }
+            Set<RedisTemplate<String, Object>> targets = coldOnly ? coldShards(start - created) : null;
+            if (targets != null && targets.isEmpty()) {
+                logger.info("no cold shard, hot set snapshot {} not imported", file);
+                return 0;
+            }
+            RedisSerializer<String> keySerializer = keySerializer();
+            int batchSize = Math.max(1, hotSetProperties.getBatchSize());
+            Map<RedisTemplate<String, Object>, List<Entry>> byShard = new IdentityHashMap<>();
+            int batched = 0;
+            for (int i = 0; i < count; i++) {
+                byte[] key = new byte[buffer.getInt()];
+                buffer.get(key);
+                long expireAt = buffer.getLong();
+                int valueLength = buffer.getInt();
+                RedisTemplate<String, Object> template = redisTemplateRoute.getTemplate(keySerializer.deserialize(key));
+                if ((expireAt > 0 && expireAt <= System.currentTimeMillis()) || (targets != null && !targets.contains(template))) {
+                    buffer.position(buffer.position() + valueLength);
+                    continue;
+                }
+                byte[] value = new byte[valueLength];
+                buffer.get(value);
+                byShard.computeIfAbsent(template, t -> new ArrayList<>()).add(new Entry(i, key, expireAt, value));
+                // 按批读取映射文件，内存中只保留一批的值
+                if (++batched >= batchSize) {
+                    restored += restore(executor, byShard, replace);
+                    byShard.clear();
+                    batched = 0;
+                }
+            }
+            restored += restore(executor, byShard, replace);
+        } catch (IOException e) {
+            throw new UncheckedIOException("read hot set snapshot " + file + " failed", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        logger.info("hot set snapshot {} imported,restored={},cost={}ms", file, restored, System.currentTimeMillis() - start);
+        return restored;
+    }
+
+    /**
+     * 空的或者在快照之后重启过的分片
+     *
+     * @param snapshotAgeMillis 快照的年龄
+     */
+    private Set<RedisTemplate<String, Object>> coldShards(long snapshotAgeMillis) {
+        Set<RedisTemplate<String, Object>> cold = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (RedisTemplate<String, Object> template : redisTemplateRoute.getTemplates()) {
+            try {
+                Long dbSize = template.execute((RedisCallback<Long>) RedisConnection::dbSize);
+                Properties info = template.execute((RedisCallback<Properties>) connection -> connection.info("server"));
+                String uptime = info != null ? info.getProperty("uptime_in_seconds") : null;
+                boolean restarted = uptime != null && TimeUnit.SECONDS.toMillis(Long.parseLong(uptime.trim())) < snapshotAgeMillis;
+                if ((dbSize != null && dbSize == 0) || restarted) {
+                    cold.add(template);
+                }
+            } catch (RuntimeException e) {
+                logger.warn("check whether shard is cold failed, skipped", e);
+            }
+        }
+        return cold;
+    }
+
+    /**
+     * 各分片并发读取keys[from,to)，按热度排序返回；每个分片读到的值超过剩余空间时不再继续
+     */
+    private List<Entry> dump(ExecutorService executor, List<String> keys, int from, int to, long remainingBytes) {
+        Map<RedisTemplate<String, Object>, List<Integer>> byShard = new IdentityHashMap<>();
+        for (int i = from; i < to; i++) {
+            byShard.computeIfAbsent(redisTemplateRoute.getTemplate(keys.get(i)), t -> new ArrayList<>()).add(i);
+        }
+        List<Entry> entries = new ArrayList<>(to - from);
+        for (List<Entry> shardEntries : forEachShard(executor, byShard, shard -> dumpShard(shard.getKey(), shard.getValue(), keys, remainingBytes))) {
+            entries.addAll(shardEntries);
+        }
+        entries.sort(Comparator.comparingInt(entry -> entry.rank));
+        return entries;
+    }
+
+    private List<Entry> dumpShard(RedisTemplate<String, Object> template, List<Integer> ranks, List<String> keys, long remainingBytes) {
+        RedisSerializer<String> keySerializer = keySerializer();
+        long maxValueBytes = (long) Math.max(1, hotSetProperties.getMaxValueKb()) << 10;
+        List<byte[]> rawKeys = new ArrayList<>(ranks.size());
+        for (int rank : ranks) {
+            rawKeys.add(keySerializer.serialize(keys.get(rank)));
+        }
+        long now = System.currentTimeMillis();
+        List<Object> results = pipeline(template, connection -> {
+            for (byte[] rawKey : rawKeys) {
+                connection.dump(rawKey);
+                connection.pTtl(rawKey);
+            }
+        });
+        List<Entry> entries = new ArrayList<>(ranks.size());
+        long bytes = 0;
+        for (int i = 0; i < ranks.size() && bytes < remainingBytes; i++) {
+            Object value = get(results, i * 2);
+            Object ttl = get(results, i * 2 + 1);
+            if (!(value instanceof byte[]) || ((byte[]) value).length > maxValueBytes || !(ttl instanceof Number)) {
+                continue;
+            }
+            long ttlMillis = ((Number) ttl).longValue();
+            if (ttlMillis == -2) {
+                // DUMP与PTTL之间过期
+                continue;
+            }
+            Entry entry = new Entry(ranks.get(i), rawKeys.get(i), ttlMillis > 0 ? now + ttlMillis : 0, (byte[]) value);
+            bytes += entry.length();
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private int restore(ExecutorService executor, Map<RedisTemplate<String, Object>, List<Entry>> byShard, boolean replace) {
+        int restored = 0;
+        for (int shardRestored : forEachShard(executor, byShard, shard -> restoreShard(shard.getKey(), shard.getValue(), replace))) {
+            restored += shardRestored;
+        }
+        return restored;
+    }
+
+    private int restoreShard(RedisTemplate<String, Object> template, List<Entry> entries, boolean replace) {
+        long now = System.currentTimeMillis();
+        List<Object> results = pipeline(template, connection -> {
+            for (Entry entry : entries) {
+                long ttl = entry.expireAt > 0 ? Math.max(1, entry.expireAt - now) : 0;
+                byte[] ttlBytes = String.valueOf(ttl).getBytes(StandardCharsets.UTF_8);
+                if (replace) {
+                    connection.execute("RESTORE", entry.key, ttlBytes, entry.value, RESTORE_REPLACE);
+                } else {
+                    connection.execute("RESTORE", entry.key, ttlBytes, entry.value);
+                }
+            }
+        });
+        int restored = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            // 不覆盖时已存在的key返回BUSYKEY错误
+            if (!(get(results, i) instanceof Throwable)) {
+                restored++;
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * 流水线执行，部分命令失败时返回包含异常的结果
+     */
+    private static List<Object> pipeline(RedisTemplate<String, Object> template, Consumer<RedisConnection> commands) {
+        try {
+            return template.execute((RedisCallback<List<Object>>) connection -> {
+                connection.openPipeline();
+                commands.accept(connection);
+                return connection.closePipeline();
+            });
+        } catch (RedisPipelineException e) {
+            return e.getPipelineResult();
+        }
+    }
+
+    private ExecutorService newShardExecutor() {
+        return Executors.newFixedThreadPool(Math.max(1, redisTemplateRoute.getTemplates().size()), r -> {
+            Thread thread = new Thread(r, "redis-hotset-shard");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 各分片并发执行，结果顺序与分片顺序无关
+     */
+    private <T, R> List<R> forEachShard(ExecutorService executor, Map<RedisTemplate<String, Object>, T> byShard,
+                                        Function<Map.Entry<RedisTemplate<String, Object>, T>, R> task) {
+        List<R> results = new ArrayList<>(byShard.size());
+        if (byShard.isEmpty()) {
+            return results;
+        }
+        try {
+            List<Future<R>> futures = new ArrayList<>(byShard.size());
+            for (Map.Entry<RedisTemplate<String, Object>, T> shard : byShard.entrySet()) {
+                futures.add(executor.submit(() -> task.apply(shard)));
+            }
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisSystemException("interrupted while processing hot set", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RedisSystemException("failed to process hot set", cause);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<String> keySerializer() {
+        return (RedisSerializer<String>) redisTemplateRoute.getTemplates().get(0).getKeySerializer();
+    }
+
+    private static Object get(List<Object> results, int index) {
+        return results != null && index < results.size() ? results.get(index) : null;
+    }
+
+    private static final class Entry {
+        /**
+         * 热度排名，越小越热
+         */
+        private final int rank;
+        private final byte[] key;
+        private final long expireAt;
+        private final byte[] value;
+
+        private Entry(int rank, byte[] key, long expireAt, byte[] value) {
+            this.rank = rank;
+            this.key = key;
+            this.expireAt = expireAt;
+            this.value = value;
+        }
+
+        private int length() {
+            return ENTRY_OVERHEAD + key.length + value.length;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.wp.redis.list;
+
+import com.wp.redis.utils.ScriptUtil;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.List;
+
+/**
+ * list增量维护的lua脚本，一次往返内完成写入、裁剪和续期；key不存在时不写入并返回0，
+ * 避免在已过期的缓存上写出只有增量的不完整列表
+ */
+public final class ListScripts {
+
+    /**
+     * KEYS[1] list, ARGV[1] 1:右侧追加 0:左侧插入, ARGV[2] 最大长度(<=0不裁剪), ARGV[3] 过期毫秒(<=0不续期), ARGV[4..] 元素
+     */
+    private static final DefaultRedisScript<Long> PUSH = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 0 then return 0 end\n"
+                    + "local right = ARGV[1] == '1'\n"
+                    + "local command = right and 'rpush' or 'lpush'\n"
+                    + "local len = 0\n"
+                    + "for i = 4, #ARGV, 1000 do\n"
+                    + "  len = redis.call(command, KEYS[1], unpack(ARGV, i, math.min(i + 999, #ARGV)))\n"
+                    + "end\n"
+                    + "local max = tonumber(ARGV[2])\n"
+                    + "if max > 0 and len > max then\n"
+                    + "  if right then redis.call('ltrim', KEYS[1], -max, -1) else redis.call('ltrim', KEYS[1], 0, max - 1) end\n"
+                    + "  len = max\n"
+                    + "end\n"
+                    + "local ttl = tonumber(ARGV[3])\n"
+                    + "if ttl > 0 then redis.call('pexpire', KEYS[1], ttl) end\n"
+                    + "return len", Long.class);
+
+    /**
+     * KEYS[1] list, ARGV[1] 起始下标(可为负), ARGV[2] 过期毫秒(<=0不续期), ARGV[3..] 元素；超出列表范围的元素忽略
+     */
+    private static final DefaultRedisScript<Long> REPLACE_RANGE = new DefaultRedisScript<>(
+            "local len = redis.call('llen', KEYS[1])\n"
+                    + "if len == 0 then return 0 end\n"
+                    + "local start = tonumber(ARGV[1])\n"
+                    + "if start < 0 then start = len + start end\n"
+                    + "local replaced = 0\n"
+                    + "for i = 3, #ARGV do\n"
+                    + "  local index = start + i - 3\n"
+                    + "  if index >= len then break end\n"
+                    + "  if index >= 0 then\n"
+                    + "    redis.call('lset', KEYS[1], index, ARGV[i])\n"
+                    + "    replaced = replaced + 1\n"
+                    + "  end\n"
+                    + "end\n"
+                    + "local ttl = tonumber(ARGV[2])\n"
+                    + "if ttl > 0 then redis.call('pexpire', KEYS[1], ttl) end\n"
+                    + "return replaced", Long.class);
+
+    private ListScripts() {
+    }
+
+    /**
+     * 在已存在的list两端写入并裁剪到最大长度：右侧追加时保留最后maxLength个，左侧插入时保留最前maxLength个
+     *
+     * @param connection
+     * @param rawKey
+     * @param right        true:追加到末尾 false:插入到开头(values的顺序保持不变)
+     * @param maxLength    最大长度，<=0不裁剪
+     * @param expireMillis 过期毫秒，<=0不续期
+     * @param values       序列化后的元素
+     * @return 写入后的长度，list不存在时返回0
+     */
+    public static Long push(RedisConnection connection, byte[] rawKey, boolean right, long maxLength, long expireMillis, List<byte[]> values) {
+        byte[][] keysAndArgs = new byte[4 + values.size()][];
+        keysAndArgs[0] = rawKey;
+        keysAndArgs[1] = ScriptUtil.bytes(right ? 1 : 0);
+        keysAndArgs[2] = ScriptUtil.bytes(maxLength);
+        keysAndArgs[3] = ScriptUtil.bytes(expireMillis);
+        for (int i = 0; i < values.size(); i++) {
+            // LPUSH逐个插入到头部，倒序传入使结果顺序与values一致
+            keysAndArgs[4 + i] = right ? values.get(i) : values.get(values.size() - 1 - i);
+        }
+        return ScriptUtil.eval(connection, PUSH, keysAndArgs);
+    }
+
+    /**
+     * 从start开始逐个LSET替换已存在的元素
+     *
+     * @param connection
+     * @param rawKey
+     * @param start        起始下标，负数从末尾计算
+     * @param expireMillis 过期毫秒，<=0不续期
+     * @param values       序列化后的元素
+     * @return 替换的元素个数，list不存在时返回0
+     */
+    public static Long replaceRange(RedisConnection connection, byte[] rawKey, long start, long expireMillis, List<byte[]> values) {
+        byte[][] keysAndArgs = new byte[3 + values.size()][];
+        keysAndArgs[0] = rawKey;
+        keysAndArgs[1] = ScriptUtil.bytes(start);
+        keysAndArgs[2] = ScriptUtil.bytes(expireMillis);
+        for (int i = 0; i < values.size(); i++) {
+            keysAndArgs[3 + i] = values.get(i);
+        }
+        return ScriptUtil.eval(connection, REPLACE_RANGE, keysAndArgs);
+    }
+}
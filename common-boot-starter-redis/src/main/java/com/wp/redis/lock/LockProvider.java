@@ -0,0 +1,17 @@
+package com.wp.redis.lock;
+
+import org.redisson.api.RLock;
+
+/**
+ * 分布式锁来源
+ */
+public interface LockProvider {
+
+    /**
+     * 获取保护指定数据key的锁
+     *
+     * @param key 数据key(不是锁的key)
+     * @return
+     */
+    RLock getLock(String key);
+}
@@ -0,0 +1,91 @@
+package com.wp.redis.lock;
+
+import com.wp.redis.connection.ParallelInitializer;
+import com.wp.redis.properties.RedisConfigProperties;
+import com.wp.redis.properties.RedissonConfigProperties;
+import com.wp.redis.properties.WarmupProperties;
+import com.wp.redis.template.TemplateRoute;
+import org.redisson.Redisson;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 锁放在数据所在的分片上：每个host一个Redisson客户端，锁按数据key经过与RedisTemplateRoute相同的一致性hash路由，
+ * 不再所有锁都集中到一个实例
+ */
+public class ShardedLockProvider implements LockProvider, DisposableBean {
+
+    private final List<ShardClient> clients;
+
+    private final TemplateRoute<ShardClient> route;
+
+    public ShardedLockProvider(RedisConfigProperties redisConfigProperties, RedissonConfigProperties redissonConfigProperties) {
+        //与RedisTemplateRoute使用相同的host顺序，保证锁与数据落在同一分片
+        List<ShardClient> shardClients = new ArrayList<>();
+        for (String hostName : redisConfigProperties.getHostList()) {
+            Config config = new Config();
+            config.useSingleServer()
+                    .setAddress(hostName + ":" + redisConfigProperties.getPort())
+                    .setDatabase(redisConfigProperties.getDatabase())
+                    .setConnectionPoolSize(redissonConfigProperties.getConnectPoolSize())
+                    .setPassword(redisConfigProperties.getPassword());
+            shardClients.add(new ShardClient(config));
+        }
+        this.clients = shardClients;
+        this.route = new TemplateRoute<>(clients);
+        if (!redissonConfigProperties.isLazy()) {
+            WarmupProperties warmup = redisConfigProperties.getWarmup();
+            ParallelInitializer.map(clients, ShardClient::get, warmup.isParallel() ? warmup.getThreads() : 1);
+        }
+    }
+
+    @Override
+    public RLock getLock(String key) {
+        return route.getTemplate(key).get().getLock(SingleServerLockProvider.lockKey(key));
+    }
+
+    @Override
+    public void destroy() {
+        for (ShardClient client : clients) {
+            client.shutdown();
+        }
+    }
+
+    /**
+     * 单个分片的Redisson客户端，第一次使用时创建
+     */
+    private static class ShardClient {
+        private final Config config;
+        private volatile RedissonClient client;
+
+        private ShardClient(Config config) {
+            this.config = config;
+        }
+
+        private RedissonClient get() {
+            RedissonClient redissonClient = client;
+            if (redissonClient == null) {
+                synchronized (this) {
+                    redissonClient = client;
+                    if (redissonClient == null) {
+                        redissonClient = Redisson.create(config);
+                        client = redissonClient;
+                    }
+                }
+            }
+            return redissonClient;
+        }
+
+        private synchronized void shutdown() {
+            if (client != null) {
+                client.shutdown();
+                client = null;
+            }
+        }
+    }
+}
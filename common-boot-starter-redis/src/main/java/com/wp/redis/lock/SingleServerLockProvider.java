@@ -0,0 +1,35 @@
+package com.wp.redis.lock;
+
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.ObjectFactory;
+
+/**
+ * 所有锁都放在common.redisson配置的单个实例上
+ */
+public class SingleServerLockProvider implements LockProvider {
+
+    private ObjectFactory<RedissonClient> redissonClient;
+
+    public SingleServerLockProvider(RedissonClient redissonClient) {
+        this.redissonClient = () -> redissonClient;
+    }
+
+    /**
+     * 第一次加锁时才获取客户端
+     *
+     * @param redissonClient
+     */
+    public SingleServerLockProvider(ObjectFactory<RedissonClient> redissonClient) {
+        this.redissonClient = redissonClient;
+    }
+
+    @Override
+    public RLock getLock(String key) {
+        return redissonClient.getObject().getLock(lockKey(key));
+    }
+
+    static String lockKey(String key) {
+        return "lock." + key;
+    }
+}
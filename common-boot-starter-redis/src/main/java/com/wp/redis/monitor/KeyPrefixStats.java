@@ -0,0 +1,216 @@
+package com.wp.redis.monitor;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一个key前缀在一个分片(或所有分片)上的内存采样统计
+ */
+public class KeyPrefixStats {
+    /**
+     * 汇总所有分片时的分片名
+     */
+    public static final String ALL_SHARDS = "ALL";
+
+    private String shard;
+    private String prefix;
+    private long sampledKeys;
+    private long sampledBytes;
+    private long maxBytes;
+    /**
+     * 按分片key总数(DBSIZE)与抽样比例估算
+     */
+    private long estimatedKeys;
+    private long estimatedBytes;
+    private Map<String, Long> types = new TreeMap<>();
+    private long noExpire;
+    private long ttlUnderMinute;
+    private long ttlUnderHour;
+    private long ttlUnderDay;
+    private long ttlOverDay;
+
+    public KeyPrefixStats() {
+    }
+
+    public KeyPrefixStats(String shard, String prefix) {
+        this.shard = shard;
+        this.prefix = prefix;
+    }
+
+    /**
+     * 记录一个抽样的key
+     *
+     * @param bytes    MEMORY USAGE
+     * @param type     TYPE
+     * @param ttlMillis PTTL，-1表示不过期
+     */
+    void add(long bytes, String type, long ttlMillis) {
+        sampledKeys++;
+        sampledBytes += bytes;
+        maxBytes = Math.max(maxBytes, bytes);
+        types.merge(type, 1L, Long::sum);
+        if (ttlMillis < 0) {
+            noExpire++;
+        } else if (ttlMillis < 60_000L) {
+            ttlUnderMinute++;
+        } else if (ttlMillis < 3_600_000L) {
+            ttlUnderHour++;
+        } else if (ttlMillis < 86_400_000L) {
+            ttlUnderDay++;
+        } else {
+            ttlOverDay++;
+        }
+    }
+
+    /**
+     * 按抽样比例估算key数与字节数
+     */
+    void estimate(long shardKeys, long shardSampledKeys) {
+        if (shardSampledKeys <= 0) {
+            return;
+        }
+        estimatedKeys = sampledKeys * shardKeys / shardSampledKeys;
+        estimatedBytes = sampledKeys == 0 ? 0 : sampledBytes * estimatedKeys / sampledKeys;
+    }
+
+    void merge(KeyPrefixStats other) {
+        sampledKeys += other.sampledKeys;
+        sampledBytes += other.sampledBytes;
+        maxBytes = Math.max(maxBytes, other.maxBytes);
+        estimatedKeys += other.estimatedKeys;
+        estimatedBytes += other.estimatedBytes;
+        other.types.forEach((type, count) -> types.merge(type, count, Long::sum));
+        noExpire += other.noExpire;
+        ttlUnderMinute += other.ttlUnderMinute;
+        ttlUnderHour += other.ttlUnderHour;
+        ttlUnderDay += other.ttlUnderDay;
+        ttlOverDay += other.ttlOverDay;
+    }
+
+    public long getAvgBytes() {
+        return sampledKeys == 0 ? 0 : sampledBytes / sampledKeys;
+    }
+
+    public String getShard() {
+        return shard;
+    }
+
+    public void setShard(String shard) {
+        this.shard = shard;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public long getSampledKeys() {
+        return sampledKeys;
+    }
+
+    public void setSampledKeys(long sampledKeys) {
+        this.sampledKeys = sampledKeys;
+    }
+
+    public long getSampledBytes() {
+        return sampledBytes;
+    }
+
+    public void setSampledBytes(long sampledBytes) {
+        this.sampledBytes = sampledBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public long getEstimatedKeys() {
+        return estimatedKeys;
+    }
+
+    public void setEstimatedKeys(long estimatedKeys) {
+        this.estimatedKeys = estimatedKeys;
+    }
+
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public void setEstimatedBytes(long estimatedBytes) {
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    public Map<String, Long> getTypes() {
+        return types;
+    }
+
+    public void setTypes(Map<String, Long> types) {
+        this.types = types;
+    }
+
+    public long getNoExpire() {
+        return noExpire;
+    }
+
+    public void setNoExpire(long noExpire) {
+        this.noExpire = noExpire;
+    }
+
+    public long getTtlUnderMinute() {
+        return ttlUnderMinute;
+    }
+
+    public void setTtlUnderMinute(long ttlUnderMinute) {
+        this.ttlUnderMinute = ttlUnderMinute;
+    }
+
+    public long getTtlUnderHour() {
+        return ttlUnderHour;
+    }
+
+    public void setTtlUnderHour(long ttlUnderHour) {
+        this.ttlUnderHour = ttlUnderHour;
+    }
+
+    public long getTtlUnderDay() {
+        return ttlUnderDay;
+    }
+
+    public void setTtlUnderDay(long ttlUnderDay) {
+        this.ttlUnderDay = ttlUnderDay;
+    }
+
+    public long getTtlOverDay() {
+        return ttlOverDay;
+    }
+
+    public void setTtlOverDay(long ttlOverDay) {
+        this.ttlOverDay = ttlOverDay;
+    }
+
+    @Override
+    public String toString() {
+        return "KeyPrefixStats{" +
+                "shard='" + shard + '\'' +
+                ", prefix='" + prefix + '\'' +
+                ", sampledKeys=" + sampledKeys +
+                ", avgBytes=" + getAvgBytes() +
+                ", maxBytes=" + maxBytes +
+                ", estimatedKeys=" + estimatedKeys +
+                ", estimatedBytes=" + estimatedBytes +
+                ", types=" + types +
+                ", noExpire=" + noExpire +
+                ", ttlUnderMinute=" + ttlUnderMinute +
+                ", ttlUnderHour=" + ttlUnderHour +
+                ", ttlUnderDay=" + ttlUnderDay +
+                ", ttlOverDay=" + ttlOverDay +
+                '}';
+    }
+}
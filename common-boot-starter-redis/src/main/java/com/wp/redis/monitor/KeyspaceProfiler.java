@@ -0,0 +1,234 @@
+package com.wp.redis.monitor;
+
+import com.wp.redis.connection.LazyConnectionFactory;
+import com.wp.redis.connection.MultiplexedConnectionFactory;
+import com.wp.redis.properties.ProfilerProperties;
+import com.wp.redis.routes.RedisTemplateRoute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisConnectionUtils;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按key前缀统计各分片的内存占用：并发SCAN各分片，对抽样的key执行MEMORY USAGE/TYPE/PTTL，
+ * 按每秒命令数限速，再按DBSIZE估算每个前缀的key数与字节数
+ */
+public class KeyspaceProfiler {
+
+    private static Logger logger = LoggerFactory.getLogger(KeyspaceProfiler.class);
+
+    private static final int PIPELINE_KEYS = 100;
+    private static final String NO_PREFIX = "(none)";
+    /**
+     * Jedis和Lettuce的命令枚举中都没有MEMORY，不能用connection.execute发送，通过脚本执行
+     */
+    private static final byte[] MEMORY_USAGE = "return redis.call('MEMORY','USAGE',KEYS[1])".getBytes(StandardCharsets.UTF_8);
+
+    private final RedisTemplateRoute redisTemplateRoute;
+    private final ProfilerProperties profilerProperties;
+
+    public KeyspaceProfiler(RedisTemplateRoute redisTemplateRoute, ProfilerProperties profilerProperties) {
+        this.redisTemplateRoute = redisTemplateRoute;
+        this.profilerProperties = profilerProperties;
+    }
+
+    /**
+     * 采样统计，同一时间只运行一次
+     *
+     * @return 每个分片每个前缀一条，以及shard为ALL的汇总，按估算字节数从大到小排序
+     */
+    public synchronized List<KeyPrefixStats> profile() {
+        List<RedisTemplate<String, Object>> templates = redisTemplateRoute.getTemplates();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, templates.size()), r -> {
+            Thread thread = new Thread(r, "redis-keyspace-profiler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<List<KeyPrefixStats>>> futures = new ArrayList<>();
+            for (int i = 0; i < templates.size(); i++) {
+                RedisTemplate<String, Object> template = templates.get(i);
+                String shard = shardName(template, i);
+                futures.add(executor.submit(() -> profileShard(template, shard)));
+            }
+            List<KeyPrefixStats> result = new ArrayList<>();
+            Map<String, KeyPrefixStats> all = new LinkedHashMap<>();
+            for (Future<List<KeyPrefixStats>> future : futures) {
+                for (KeyPrefixStats stats : future.get()) {
+                    result.add(stats);
+                    all.computeIfAbsent(stats.getPrefix(), p -> new KeyPrefixStats(KeyPrefixStats.ALL_SHARDS, p)).merge(stats);
+                }
+            }
+            result.addAll(all.values());
+            result.sort(Comparator.comparingLong(KeyPrefixStats::getEstimatedBytes).reversed());
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisSystemException("interrupted while profiling keyspace", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RedisSystemException(cause.getMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<KeyPrefixStats> profileShard(RedisTemplate<String, Object> template, String shard) throws InterruptedException {
+        RedisSerializer<String> keySerializer = (RedisSerializer<String>) template.getKeySerializer();
+        Map<String, KeyPrefixStats> statsMap = new HashMap<>();
+        Long dbSize = template.execute((RedisCallback<Long>) RedisConnection::dbSize);
+        ScanOptions options = ScanOptions.scanOptions().count(Math.max(1, profilerProperties.getScanCount())).build();
+        int maxSampled = Math.max(1, profilerProperties.getMaxSampledKeysPerShard());
+        double sampleRate = profilerProperties.getSampleRate();
+        long sampled = 0;
+        long start = System.nanoTime();
+        List<byte[]> batch = new ArrayList<>(PIPELINE_KEYS);
+        RedisConnectionFactory factory = template.getConnectionFactory();
+        RedisConnection connection = RedisConnectionUtils.getConnection(factory);
+        try (Cursor<byte[]> cursor = connection.scan(options)) {
+            while (cursor.hasNext() && sampled < maxSampled) {
+                byte[] key = cursor.next();
+                if (ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+                    continue;
+                }
+                batch.add(key);
+                sampled++;
+                if (batch.size() >= PIPELINE_KEYS) {
+                    analyze(template, keySerializer, batch, statsMap, shard);
+                    throttle(start, sampled);
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("close scan cursor", e);
+        } finally {
+            RedisConnectionUtils.releaseConnection(connection, factory);
+        }
+        analyze(template, keySerializer, batch, statsMap, shard);
+        for (KeyPrefixStats stats : statsMap.values()) {
+            stats.estimate(dbSize != null ? dbSize : 0, sampled);
+        }
+        return new ArrayList<>(statsMap.values());
+    }
+
+    private void analyze(RedisTemplate<String, Object> template, RedisSerializer<String> keySerializer, List<byte[]> batch,
+                         Map<String, KeyPrefixStats> statsMap, String shard) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Object> results;
+        try {
+            results = template.execute((RedisCallback<List<Object>>) connection -> {
+                connection.openPipeline();
+                for (byte[] key : batch) {
+                    connection.eval(MEMORY_USAGE, ReturnType.INTEGER, 1, key);
+                    connection.type(key);
+                    connection.pTtl(key);
+                }
+                return connection.closePipeline();
+            });
+        } catch (RedisPipelineException e) {
+            results = e.getPipelineResult();
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Object type = get(results, i * 3 + 1);
+            if (type == null || type == DataType.NONE || "none".equals(type)) {
+                // 抽样后到分析前已过期或被删除
+                continue;
+            }
+            Object bytes = get(results, i * 3);
+            Object ttl = get(results, i * 3 + 2);
+            String prefix = prefixOf(keySerializer.deserialize(batch.get(i)));
+            statsMap.computeIfAbsent(prefix, p -> new KeyPrefixStats(shard, p)).add(
+                    bytes instanceof Number ? ((Number) bytes).longValue() : 0,
+                    type instanceof DataType ? ((DataType) type).code() : String.valueOf(type),
+                    ttl instanceof Number ? ((Number) ttl).longValue() : -1);
+        }
+        batch.clear();
+    }
+
+    /**
+     * 每个抽样的key执行3条命令，按每秒命令数计算需要等待的时间
+     */
+    private void throttle(long start, long sampled) throws InterruptedException {
+        int maxCommandsPerSecond = profilerProperties.getMaxCommandsPerSecond();
+        if (maxCommandsPerSecond <= 0) {
+            return;
+        }
+        long expectedNanos = TimeUnit.SECONDS.toNanos(sampled * 3) / maxCommandsPerSecond;
+        long sleepNanos = expectedNanos - (System.nanoTime() - start);
+        if (sleepNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(sleepNanos);
+        }
+    }
+
+    /**
+     * 取到第prefixDepth个分隔符(包含)为止，分隔符不足时取到最后一个分隔符
+     */
+    String prefixOf(String key) {
+        String delimiters = profilerProperties.getPrefixDelimiters();
+        int depth = Math.max(1, profilerProperties.getPrefixDepth());
+        int found = 0;
+        int last = -1;
+        for (int i = 0; i < key.length(); i++) {
+            if (delimiters.indexOf(key.charAt(i)) >= 0) {
+                last = i;
+                if (++found == depth) {
+                    break;
+                }
+            }
+        }
+        return last < 0 ? NO_PREFIX : key.substring(0, last + 1);
+    }
+
+    private static Object get(List<Object> results, int index) {
+        if (results == null || index >= results.size() || results.get(index) instanceof Exception) {
+            return null;
+        }
+        return results.get(index);
+    }
+
+    private static String shardName(RedisTemplate<String, Object> template, int index) {
+        RedisConnectionFactory factory = template.getConnectionFactory();
+        if (factory instanceof LazyConnectionFactory) {
+            return ((LazyConnectionFactory) factory).getHostName();
+        }
+        if (factory instanceof JedisConnectionFactory) {
+            JedisConnectionFactory jedis = (JedisConnectionFactory) factory;
+            return jedis.getHostName() + ":" + jedis.getPort();
+        }
+        if (factory instanceof MultiplexedConnectionFactory) {
+            return ((MultiplexedConnectionFactory) factory).getHostName();
+        }
+        return "shard-" + index;
+    }
+}
@@ -0,0 +1,63 @@
+package com.wp.redis.monitor;
+
+import com.wp.redis.connection.LazyConnectionFactory;
+import com.wp.redis.connection.ShardJedisConnectionFactory;
+import com.wp.redis.routes.RedisTemplateRoute;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.clients.jedis.Jedis;
+import redis.clients.util.Pool;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 每个分片连接池的实时指标：活跃数/空闲数/等待数/借用等待时间
+ */
+public class ShardPoolMetrics {
+
+    private RedisTemplateRoute redisTemplateRoute;
+
+    public ShardPoolMetrics(RedisTemplateRoute redisTemplateRoute) {
+        this.redisTemplateRoute = redisTemplateRoute;
+    }
+
+    /**
+     * 采集所有分片(包括副本)的连接池指标，未使用连接池或尚未初始化的分片不返回
+     *
+     * @return
+     */
+    public List<ShardPoolStats> getStats() {
+        List<ShardPoolStats> statsList = new ArrayList<>();
+        for (RedisTemplate<String, Object> template : redisTemplateRoute.getTemplates()) {
+            collect(template, statsList);
+            for (RedisTemplate<String, Object> replica : redisTemplateRoute.getReplicas(template)) {
+                collect(replica, statsList);
+            }
+        }
+        return statsList;
+    }
+
+    private static void collect(RedisTemplate<String, Object> template, List<ShardPoolStats> statsList) {
+        RedisConnectionFactory connectionFactory = template.getConnectionFactory();
+        if (connectionFactory instanceof LazyConnectionFactory) {
+            connectionFactory = ((LazyConnectionFactory) connectionFactory).getDelegateIfInitialized();
+        }
+        if (connectionFactory instanceof ShardJedisConnectionFactory) {
+            ShardJedisConnectionFactory factory = (ShardJedisConnectionFactory) connectionFactory;
+            Pool<Jedis> pool = factory.getPool();
+            if (pool == null) {
+                return;
+            }
+            ShardPoolStats stats = new ShardPoolStats();
+            stats.setHostName(factory.getHostName());
+            stats.setMaxTotal(factory.getPoolConfig().getMaxTotal());
+            stats.setNumActive(pool.getNumActive());
+            stats.setNumIdle(pool.getNumIdle());
+            stats.setNumWaiters(pool.getNumWaiters());
+            stats.setMeanBorrowWaitMillis(pool.getMeanBorrowWaitTimeMillis());
+            stats.setMaxBorrowWaitMillis(pool.getMaxBorrowWaitTimeMillis());
+            statsList.add(stats);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.wp.redis.monitor;
+
+/**
+ * 单个分片连接池的指标快照
+ */
+public class ShardPoolStats {
+    private String hostName;
+    private int maxTotal;
+    private int numActive;
+    private int numIdle;
+    private int numWaiters;
+    private long meanBorrowWaitMillis;
+    private long maxBorrowWaitMillis;
+
+    public String getHostName() {
+        return hostName;
+    }
+
+    public void setHostName(String hostName) {
+        this.hostName = hostName;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public void setMaxTotal(int maxTotal) {
+        this.maxTotal = maxTotal;
+    }
+
+    public int getNumActive() {
+        return numActive;
+    }
+
+    public void setNumActive(int numActive) {
+        this.numActive = numActive;
+    }
+
+    public int getNumIdle() {
+        return numIdle;
+    }
+
+    public void setNumIdle(int numIdle) {
+        this.numIdle = numIdle;
+    }
+
+    public int getNumWaiters() {
+        return numWaiters;
+    }
+
+    public void setNumWaiters(int numWaiters) {
+        this.numWaiters = numWaiters;
+    }
+
+    public long getMeanBorrowWaitMillis() {
+        return meanBorrowWaitMillis;
+    }
+
+    public void setMeanBorrowWaitMillis(long meanBorrowWaitMillis) {
+        this.meanBorrowWaitMillis = meanBorrowWaitMillis;
+    }
+
+    public long getMaxBorrowWaitMillis() {
+        return maxBorrowWaitMillis;
+    }
+
+    public void setMaxBorrowWaitMillis(long maxBorrowWaitMillis) {
+        this.maxBorrowWaitMillis = maxBorrowWaitMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardPoolStats{" +
+                "hostName='" + hostName + '\'' +
+                ", maxTotal=" + maxTotal +
+                ", numActive=" + numActive +
+                ", numIdle=" + numIdle +
+                ", numWaiters=" + numWaiters +
+                ", meanBorrowWaitMillis=" + meanBorrowWaitMillis +
+                ", maxBorrowWaitMillis=" + maxBorrowWaitMillis +
+                '}';
+    }
+}
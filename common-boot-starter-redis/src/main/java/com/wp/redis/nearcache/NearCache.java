@@ -0,0 +1,125 @@
+package com.wp.redis.nearcache;
+
+import com.wp.redis.properties.NearCacheProperties;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RedisFacade前面的堆外近端缓存，保存值序列化后的字节，命中时再反序列化。
+ * <p>
+ * 按key分条记录失效版本：读redis前取版本，放入时版本已变(读取期间本实例写入或删除了这个key)就不放入，
+ * 避免读到的旧值在失效之后才放进缓存
+ */
+public class NearCache {
+
+    private static final int GENERATION_STRIPES = 4096;
+
+    private final NearCacheProperties nearCacheProperties;
+    private final OffHeapStore store;
+    private final long ttlMillis;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public NearCache(NearCacheProperties nearCacheProperties) {
+        this.nearCacheProperties = nearCacheProperties;
+        this.store = new OffHeapStore((long) nearCacheProperties.getCapacityMb() << 20, nearCacheProperties.getSegments(),
+                nearCacheProperties.getSlabKb() << 10, nearCacheProperties.getMaxEntryKb() << 10);
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(nearCacheProperties.getTtlSeconds());
+    }
+
+    /**
+     * key是否在缓存范围内
+     *
+     * @param key
+     * @return
+     */
+    public boolean accepts(String key) {
+        if (nearCacheProperties.getPrefixes().isEmpty()) {
+            return true;
+        }
+        for (String prefix : nearCacheProperties.getPrefixes()) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public byte[] get(String key) {
+        byte[] bytes = store.get(key);
+        if (bytes != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return bytes;
+    }
+
+    /**
+     * 读redis之前调用，放入时传回
+     *
+     * @param key
+     * @return key当前的失效版本
+     */
+    public long generation(String key) {
+        return generations.get(stripe(key));
+    }
+
+    /**
+     * 放入读到的值；先比较版本再放入，放入后再比较一次，期间有失效时撤销
+     *
+     * @param key
+     * @param bytes
+     * @param generation 读redis之前取得的版本
+     */
+    public void put(String key, byte[] bytes, long generation) {
+        int stripe = stripe(key);
+        if (generations.get(stripe) != generation) {
+            return;
+        }
+        store.put(key, bytes, ttlMillis);
+        if (generations.get(stripe) != generation) {
+            store.remove(key);
+        }
+    }
+
+    public void remove(String key) {
+        generations.incrementAndGet(stripe(key));
+        store.remove(key);
+    }
+
+    public void clear() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+        store.clear();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long size() {
+        return store.size();
+    }
+
+    public long getAllocatedBytes() {
+        return store.getAllocatedBytes();
+    }
+
+    public long getEvictions() {
+        return store.getEvictions();
+    }
+
+    private static int stripe(String key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+}
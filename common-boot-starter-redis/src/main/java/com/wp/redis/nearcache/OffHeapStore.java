@@ -0,0 +1,589 @@
+package com.wp.redis.nearcache;
+
+import redis.clients.util.MurmurHash;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 堆外的key-value存储，值为序列化后的字节，不占用java堆。
+ * <p>
+ * 分段加锁；每段从直接内存申请固定大小的slab，按大小分级切成块，索引为开放寻址的long/int数组，
+ * 内存用完后在同一大小级别内按clock算法淘汰最近未访问的条目；
+ * 其他大小级别有更久未访问的slab时，整块淘汰该slab的条目并把它重新切分给当前级别，以适应值大小分布的变化。
+ * 申请过的直接内存不再归还(clear后也保留)，只在段内复用，总量不超过容量上限，不依赖GC回收直接内存。
+ * 块内布局：hash(8) 过期时间(8) key长度(4) 值长度(4) key 值
+ */
+public class OffHeapStore {
+
+    private static final int HEADER = 24;
+    private static final int MIN_CHUNK = 64;
+    private static final double GROWTH = 1.25;
+    private static final int HASH_SEED = 0x5bd1e995;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final int maxEntryBytes;
+
+    /**
+     * @param capacityBytes 总直接内存上限
+     * @param segmentCount  分段数，取整到2的幂
+     * @param slabBytes     每次向系统申请的直接内存大小，不小于maxEntryBytes
+     * @param maxEntryBytes 单个条目(含key与头部)的最大字节数，更大的值不缓存
+     */
+    public OffHeapStore(long capacityBytes, int segmentCount, int slabBytes, int maxEntryBytes) {
+        int count = Integer.highestOneBit(Math.max(1, segmentCount));
+        this.segments = new Segment[count];
+        this.segmentMask = count - 1;
+        this.maxEntryBytes = Math.max(MIN_CHUNK, maxEntryBytes);
+        int[] chunkSizes = chunkSizes(this.maxEntryBytes);
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(capacityBytes / count, Math.max(slabBytes, this.maxEntryBytes), chunkSizes);
+        }
+    }
+
+    private static int[] chunkSizes(int maxEntryBytes) {
+        List<Integer> sizes = new ArrayList<>();
+        int size = MIN_CHUNK;
+        while (size < maxEntryBytes) {
+            sizes.add(size);
+            size = (int) Math.min(maxEntryBytes, ((long) (size * GROWTH) + 7) & ~7L);
+        }
+        sizes.add(maxEntryBytes);
+        int[] result = new int[sizes.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = sizes.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @param key
+     * @return 值的副本，不存在或已过期时返回null
+     */
+    public byte[] get(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(keyBytes);
+        return segment(hash).get(hash, keyBytes);
+    }
+
+    /**
+     * @param key
+     * @param value
+     * @param ttlMillis 过期时间
+     * @return 是否存入，值过大或该大小级别没有可用内存时返回false
+     */
+    public boolean put(String key, byte[] value, long ttlMillis) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (HEADER + keyBytes.length + value.length > maxEntryBytes) {
+            remove(key);
+            return false;
+        }
+        long hash = hash(keyBytes);
+        return segment(hash).put(hash, keyBytes, value, System.currentTimeMillis() + ttlMillis);
+    }
+
+    public void remove(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(keyBytes);
+        segment(hash).remove(hash, keyBytes);
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getAllocatedBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.allocatedBytes();
+        }
+        return bytes;
+    }
+
+    public long getEvictions() {
+        long evictions = 0;
+        for (Segment segment : segments) {
+            evictions += segment.evictions();
+        }
+        return evictions;
+    }
+
+    private Segment segment(long hash) {
+        return segments[(int) (hash >>> 32) & segmentMask];
+    }
+
+    /**
+     * 0作为索引中的空位标记
+     */
+    private static long hash(byte[] keyBytes) {
+        long hash = MurmurHash.hash64A(keyBytes, HASH_SEED);
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static final class Segment {
+
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private final long maxBytes;
+        private final int slabBytes;
+        private final SizeClass[] classes;
+        /**
+         * 回收后还没有重新切分的slab
+         */
+        private final List<ByteBuffer> freeSlabs = new ArrayList<>();
+        private long allocatedBytes;
+        private long evictions;
+        private long ticks;
+        private long[] hashes;
+        private int[] refs;
+        private int size;
+
+        private Segment(long maxBytes, int slabBytes, int[] chunkSizes) {
+            this.maxBytes = maxBytes;
+            this.slabBytes = slabBytes;
+            this.classes = new SizeClass[chunkSizes.length];
+            for (int i = 0; i < chunkSizes.length; i++) {
+                classes[i] = new SizeClass(chunkSizes[i], slabBytes);
+            }
+            this.hashes = new long[INITIAL_CAPACITY];
+            this.refs = new int[INITIAL_CAPACITY];
+        }
+
+        synchronized byte[] get(long hash, byte[] keyBytes) {
+            int slot = find(hash, keyBytes);
+            if (slot < 0) {
+                return null;
+            }
+            int ref = refs[slot];
+            SizeClass sizeClass = classes[ref >>> 24];
+            int chunk = ref & 0xFFFFFF;
+            ByteBuffer slab = sizeClass.slab(chunk);
+            int offset = sizeClass.offset(chunk);
+            if (slab.getLong(offset + 8) < System.currentTimeMillis()) {
+                removeSlot(slot);
+                sizeClass.free(chunk);
+                return null;
+            }
+            sizeClass.touch(chunk, ++ticks);
+            int keyLength = slab.getInt(offset + 16);
+            byte[] value = new byte[slab.getInt(offset + 20)];
+            ByteBuffer view = slab.duplicate();
+            view.position(offset + HEADER + keyLength);
+            view.get(value);
+            return value;
+        }
+
+        synchronized boolean put(long hash, byte[] keyBytes, byte[] value, long expireAt) {
+            remove(hash, keyBytes);
+            int entryBytes = HEADER + keyBytes.length + value.length;
+            int classIndex = 0;
+            while (classes[classIndex].chunkSize < entryBytes) {
+                classIndex++;
+            }
+            SizeClass sizeClass = classes[classIndex];
+            int chunk = allocate(classIndex);
+            if (chunk < 0) {
+                return false;
+            }
+            sizeClass.stamp(chunk, ++ticks);
+            ByteBuffer slab = sizeClass.slab(chunk);
+            int offset = sizeClass.offset(chunk);
+            slab.putLong(offset, hash);
+            slab.putLong(offset + 8, expireAt);
+            slab.putInt(offset + 16, keyBytes.length);
+            slab.putInt(offset + 20, value.length);
+            ByteBuffer view = slab.duplicate();
+            view.position(offset + HEADER);
+            view.put(keyBytes);
+            view.put(value);
+            insert(hash, (classIndex << 24) | chunk);
+            return true;
+        }
+
+        synchronized void remove(long hash, byte[] keyBytes) {
+            int slot = find(hash, keyBytes);
+            if (slot >= 0) {
+                int ref = refs[slot];
+                removeSlot(slot);
+                classes[ref >>> 24].free(ref & 0xFFFFFF);
+            }
+        }
+
+        synchronized void clear() {
+            for (SizeClass sizeClass : classes) {
+                freeSlabs.addAll(sizeClass.reset());
+            }
+            hashes = new long[INITIAL_CAPACITY];
+            refs = new int[INITIAL_CAPACITY];
+            size = 0;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long allocatedBytes() {
+            return allocatedBytes;
+        }
+
+        synchronized long evictions() {
+            return evictions;
+        }
+
+        /**
+         * 先用空闲块，再给这个级别增加一个slab(复用回收的slab，没有时在内存上限内申请，再不够时从其他级别回收)，
+         * 最后在同一大小级别内按clock淘汰
+         */
+        private int allocate(int classIndex) {
+            SizeClass sizeClass = classes[classIndex];
+            int chunk = sizeClass.allocate();
+            if (chunk >= 0) {
+                return chunk;
+            }
+            ByteBuffer slab = sizeClass.canGrow() ? takeSlab(classIndex) : null;
+            if (slab != null) {
+                sizeClass.addSlab(slab, ++ticks);
+                return sizeClass.allocate();
+            }
+            int victim = sizeClass.nextVictim();
+            if (victim < 0) {
+                return -1;
+            }
+            unlink(classIndex, victim);
+            sizeClass.free(victim);
+            evictions++;
+            return sizeClass.allocate();
+        }
+
+        /**
+         * @return 可以切分给指定级别的slab，没有时返回null
+         */
+        private ByteBuffer takeSlab(int classIndex) {
+            if (freeSlabs.isEmpty()) {
+                if (allocatedBytes + slabBytes <= maxBytes) {
+                    allocatedBytes += slabBytes;
+                    return ByteBuffer.allocateDirect(slabBytes);
+                }
+                rebalance(classIndex);
+            }
+            return freeSlabs.isEmpty() ? null : freeSlabs.remove(freeSlabs.size() - 1);
+        }
+
+        /**
+         * 回收其他大小级别中最久未访问的slab；只回收比当前级别所有slab都更久未访问的slab(当前级别没有slab时不限)，
+         * 避免级别之间来回搬动
+         */
+        private void rebalance(int classIndex) {
+            int own = classes[classIndex].coldestSlab();
+            long oldest = own < 0 ? Long.MAX_VALUE : classes[classIndex].lastAccess(own);
+            int donor = -1;
+            int donorSlab = -1;
+            for (int i = 0; i < classes.length; i++) {
+                int slab = i == classIndex ? -1 : classes[i].coldestSlab();
+                if (slab >= 0 && classes[i].lastAccess(slab) < oldest) {
+                    donor = i;
+                    donorSlab = slab;
+                    oldest = classes[i].lastAccess(slab);
+                }
+            }
+            if (donor >= 0) {
+                releaseSlab(donor, donorSlab);
+            }
+        }
+
+        /**
+         * 淘汰slab上的全部条目，slab放回空闲列表
+         */
+        private void releaseSlab(int classIndex, int slabIndex) {
+            SizeClass sizeClass = classes[classIndex];
+            int first = slabIndex * sizeClass.chunksPerSlab;
+            for (int chunk = first; chunk < first + sizeClass.chunksPerSlab; chunk++) {
+                if (sizeClass.inUse(chunk)) {
+                    unlink(classIndex, chunk);
+                    evictions++;
+                }
+            }
+            freeSlabs.add(sizeClass.release(slabIndex));
+        }
+
+        /**
+         * 从索引中删除指向该块的条目，不释放块
+         */
+        private void unlink(int classIndex, int chunk) {
+            SizeClass sizeClass = classes[classIndex];
+            long chunkHash = sizeClass.slab(chunk).getLong(sizeClass.offset(chunk));
+            int ref = (classIndex << 24) | chunk;
+            int mask = hashes.length - 1;
+            for (int slot = (int) chunkHash & mask; hashes[slot] != 0; slot = (slot + 1) & mask) {
+                if (refs[slot] == ref) {
+                    removeSlot(slot);
+                    return;
+                }
+            }
+        }
+
+        private int find(long hash, byte[] keyBytes) {
+            int mask = hashes.length - 1;
+            for (int slot = (int) hash & mask; hashes[slot] != 0; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash && keyEquals(refs[slot], keyBytes)) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private boolean keyEquals(int ref, byte[] keyBytes) {
+            SizeClass sizeClass = classes[ref >>> 24];
+            int chunk = ref & 0xFFFFFF;
+            ByteBuffer slab = sizeClass.slab(chunk);
+            int offset = sizeClass.offset(chunk);
+            if (slab.getInt(offset + 16) != keyBytes.length) {
+                return false;
+            }
+            for (int i = 0; i < keyBytes.length; i++) {
+                if (slab.get(offset + HEADER + i) != keyBytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void insert(long hash, int ref) {
+            if ((size + 1) * 4 > hashes.length * 3) {
+                resize();
+            }
+            int mask = hashes.length - 1;
+            int slot = (int) hash & mask;
+            while (hashes[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = hash;
+            refs[slot] = ref;
+            size++;
+        }
+
+        private void resize() {
+            long[] oldHashes = hashes;
+            int[] oldRefs = refs;
+            hashes = new long[oldHashes.length * 2];
+            refs = new int[oldRefs.length * 2];
+            int mask = hashes.length - 1;
+            for (int i = 0; i < oldHashes.length; i++) {
+                if (oldHashes[i] != 0) {
+                    int slot = (int) oldHashes[i] & mask;
+                    while (hashes[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    hashes[slot] = oldHashes[i];
+                    refs[slot] = oldRefs[i];
+                }
+            }
+        }
+
+        /**
+         * 线性探测的删除：把后面探测链上可以前移的条目移到空位，不使用墓碑
+         */
+        private void removeSlot(int slot) {
+            int mask = hashes.length - 1;
+            int hole = slot;
+            for (int i = (slot + 1) & mask; hashes[i] != 0; i = (i + 1) & mask) {
+                int home = (int) hashes[i] & mask;
+                boolean movable = i > hole ? (home <= hole || home > i) : (home <= hole && home > i);
+                if (movable) {
+                    hashes[hole] = hashes[i];
+                    refs[hole] = refs[i];
+                    hole = i;
+                }
+            }
+            hashes[hole] = 0;
+            refs[hole] = 0;
+            size--;
+        }
+    }
+
+    /**
+     * 一个大小级别：把段分配的slab切成相同大小的块，空闲块用栈管理，clock位记录最近是否访问。
+     * 每个slab记录最近一次访问的序号用于级别间回收；回收后slab的位置留空，下次增加slab时复用，块编号保持不变
+     */
+    private static final class SizeClass {
+
+        private static final byte FREE = 0;
+        private static final byte USED = 1;
+        private static final byte REFERENCED = 2;
+        private static final byte RELEASED = 3;
+        private static final int MAX_CHUNKS = 1 << 24;
+
+        private final int chunkSize;
+        private final int chunksPerSlab;
+        private final List<ByteBuffer> slabs = new ArrayList<>();
+        private int[] freeStack = new int[0];
+        private int freeTop;
+        private byte[] states = new byte[0];
+        private long[] slabAccess = new long[0];
+        private int slabCount;
+        private int total;
+        private int hand;
+
+        private SizeClass(int chunkSize, int slabBytes) {
+            this.chunkSize = chunkSize;
+            this.chunksPerSlab = slabBytes / chunkSize;
+        }
+
+        boolean canGrow() {
+            return slabCount < slabs.size() || total + chunksPerSlab <= MAX_CHUNKS;
+        }
+
+        void addSlab(ByteBuffer slab, long tick) {
+            slabCount++;
+            int hole = slabs.indexOf(null);
+            if (hole >= 0) {
+                slabs.set(hole, slab);
+                slabAccess[hole] = tick;
+                int first = hole * chunksPerSlab;
+                for (int chunk = first + chunksPerSlab - 1; chunk >= first; chunk--) {
+                    states[chunk] = FREE;
+                    freeStack[freeTop++] = chunk;
+                }
+                return;
+            }
+            slabs.add(slab);
+            slabAccess = Arrays.copyOf(slabAccess, slabs.size());
+            slabAccess[slabs.size() - 1] = tick;
+            int newTotal = total + chunksPerSlab;
+            states = Arrays.copyOf(states, newTotal);
+            if (freeStack.length < newTotal) {
+                freeStack = Arrays.copyOf(freeStack, newTotal);
+            }
+            for (int chunk = newTotal - 1; chunk >= total; chunk--) {
+                freeStack[freeTop++] = chunk;
+            }
+            total = newTotal;
+        }
+
+        int allocate() {
+            if (freeTop == 0) {
+                return -1;
+            }
+            int chunk = freeStack[--freeTop];
+            states[chunk] = USED;
+            return chunk;
+        }
+
+        void free(int chunk) {
+            if (states[chunk] != FREE) {
+                states[chunk] = FREE;
+                freeStack[freeTop++] = chunk;
+            }
+        }
+
+        void touch(int chunk, long tick) {
+            states[chunk] = REFERENCED;
+            stamp(chunk, tick);
+        }
+
+        void stamp(int chunk, long tick) {
+            slabAccess[chunk / chunksPerSlab] = tick;
+        }
+
+        boolean inUse(int chunk) {
+            return states[chunk] == USED || states[chunk] == REFERENCED;
+        }
+
+        /**
+         * @return 最久未访问的slab，没有slab时返回-1
+         */
+        int coldestSlab() {
+            int coldest = -1;
+            for (int i = 0; i < slabs.size(); i++) {
+                if (slabs.get(i) != null && (coldest < 0 || slabAccess[i] < slabAccess[coldest])) {
+                    coldest = i;
+                }
+            }
+            return coldest;
+        }
+
+        long lastAccess(int slabIndex) {
+            return slabAccess[slabIndex];
+        }
+
+        /**
+         * 归还slab，调用方需先从索引中删除它上面的条目
+         */
+        ByteBuffer release(int slabIndex) {
+            int first = slabIndex * chunksPerSlab;
+            int end = first + chunksPerSlab;
+            int top = 0;
+            for (int i = 0; i < freeTop; i++) {
+                if (freeStack[i] < first || freeStack[i] >= end) {
+                    freeStack[top++] = freeStack[i];
+                }
+            }
+            freeTop = top;
+            Arrays.fill(states, first, end, RELEASED);
+            slabCount--;
+            return slabs.set(slabIndex, null);
+        }
+
+        /**
+         * clock：跳过空闲块，最近访问过的块清除访问位后跳过，返回第一个未访问的块
+         */
+        int nextVictim() {
+            if (total == 0) {
+                return -1;
+            }
+            for (int i = 0; i < total * 2; i++) {
+                int chunk = hand;
+                hand = (hand + 1) % total;
+                if (states[chunk] == REFERENCED) {
+                    states[chunk] = USED;
+                } else if (states[chunk] == USED) {
+                    return chunk;
+                }
+            }
+            return -1;
+        }
+
+        ByteBuffer slab(int chunk) {
+            return slabs.get(chunk / chunksPerSlab);
+        }
+
+        int offset(int chunk) {
+            return (chunk % chunksPerSlab) * chunkSize;
+        }
+
+        /**
+         * @return 清空前持有的slab
+         */
+        List<ByteBuffer> reset() {
+            List<ByteBuffer> released = new ArrayList<>();
+            for (ByteBuffer slab : slabs) {
+                if (slab != null) {
+                    released.add(slab);
+                }
+            }
+            slabs.clear();
+            freeStack = new int[0];
+            freeTop = 0;
+            states = new byte[0];
+            slabAccess = new long[0];
+            slabCount = 0;
+            total = 0;
+            hand = 0;
+            return released;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.wp.redis.policy;
+
+import com.wp.redis.expiry.ExpiryPolicy;
+import com.wp.redis.properties.CompressionType;
+import com.wp.redis.properties.KeyPolicyProperties;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 合并了上级前缀后的策略，不可变；为null的项表示由调用方或原有配置决定
+ */
+public class KeyPolicy {
+
+    private final String prefix;
+    private final Integer ttlSeconds;
+    private final int ttlJitterPercent;
+    private final CompressionType compression;
+    private final int compressionThresholdBytes;
+    private final Boolean nearCache;
+    private final Boolean cacheEmpty;
+
+    KeyPolicy(String prefix, Integer ttlSeconds, int ttlJitterPercent, CompressionType compression,
+              int compressionThresholdBytes, Boolean nearCache, Boolean cacheEmpty) {
+        this.prefix = prefix;
+        this.ttlSeconds = ttlSeconds;
+        this.ttlJitterPercent = ttlJitterPercent;
+        this.compression = compression;
+        this.compressionThresholdBytes = compressionThresholdBytes;
+        this.nearCache = nearCache;
+        this.cacheEmpty = cacheEmpty;
+    }
+
+    /**
+     * 用更长前缀的配置覆盖
+     */
+    KeyPolicy merge(KeyPolicyProperties properties) {
+        return new KeyPolicy(properties.getPrefix(),
+                properties.getTtlSeconds() != null ? properties.getTtlSeconds() : ttlSeconds,
+                properties.getTtlJitterPercent() != null ? properties.getTtlJitterPercent() : ttlJitterPercent,
+                properties.getCompression() != null ? properties.getCompression() : compression,
+                properties.getCompressionThresholdBytes() != null ? properties.getCompressionThresholdBytes() : compressionThresholdBytes,
+                properties.getNearCache() != null ? properties.getNearCache() : nearCache,
+                properties.getCacheEmpty() != null ? properties.getCacheEmpty() : cacheEmpty);
+    }
+
+    /**
+     * 配置了ttlSeconds时用配置的时间，否则用调用方的时间，再随机延长
+     *
+     * @param time
+     * @param timeUnit
+     * @return 毫秒
+     */
+    public long expireMillis(long time, TimeUnit timeUnit) {
+        if (ttlSeconds != null) {
+            return ExpiryPolicy.jitterMillis(ttlSeconds, TimeUnit.SECONDS, ttlJitterPercent);
+        }
+        return ExpiryPolicy.jitterMillis(time, timeUnit, ttlJitterPercent);
+    }
+
+    /**
+     * 只随机延长调用方的时间，用于空值标记等不应被ttlSeconds替代的过期时间
+     *
+     * @param time
+     * @param timeUnit
+     * @return 毫秒
+     */
+    public long jitterMillis(long time, TimeUnit timeUnit) {
+        return ExpiryPolicy.jitterMillis(time, timeUnit, ttlJitterPercent);
+    }
+
+    /**
+     * 是否缓存空值，未配置时缓存
+     */
+    public boolean isCacheEmpty() {
+        return cacheEmpty == null || cacheEmpty;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public Integer getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public int getTtlJitterPercent() {
+        return ttlJitterPercent;
+    }
+
+    public CompressionType getCompression() {
+        return compression;
+    }
+
+    public int getCompressionThresholdBytes() {
+        return compressionThresholdBytes;
+    }
+
+    public Boolean getNearCache() {
+        return nearCache;
+    }
+
+    public Boolean getCacheEmpty() {
+        return cacheEmpty;
+    }
+}
@@ -0,0 +1,100 @@
+package com.wp.redis.policy;
+
+import com.wp.redis.properties.KeyPolicyProperties;
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 按key前缀查找策略的字典树，启动时构建后只读；查找沿key逐字符下行，取最后经过的带策略节点，
+ * 耗时只与key长度有关，不随策略数增长，也不分配对象
+ */
+public class KeyPolicyTable {
+
+    private final Node root = new Node();
+    private final KeyPolicy defaultPolicy;
+
+    /**
+     * @param policies            前缀策略
+     * @param defaultJitterPercent 全局的过期时间随机延长百分比
+     */
+    public KeyPolicyTable(List<KeyPolicyProperties> policies, int defaultJitterPercent) {
+        this.defaultPolicy = new KeyPolicy("", null, Math.max(0, defaultJitterPercent), null, 0, null, null);
+        for (KeyPolicyProperties properties : policies) {
+            Assert.hasText(properties.getPrefix(), "common.redis.policies[].prefix must not be empty");
+            Node node = root;
+            for (int i = 0; i < properties.getPrefix().length(); i++) {
+                node = node.getOrAddChild(properties.getPrefix().charAt(i));
+            }
+            Assert.isNull(node.properties, "duplicate policy prefix " + properties.getPrefix());
+            node.properties = properties;
+        }
+        inherit(root, defaultPolicy);
+    }
+
+    /**
+     * 最长前缀匹配
+     *
+     * @param key
+     * @return 没有匹配时返回只含全局配置的默认策略
+     */
+    public KeyPolicy resolve(String key) {
+        KeyPolicy matched = defaultPolicy;
+        Node node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.child(key.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.policy != null) {
+                matched = node.policy;
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * 每个带配置的节点合并最近的上级策略
+     */
+    private static void inherit(Node node, KeyPolicy parent) {
+        KeyPolicy effective = parent;
+        if (node.properties != null) {
+            effective = parent.merge(node.properties);
+            node.policy = effective;
+        }
+        for (int i = 0; i < node.size; i++) {
+            inherit(node.children[i], effective);
+        }
+    }
+
+    private static final class Node {
+        private char[] chars = new char[0];
+        private Node[] children = new Node[0];
+        private int size;
+        private KeyPolicyProperties properties;
+        private KeyPolicy policy;
+
+        private Node child(char c) {
+            for (int i = 0; i < size; i++) {
+                if (chars[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node getOrAddChild(char c) {
+            Node child = child(c);
+            if (child == null) {
+                child = new Node();
+                chars = Arrays.copyOf(chars, size + 1);
+                children = Arrays.copyOf(children, size + 1);
+                chars[size] = c;
+                children[size] = child;
+                size++;
+            }
+            return child;
+        }
+    }
+}
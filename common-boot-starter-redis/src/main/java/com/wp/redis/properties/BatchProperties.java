@@ -0,0 +1,48 @@
+package com.wp.redis.properties;
+
+/**
+ * 跨线程合并命令配置
+ * <pre>
+ * common.redis.batch.enabled=true
+ * common.redis.batch.windowMicros=200
+ * common.redis.batch.maxBatchSize=64
+ * </pre>
+ */
+public class BatchProperties {
+    /**
+     * 是否开启，默认关闭
+     */
+    private boolean enabled;
+    /**
+     * 收集同一分片并发命令的时间窗口(微秒)
+     */
+    private int windowMicros = 200;
+    /**
+     * 单次流水线最多的命令数，达到后立即发送
+     */
+    private int maxBatchSize = 64;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getWindowMicros() {
+        return windowMicros;
+    }
+
+    public void setWindowMicros(int windowMicros) {
+        this.windowMicros = windowMicros;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+}
@@ -0,0 +1,35 @@
+package com.wp.redis.properties;
+
+/**
+ * 布隆过滤器配置
+ * <pre>
+ * common.redis.bloom.segments=64
+ * common.redis.bloom.refreshSeconds=60
+ * </pre>
+ */
+public class BloomProperties {
+    /**
+     * 每个过滤器拆成多少段bitmap，按key分散到各分片
+     */
+    private int segments = 64;
+    /**
+     * 本地副本从redis同步的间隔(秒)，同步其它实例写入的id
+     */
+    private int refreshSeconds = 60;
+
+    public int getSegments() {
+        return segments;
+    }
+
+    public void setSegments(int segments) {
+        this.segments = segments;
+    }
+
+    public int getRefreshSeconds() {
+        return refreshSeconds;
+    }
+
+    public void setRefreshSeconds(int refreshSeconds) {
+        this.refreshSeconds = refreshSeconds;
+    }
+}
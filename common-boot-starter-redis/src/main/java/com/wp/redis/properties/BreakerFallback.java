@@ -0,0 +1,15 @@
+package com.wp.redis.properties;
+
+/**
+ * 分片熔断或并发已满时读操作的降级方式，写操作一律直接丢弃
+ */
+public enum BreakerFallback {
+    /**
+     * 按缓存未命中处理
+     */
+    MISS,
+    /**
+     * 返回本地保存的最近一次读到的值，没有时按未命中处理
+     */
+    STALE
+}
@@ -0,0 +1,147 @@
+package com.wp.redis.properties;
+
+/**
+ * 分片熔断与并发隔离配置
+ * <pre>
+ * common.redis.breaker.enabled=true
+ * common.redis.breaker.maxConcurrentCalls=200
+ * common.redis.breaker.failureRateThreshold=50
+ * common.redis.breaker.slowCallMillis=300
+ * common.redis.breaker.openMillis=5000
+ * common.redis.breaker.fallback=stale
+ * </pre>
+ */
+public class BreakerProperties {
+    /**
+     * 是否开启，默认关闭
+     */
+    private boolean enabled;
+    /**
+     * 每个分片同时执行的最大命令数，超出直接降级，不排队
+     */
+    private int maxConcurrentCalls = 200;
+    /**
+     * 统计错误率的滑动窗口大小(最近的调用次数)
+     */
+    private int windowSize = 100;
+    /**
+     * 窗口内至少有多少次调用才计算错误率
+     */
+    private int minimumCalls = 20;
+    /**
+     * 错误率阈值(百分比)，达到后熔断
+     */
+    private int failureRateThreshold = 50;
+    /**
+     * 超过该耗时的调用记为慢调用
+     */
+    private int slowCallMillis = 500;
+    /**
+     * 慢调用比例阈值(百分比)，达到后熔断
+     */
+    private int slowCallRateThreshold = 80;
+    /**
+     * 熔断后多久进入半开状态尝试恢复
+     */
+    private int openMillis = 5000;
+    /**
+     * 半开状态放行的试探调用数，全部成功则恢复
+     */
+    private int halfOpenCalls = 10;
+    /**
+     * 读操作的降级方式
+     */
+    private BreakerFallback fallback = BreakerFallback.MISS;
+    /**
+     * stale降级时本地保存的最多key数
+     */
+    private int staleCapacity = 10000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public void setMaxConcurrentCalls(int maxConcurrentCalls) {
+        this.maxConcurrentCalls = maxConcurrentCalls;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public void setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+    }
+
+    public int getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public void setFailureRateThreshold(int failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    public int getSlowCallMillis() {
+        return slowCallMillis;
+    }
+
+    public void setSlowCallMillis(int slowCallMillis) {
+        this.slowCallMillis = slowCallMillis;
+    }
+
+    public int getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public void setSlowCallRateThreshold(int slowCallRateThreshold) {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    public int getOpenMillis() {
+        return openMillis;
+    }
+
+    public void setOpenMillis(int openMillis) {
+        this.openMillis = openMillis;
+    }
+
+    public int getHalfOpenCalls() {
+        return halfOpenCalls;
+    }
+
+    public void setHalfOpenCalls(int halfOpenCalls) {
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    public BreakerFallback getFallback() {
+        return fallback;
+    }
+
+    public void setFallback(BreakerFallback fallback) {
+        this.fallback = fallback;
+    }
+
+    public int getStaleCapacity() {
+        return staleCapacity;
+    }
+
+    public void setStaleCapacity(int staleCapacity) {
+        this.staleCapacity = staleCapacity;
+    }
+}
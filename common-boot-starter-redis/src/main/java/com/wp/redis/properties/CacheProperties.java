@@ -0,0 +1,110 @@
+package com.wp.redis.properties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 基于分片路由的Spring CacheManager配置
+ * <pre>
+ * common.redis.cache.enabled=true
+ * common.redis.cache.ttlSeconds=600
+ * common.redis.cache.l1Enabled=true
+ * common.redis.cache.l1MaxSize=10000
+ * common.redis.cache.l1TtlSeconds=30
+ * </pre>
+ */
+public class CacheProperties {
+    /**
+     * 是否开启，默认关闭
+     */
+    private boolean enabled;
+    /**
+     * redis中的过期时间，0表示不过期
+     */
+    private int ttlSeconds = 600;
+    /**
+     * 是否开启进程内一级缓存
+     */
+    private boolean l1Enabled;
+    /**
+     * 一级缓存每个cache的最大条数
+     */
+    private int l1MaxSize = 10000;
+    /**
+     * 一级缓存过期时间，其它实例的修改最多延迟这么久可见
+     */
+    private int l1TtlSeconds = 30;
+    private CacheSerializerType serializer = CacheSerializerType.JSON;
+    /**
+     * 是否缓存null
+     */
+    private boolean allowNullValues = true;
+    /**
+     * 按缓存名覆盖的配置
+     */
+    private Map<String, CacheSpecProperties> specs = new HashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public void setTtlSeconds(int ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    public boolean isL1Enabled() {
+        return l1Enabled;
+    }
+
+    public void setL1Enabled(boolean l1Enabled) {
+        this.l1Enabled = l1Enabled;
+    }
+
+    public int getL1MaxSize() {
+        return l1MaxSize;
+    }
+
+    public void setL1MaxSize(int l1MaxSize) {
+        this.l1MaxSize = l1MaxSize;
+    }
+
+    public int getL1TtlSeconds() {
+        return l1TtlSeconds;
+    }
+
+    public void setL1TtlSeconds(int l1TtlSeconds) {
+        this.l1TtlSeconds = l1TtlSeconds;
+    }
+
+    public CacheSerializerType getSerializer() {
+        return serializer;
+    }
+
+    public void setSerializer(CacheSerializerType serializer) {
+        this.serializer = serializer;
+    }
+
+    public boolean isAllowNullValues() {
+        return allowNullValues;
+    }
+
+    public void setAllowNullValues(boolean allowNullValues) {
+        this.allowNullValues = allowNullValues;
+    }
+
+    public Map<String, CacheSpecProperties> getSpecs() {
+        return specs;
+    }
+
+    public void setSpecs(Map<String, CacheSpecProperties> specs) {
+        this.specs = specs;
+    }
+}
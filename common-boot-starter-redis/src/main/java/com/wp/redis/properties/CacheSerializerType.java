@@ -0,0 +1,23 @@
+package com.wp.redis.properties;
+
+/**
+ * CacheManager的值序列化方式
+ */
+public enum CacheSerializerType {
+    /**
+     * 与RedisTemplate相同的Jackson序列化(带类型信息)
+     */
+    JSON,
+    /**
+     * Jackson序列化后gzip压缩，适合较大的值
+     */
+    GZIP_JSON,
+    /**
+     * Jackson序列化后用预训练字典压缩(缓存名称加冒号作为前缀)，适合大量结构相似的小值，需要开启common.redis.dictionary
+     */
+    DICT_JSON,
+    /**
+     * jdk序列化
+     */
+    JDK
+}
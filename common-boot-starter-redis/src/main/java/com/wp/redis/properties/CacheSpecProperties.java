@@ -0,0 +1,57 @@
+package com.wp.redis.properties;
+
+/**
+ * 单个缓存的配置，未配置的项沿用 common.redis.cache.* 的默认值
+ * <pre>
+ * common.redis.cache.specs.books.ttlSeconds=600
+ * common.redis.cache.specs.books.l1Enabled=true
+ * common.redis.cache.specs.books.serializer=gzip_json
+ * </pre>
+ */
+public class CacheSpecProperties {
+    private Integer ttlSeconds;
+    private Boolean l1Enabled;
+    private Integer l1MaxSize;
+    private Integer l1TtlSeconds;
+    private CacheSerializerType serializer;
+
+    public Integer getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public void setTtlSeconds(Integer ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    public Boolean getL1Enabled() {
+        return l1Enabled;
+    }
+
+    public void setL1Enabled(Boolean l1Enabled) {
+        this.l1Enabled = l1Enabled;
+    }
+
+    public Integer getL1MaxSize() {
+        return l1MaxSize;
+    }
+
+    public void setL1MaxSize(Integer l1MaxSize) {
+        this.l1MaxSize = l1MaxSize;
+    }
+
+    public Integer getL1TtlSeconds() {
+        return l1TtlSeconds;
+    }
+
+    public void setL1TtlSeconds(Integer l1TtlSeconds) {
+        this.l1TtlSeconds = l1TtlSeconds;
+    }
+
+    public CacheSerializerType getSerializer() {
+        return serializer;
+    }
+
+    public void setSerializer(CacheSerializerType serializer) {
+        this.serializer = serializer;
+    }
+}
@@ -0,0 +1,72 @@
+package com.wp.redis.properties;
+
+/**
+ * 大值分块配置：超过阈值的值拆成多个块分散到各分片，原key只保存清单
+ * <pre>
+ * common.redis.chunk.enabled=true
+ * common.redis.chunk.thresholdKb=512
+ * common.redis.chunk.chunkKb=256
+ * </pre>
+ */
+public class ChunkProperties {
+    /**
+     * 是否开启，默认关闭
+     */
+    private boolean enabled;
+    /**
+     * 序列化后超过这个大小(KB)才分块
+     */
+    private int thresholdKb = 512;
+    /**
+     * 每块的大小(KB)
+     */
+    private int chunkKb = 256;
+    /**
+     * 并发读写各分片的线程数
+     */
+    private int threads = 16;
+    /**
+     * 覆盖或删除后旧版本的块保留的时间，让正在读取旧清单的请求能读完
+     */
+    private int graceSeconds = 30;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getThresholdKb() {
+        return thresholdKb;
+    }
+
+    public void setThresholdKb(int thresholdKb) {
+        this.thresholdKb = thresholdKb;
+    }
+
+    public int getChunkKb() {
+        return chunkKb;
+    }
+
+    public void setChunkKb(int chunkKb) {
+        this.chunkKb = chunkKb;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getGraceSeconds() {
+        return graceSeconds;
+    }
+
+    public void setGraceSeconds(int graceSeconds) {
+        this.graceSeconds = graceSeconds;
+    }
+}
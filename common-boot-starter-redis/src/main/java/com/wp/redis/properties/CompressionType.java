@@ -0,0 +1,19 @@
+package com.wp.redis.properties;
+
+/**
+ * 值的压缩方式
+ */
+public enum CompressionType {
+    /**
+     * 不压缩
+     */
+    NONE,
+    /**
+     * gzip，适合较大的值
+     */
+    GZIP,
+    /**
+     * 预训练字典，适合大量结构相似的小值，需要开启common.redis.dictionary
+     */
+    DICTIONARY
+}
@@ -0,0 +1,64 @@
+package com.wp.redis.properties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * incAndGet本地聚合配置
+ * <pre>
+ * common.redis.counter.enabled=true
+ * common.redis.counter.flushMillis=1000
+ * common.redis.counter.flushThreshold=10000
+ * common.redis.counter.exactPrefixes=stock.,order.seq.
+ * </pre>
+ */
+public class CounterProperties {
+    /**
+     * 是否开启，默认关闭
+     */
+    private boolean enabled;
+    /**
+     * 定时刷新到redis的间隔(毫秒)
+     */
+    private int flushMillis = 1000;
+    /**
+     * 未刷新的自增次数达到该值时立即刷新
+     */
+    private int flushThreshold = 10000;
+    /**
+     * 以这些前缀开头的key仍然每次直接INCRBY，返回精确值
+     */
+    private List<String> exactPrefixes = new ArrayList<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getFlushMillis() {
+        return flushMillis;
+    }
+
+    public void setFlushMillis(int flushMillis) {
+        this.flushMillis = flushMillis;
+    }
+
+    public int getFlushThreshold() {
+        return flushThreshold;
+    }
+
+    public void setFlushThreshold(int flushThreshold) {
+        this.flushThreshold = flushThreshold;
+    }
+
+    public List<String> getExactPrefixes() {
+        return exactPrefixes;
+    }
+
+    public void setExactPrefixes(List<String> exactPrefixes) {
+        this.exactPrefixes = exactPrefixes;
+    }
+}
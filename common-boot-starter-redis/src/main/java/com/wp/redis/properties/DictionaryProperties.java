@@ -0,0 +1,123 @@
+package com.wp.redis.properties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 预训练字典压缩配置，按key前缀使用不同的字典，适合大量结构相似的小JSON
+ * <pre>
+ * common.redis.dictionary.enabled=true
+ * common.redis.dictionary.prefixes=book.,chapter.
+ * common.redis.dictionary.dictionaryKb=16
+ * </pre>
+ */
+public class DictionaryProperties {
+    /**
+     * 是否开启，默认关闭
+     */
+    private boolean enabled;
+    /**
+     * 使用字典压缩的key前缀(或缓存名称加冒号)，按最长前缀匹配
+     */
+    private List<String> prefixes = new ArrayList<>();
+    /**
+     * 字典在redis中的key前缀，字典按版本号永久保存在每个分片上，旧版本压缩的值始终可读
+     */
+    private String keyPrefix = "common:redis:dict:";
+    /**
+     * 字典大小(KB)，deflate只能引用最近32KB，超过32按32处理
+     */
+    private int dictionaryKb = 16;
+    /**
+     * 训练时从redis采样的值个数
+     */
+    private int sampleCount = 2000;
+    /**
+     * 训练时挑选的片段长度(字节)
+     */
+    private int segmentLength = 48;
+    /**
+     * deflate压缩级别，1~9
+     */
+    private int level = 6;
+    /**
+     * 从redis同步各前缀当前字典版本的间隔
+     */
+    private int refreshSeconds = 60;
+    /**
+     * 本地保存字典副本的目录，redis中的字典全部丢失时从这里恢复；为空时不保存
+     */
+    private String localDir = System.getProperty("java.io.tmpdir") + "/redis-dict";
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public List<String> getPrefixes() {
+        return prefixes;
+    }
+
+    public void setPrefixes(List<String> prefixes) {
+        this.prefixes = prefixes;
+    }
+
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    public void setKeyPrefix(String keyPrefix) {
+        this.keyPrefix = keyPrefix;
+    }
+
+    public int getDictionaryKb() {
+        return dictionaryKb;
+    }
+
+    public void setDictionaryKb(int dictionaryKb) {
+        this.dictionaryKb = dictionaryKb;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public void setSampleCount(int sampleCount) {
+        this.sampleCount = sampleCount;
+    }
+
+    public int getSegmentLength() {
+        return segmentLength;
+    }
+
+    public void setSegmentLength(int segmentLength) {
+        this.segmentLength = segmentLength;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    public int getRefreshSeconds() {
+        return refreshSeconds;
+    }
+
+    public void setRefreshSeconds(int refreshSeconds) {
+        this.refreshSeconds = refreshSeconds;
+    }
+
+    public String getLocalDir() {
+        return localDir;
+    }
+
+    public void setLocalDir(String localDir) {
+        this.localDir = localDir;
+    }
+}
@@ -0,0 +1,35 @@
+package com.wp.redis.properties;
+
+/**
+ * 过期时间策略
+ * <pre>
+ * common.redis.expiry.ttlJitterPercent=10
+ * common.redis.expiry.refreshBeta=1.0
+ * </pre>
+ */
+public class ExpiryProperties {
+    /**
+     * 过期时间随机延长的最大百分比，同时写入的key不会同时过期，0表示不加随机
+     */
+    private int ttlJitterPercent;
+    /**
+     * 提前刷新的激进程度(XFetch的beta)，越大越早刷新，1.0为推荐值
+     */
+    private double refreshBeta = 1.0;
+
+    public int getTtlJitterPercent() {
+        return ttlJitterPercent;
+    }
+
+    public void setTtlJitterPercent(int ttlJitterPercent) {
+        this.ttlJitterPercent = ttlJitterPercent;
+    }
+
+    public double getRefreshBeta() {
+        return refreshBeta;
+    }
+
+    public void setRefreshBeta(double refreshBeta) {
+        this.refreshBeta = refreshBeta;
+    }
+}
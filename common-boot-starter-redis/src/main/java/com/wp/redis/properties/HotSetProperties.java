@@ -0,0 +1,145 @@
+package com.wp.redis.properties;
+
+/**
+ * 热点key快照配置：定时把最常读取的key(DUMP格式，带过期时间)保存到本地文件，分片重启或清空后从文件快速恢复
+ * <pre>
+ * common.redis.hotSet.enabled=true
+ * common.redis.hotSet.file=/data/redis-hotset.snap
+ * common.redis.hotSet.maxKeys=100000
+ * common.redis.hotSet.intervalSeconds=300
+ * </pre>
+ */
+public class HotSetProperties {
+    /**
+     * 是否开启，默认关闭
+     */
+    private boolean enabled;
+    /**
+     * 快照文件路径
+     */
+    private String file = System.getProperty("java.io.tmpdir") + "/redis-hotset.snap";
+    /**
+     * 快照的最大key数，按读取次数从多到少选取
+     */
+    private int maxKeys = 100000;
+    /**
+     * 快照文件的最大大小(MB)，不超过2047
+     */
+    private int maxFileMb = 1024;
+    /**
+     * 单个值DUMP后超过这个大小(KB)不保存
+     */
+    private int maxValueKb = 512;
+    /**
+     * 快照间隔，<=0时只能手动快照
+     */
+    private int intervalSeconds = 300;
+    /**
+     * 每N次读取抽样记录1次，减少统计开销；取2的幂
+     */
+    private int recordOneIn = 8;
+    /**
+     * 最多统计的key数，超过后新的key不再统计，直到下次快照衰减
+     */
+    private int maxTrackedKeys = 500000;
+    /**
+     * 每个流水线的命令数
+     */
+    private int batchSize = 500;
+    /**
+     * 启动时是否导入快照，只导入到空的或在快照之后重启过的分片，不覆盖已存在的key
+     */
+    private boolean importOnStartup;
+    /**
+     * 超过这个时间的快照不导入，<=0不限制
+     */
+    private int maxAgeSeconds = 3600;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    public int getMaxKeys() {
+        return maxKeys;
+    }
+
+    public void setMaxKeys(int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    public int getMaxFileMb() {
+        return maxFileMb;
+    }
+
+    public void setMaxFileMb(int maxFileMb) {
+        this.maxFileMb = maxFileMb;
+    }
+
+    public int getMaxValueKb() {
+        return maxValueKb;
+    }
+
+    public void setMaxValueKb(int maxValueKb) {
+        this.maxValueKb = maxValueKb;
+    }
+
+    public int getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    public void setIntervalSeconds(int intervalSeconds) {
+        this.intervalSeconds = intervalSeconds;
+    }
+
+    public int getRecordOneIn() {
+        return recordOneIn;
+    }
+
+    public void setRecordOneIn(int recordOneIn) {
+        this.recordOneIn = recordOneIn;
+    }
+
+    public int getMaxTrackedKeys() {
+        return maxTrackedKeys;
+    }
+
+    public void setMaxTrackedKeys(int maxTrackedKeys) {
+        this.maxTrackedKeys = maxTrackedKeys;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public boolean isImportOnStartup() {
+        return importOnStartup;
+    }
+
+    public void setImportOnStartup(boolean importOnStartup) {
+        this.importOnStartup = importOnStartup;
+    }
+
+    public int getMaxAgeSeconds() {
+        return maxAgeSeconds;
+    }
+
+    public void setMaxAgeSeconds(int maxAgeSeconds) {
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+}
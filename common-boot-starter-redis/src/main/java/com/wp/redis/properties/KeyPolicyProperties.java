@@ -0,0 +1,100 @@
+package com.wp.redis.properties;
+
+/**
+ * 一类key的缓存策略，按最长前缀匹配；未配置的项沿用更短前缀的策略，都没有时用全局配置
+ * <pre>
+ * common.redis.policies[0].prefix=book.
+ * common.redis.policies[0].ttlSeconds=86400
+ * common.redis.policies[0].ttlJitterPercent=20
+ * common.redis.policies[0].compression=dictionary
+ * common.redis.policies[0].compressionThresholdBytes=256
+ * common.redis.policies[0].nearCache=true
+ * common.redis.policies[0].cacheEmpty=false
+ * </pre>
+ */
+public class KeyPolicyProperties {
+    /**
+     * key前缀，缓存名称用 名称: 的形式
+     */
+    private String prefix;
+    /**
+     * 过期时间，配置后替代调用方传入的时间(空值标记除外)
+     */
+    private Integer ttlSeconds;
+    /**
+     * 过期时间随机延长的百分比，替代 common.redis.expiry.ttlJitterPercent
+     */
+    private Integer ttlJitterPercent;
+    /**
+     * writeCompressed使用的压缩方式，CacheManager中对应GZIP_JSON/DICT_JSON序列化
+     */
+    private CompressionType compression;
+    /**
+     * 序列化后小于这个大小(字节)的值不压缩
+     */
+    private Integer compressionThresholdBytes;
+    /**
+     * 是否进入近端缓存(CacheManager中为一级缓存)，替代 common.redis.nearCache.prefixes 的判断
+     */
+    private Boolean nearCache;
+    /**
+     * 是否缓存空值，为false时writeEmpty/writeHashEmpty/writeListEmpty不写入
+     */
+    private Boolean cacheEmpty;
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public Integer getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public void setTtlSeconds(Integer ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    public Integer getTtlJitterPercent() {
+        return ttlJitterPercent;
+    }
+
+    public void setTtlJitterPercent(Integer ttlJitterPercent) {
+        this.ttlJitterPercent = ttlJitterPercent;
+    }
+
+    public CompressionType getCompression() {
+        return compression;
+    }
+
+    public void setCompression(CompressionType compression) {
+        this.compression = compression;
+    }
+
+    public Integer getCompressionThresholdBytes() {
+        return compressionThresholdBytes;
+    }
+
+    public void setCompressionThresholdBytes(Integer compressionThresholdBytes) {
+        this.compressionThresholdBytes = compressionThresholdBytes;
+    }
+
+    public Boolean getNearCache() {
+        return nearCache;
+    }
+
+    public void setNearCache(Boolean nearCache) {
+        this.nearCache = nearCache;
+    }
+
+    public Boolean getCacheEmpty() {
+        return cacheEmpty;
+    }
+
+    public void setCacheEmpty(Boolean cacheEmpty) {
+        this.cacheEmpty = cacheEmpty;
+    }
+}
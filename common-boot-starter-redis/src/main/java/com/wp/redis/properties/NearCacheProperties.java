@@ -0,0 +1,100 @@
+package com.wp.redis.properties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 堆外近端缓存配置，缓存getValue/loadHash/loadListAll的结果，需要 -XX:MaxDirectMemorySize 不小于capacityMb
+ * <pre>
+ * common.redis.nearCache.enabled=true
+ * common.redis.nearCache.capacityMb=2048
+ * common.redis.nearCache.ttlSeconds=30
+ * common.redis.nearCache.prefixes=book.,chapter.list.
+ * </pre>
+ */
+public class NearCacheProperties {
+    /**
+     * 是否开启，默认关闭
+     */
+    private boolean enabled;
+    /**
+     * 堆外内存上限(MB)
+     */
+    private int capacityMb = 1024;
+    /**
+     * 分段数，分段越多锁竞争越小
+     */
+    private int segments = 16;
+    /**
+     * 每次申请的直接内存块大小(KB)，所有大小级别共用同一大小，小于maxEntryKb时按maxEntryKb
+     */
+    private int slabKb = 1024;
+    /**
+     * 单个条目的最大大小(KB)，更大的值不缓存
+     */
+    private int maxEntryKb = 512;
+    /**
+     * 本地条目的过期时间，其它实例的修改最多延迟这么久可见
+     */
+    private int ttlSeconds = 30;
+    /**
+     * 只缓存以这些前缀开头的key，为空时缓存所有key
+     */
+    private List<String> prefixes = new ArrayList<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getCapacityMb() {
+        return capacityMb;
+    }
+
+    public void setCapacityMb(int capacityMb) {
+        this.capacityMb = capacityMb;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    public void setSegments(int segments) {
+        this.segments = segments;
+    }
+
+    public int getSlabKb() {
+        return slabKb;
+    }
+
+    public void setSlabKb(int slabKb) {
+        this.slabKb = slabKb;
+    }
+
+    public int getMaxEntryKb() {
+        return maxEntryKb;
+    }
+
+    public void setMaxEntryKb(int maxEntryKb) {
+        this.maxEntryKb = maxEntryKb;
+    }
+
+    public int getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public void setTtlSeconds(int ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    public List<String> getPrefixes() {
+        return prefixes;
+    }
+
+    public void setPrefixes(List<String> prefixes) {
+        this.prefixes = prefixes;
+    }
+}
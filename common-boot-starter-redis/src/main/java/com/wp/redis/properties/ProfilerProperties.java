@@ -0,0 +1,86 @@
+package com.wp.redis.properties;
+
+/**
+ * 按key前缀统计内存的采样配置
+ * <pre>
+ * common.redis.profiler.sampleRate=0.01
+ * common.redis.profiler.maxSampledKeysPerShard=10000
+ * common.redis.profiler.maxCommandsPerSecond=1000
+ * common.redis.profiler.prefixDelimiters=.:
+ * common.redis.profiler.prefixDepth=1
+ * </pre>
+ */
+public class ProfilerProperties {
+    /**
+     * SCAN到的key中抽样的比例
+     */
+    private double sampleRate = 0.01;
+    /**
+     * 每个分片最多抽样的key数，达到后停止扫描
+     */
+    private int maxSampledKeysPerShard = 10000;
+    /**
+     * 每次SCAN的COUNT
+     */
+    private int scanCount = 1000;
+    /**
+     * 每个分片每秒最多执行的MEMORY USAGE/TYPE/PTTL命令数
+     */
+    private int maxCommandsPerSecond = 1000;
+    /**
+     * 前缀分隔符，任意一个字符都算分隔符
+     */
+    private String prefixDelimiters = ".:";
+    /**
+     * 前缀取到第几个分隔符，如depth=2时 book.detail.1 的前缀为 book.detail.
+     */
+    private int prefixDepth = 1;
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public int getMaxSampledKeysPerShard() {
+        return maxSampledKeysPerShard;
+    }
+
+    public void setMaxSampledKeysPerShard(int maxSampledKeysPerShard) {
+        this.maxSampledKeysPerShard = maxSampledKeysPerShard;
+    }
+
+    public int getScanCount() {
+        return scanCount;
+    }
+
+    public void setScanCount(int scanCount) {
+        this.scanCount = scanCount;
+    }
+
+    public int getMaxCommandsPerSecond() {
+        return maxCommandsPerSecond;
+    }
+
+    public void setMaxCommandsPerSecond(int maxCommandsPerSecond) {
+        this.maxCommandsPerSecond = maxCommandsPerSecond;
+    }
+
+    public String getPrefixDelimiters() {
+        return prefixDelimiters;
+    }
+
+    public void setPrefixDelimiters(String prefixDelimiters) {
+        this.prefixDelimiters = prefixDelimiters;
+    }
+
+    public int getPrefixDepth() {
+        return prefixDepth;
+    }
+
+    public void setPrefixDepth(int prefixDepth) {
+        this.prefixDepth = prefixDepth;
+    }
+}
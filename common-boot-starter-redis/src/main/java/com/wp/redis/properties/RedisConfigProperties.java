@@ -2,6 +2,7 @@ package com.wp.redis.properties;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
 import java.util.List;
 
 @ConfigurationProperties(prefix = "common.redis")
@@ -20,6 +21,82 @@ public class RedisConfigProperties {
     private int minIdle;
     private int waitTime;
     private int lockTime;
+    /**
+     * 按分片覆盖的配置
+     */
+    private List<ShardProperties> shards = new ArrayList<>();
+    /**
+     * 连接驱动，默认jedis连接池
+     */
+    private RedisDriver driver = RedisDriver.JEDIS;
+    /**
+     * lettuce模式下每个分片的多路复用连接数
+     */
+    private int connectionsPerShard = 1;
+    /**
+     * 跨线程合并命令
+     */
+    private BatchProperties batch = new BatchProperties();
+    /**
+     * 分片熔断与并发隔离
+     */
+    private BreakerProperties breaker = new BreakerProperties();
+    /**
+     * 副本读与对冲请求
+     */
+    private ReplicaProperties replica = new ReplicaProperties();
+    /**
+     * 过期时间随机化与提前刷新
+     */
+    private ExpiryProperties expiry = new ExpiryProperties();
+    /**
+     * 布隆过滤器
+     */
+    private BloomProperties bloom = new BloomProperties();
+    /**
+     * Spring CacheManager
+     */
+    private CacheProperties cache = new CacheProperties();
+    /**
+     * 计数器本地聚合
+     */
+    private CounterProperties counter = new CounterProperties();
+    /**
+     * 异步写
+     */
+    private WriteBehindProperties writeBehind = new WriteBehindProperties();
+    /**
+     * 按模式扫描/删除key
+     */
+    private ScanProperties scan = new ScanProperties();
+    /**
+     * 按key前缀统计内存
+     */
+    private ProfilerProperties profiler = new ProfilerProperties();
+    /**
+     * 启动时连接初始化与预热
+     */
+    private WarmupProperties warmup = new WarmupProperties();
+    /**
+     * 堆外近端缓存
+     */
+    private NearCacheProperties nearCache = new NearCacheProperties();
+    /**
+     * 预训练字典压缩
+     */
+    private DictionaryProperties dictionary = new DictionaryProperties();
+    /**
+     * 大值分块
+     */
+    private ChunkProperties chunk = new ChunkProperties();
+    /**
+     * 热点key快照
+     */
+    private HotSetProperties hotSet = new HotSetProperties();
+    /**
+     * 按key前缀的缓存策略，最长前缀匹配
+     */
+    private List<KeyPolicyProperties> policies = new ArrayList<>();
 
     public List<String> getHostList() {
         return hostList;
@@ -132,4 +209,174 @@ public class RedisConfigProperties {
     public void setWaitTime(int waitTime) {
         this.waitTime = waitTime;
     }
+
+    public List<ShardProperties> getShards() {
+        return shards;
+    }
+
+    public void setShards(List<ShardProperties> shards) {
+        this.shards = shards;
+    }
+
+    public RedisDriver getDriver() {
+        return driver;
+    }
+
+    public void setDriver(RedisDriver driver) {
+        this.driver = driver;
+    }
+
+    public int getConnectionsPerShard() {
+        return connectionsPerShard;
+    }
+
+    public void setConnectionsPerShard(int connectionsPerShard) {
+        this.connectionsPerShard = connectionsPerShard;
+    }
+
+    public BatchProperties getBatch() {
+        return batch;
+    }
+
+    public void setBatch(BatchProperties batch) {
+        this.batch = batch;
+    }
+
+    public BreakerProperties getBreaker() {
+        return breaker;
+    }
+
+    public void setBreaker(BreakerProperties breaker) {
+        this.breaker = breaker;
+    }
+
+    public ReplicaProperties getReplica() {
+        return replica;
+    }
+
+    public void setReplica(ReplicaProperties replica) {
+        this.replica = replica;
+    }
+
+    public ExpiryProperties getExpiry() {
+        return expiry;
+    }
+
+    public void setExpiry(ExpiryProperties expiry) {
+        this.expiry = expiry;
+    }
+
+    public BloomProperties getBloom() {
+        return bloom;
+    }
+
+    public void setBloom(BloomProperties bloom) {
+        this.bloom = bloom;
+    }
+
+    public CacheProperties getCache() {
+        return cache;
+    }
+
+    public void setCache(CacheProperties cache) {
+        this.cache = cache;
+    }
+
+    public CounterProperties getCounter() {
+        return counter;
+    }
+
+    public void setCounter(CounterProperties counter) {
+        this.counter = counter;
+    }
+
+    public WriteBehindProperties getWriteBehind() {
+        return writeBehind;
+    }
+
+    public void setWriteBehind(WriteBehindProperties writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    public ScanProperties getScan() {
+        return scan;
+    }
+
+    public void setScan(ScanProperties scan) {
+        this.scan = scan;
+    }
+
+    public ProfilerProperties getProfiler() {
+        return profiler;
+    }
+
+    public void setProfiler(ProfilerProperties profiler) {
+        this.profiler = profiler;
+    }
+
+    public WarmupProperties getWarmup() {
+        return warmup;
+    }
+
+    public void setWarmup(WarmupProperties warmup) {
+        this.warmup = warmup;
+    }
+
+    public NearCacheProperties getNearCache() {
+        return nearCache;
+    }
+
+    public void setNearCache(NearCacheProperties nearCache) {
+        this.nearCache = nearCache;
+    }
+
+    public DictionaryProperties getDictionary() {
+        return dictionary;
+    }
+
+    public void setDictionary(DictionaryProperties dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public ChunkProperties getChunk() {
+        return chunk;
+    }
+
+    public void setChunk(ChunkProperties chunk) {
+        this.chunk = chunk;
+    }
+
+    public HotSetProperties getHotSet() {
+        return hotSet;
+    }
+
+    public void setHotSet(HotSetProperties hotSet) {
+        this.hotSet = hotSet;
+    }
+
+    public List<KeyPolicyProperties> getPolicies() {
+        return policies;
+    }
+
+    public void setPolicies(List<KeyPolicyProperties> policies) {
+        this.policies = policies;
+    }
+
+    /**
+     * 查找指定host的分片配置
+     *
+     * @param hostName
+     * @return 未配置时返回null
+     */
+    public ShardProperties getShard(String hostName) {
+        if (shards == null) {
+            return null;
+        }
+        for (ShardProperties shard : shards) {
+            if (hostName.equals(shard.getHostName())) {
+                return shard;
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,15 @@
+package com.wp.redis.properties;
+
+/**
+ * 连接驱动
+ */
+public enum RedisDriver {
+    /**
+     * Jedis连接池，每个连接同一时间只有一个命令
+     */
+    JEDIS,
+    /**
+     * Lettuce多路复用连接，每个分片少量长连接，并发命令在连接上自动流水线发送
+     */
+    LETTUCE
+}
@@ -9,6 +9,14 @@ public class RedissonConfigProperties {
     private String password;
     private int database;
     private int connectPoolSize;
+    /**
+     * 锁是否放在数据所在的分片上(使用common.redis.hostList)，开启后hostName等单实例配置不再需要
+     */
+    private boolean sharded;
+    /**
+     * 是否在第一次加锁时才创建Redisson客户端，不在启动时连接
+     */
+    private boolean lazy;
 
     public String getHostName() {
         return hostName;
@@ -49,4 +57,20 @@ public class RedissonConfigProperties {
     public void setConnectPoolSize(int connectPoolSize) {
         this.connectPoolSize = connectPoolSize;
     }
+
+    public boolean isSharded() {
+        return sharded;
+    }
+
+    public void setSharded(boolean sharded) {
+        this.sharded = sharded;
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
 }
@@ -0,0 +1,82 @@
+package com.wp.redis.properties;
+
+/**
+ * 副本读与对冲请求配置，副本地址在 common.redis.shards[n].replicaList 中配置
+ * <pre>
+ * common.redis.replica.enabled=true
+ * common.redis.replica.readPolicy=round_robin
+ * common.redis.replica.hedgeEnabled=true
+ * common.redis.replica.hedgePercentile=95
+ * </pre>
+ */
+public class ReplicaProperties {
+    /**
+     * 是否开启，默认关闭
+     */
+    private boolean enabled;
+    private ReplicaReadPolicy readPolicy = ReplicaReadPolicy.ROUND_ROBIN;
+    /**
+     * 第一个节点超过延迟分位数仍未返回时，向另一个节点再发一次相同的读
+     */
+    private boolean hedgeEnabled;
+    /**
+     * 对冲等待时间取该分片最近读延迟的分位数
+     */
+    private int hedgePercentile = 95;
+    /**
+     * 对冲等待时间下限(毫秒)，避免延迟统计偏低时发出过多重复请求
+     */
+    private int hedgeMinDelayMillis = 5;
+    /**
+     * 执行对冲读的线程数，线程全忙时不对冲，直接在调用线程读
+     */
+    private int hedgeThreads = 64;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public ReplicaReadPolicy getReadPolicy() {
+        return readPolicy;
+    }
+
+    public void setReadPolicy(ReplicaReadPolicy readPolicy) {
+        this.readPolicy = readPolicy;
+    }
+
+    public boolean isHedgeEnabled() {
+        return hedgeEnabled;
+    }
+
+    public void setHedgeEnabled(boolean hedgeEnabled) {
+        this.hedgeEnabled = hedgeEnabled;
+    }
+
+    public int getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public void setHedgePercentile(int hedgePercentile) {
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    public int getHedgeMinDelayMillis() {
+        return hedgeMinDelayMillis;
+    }
+
+    public void setHedgeMinDelayMillis(int hedgeMinDelayMillis) {
+        this.hedgeMinDelayMillis = hedgeMinDelayMillis;
+    }
+
+    public int getHedgeThreads() {
+        return hedgeThreads;
+    }
+
+    public void setHedgeThreads(int hedgeThreads) {
+        this.hedgeThreads = hedgeThreads;
+    }
+}
@@ -0,0 +1,19 @@
+package com.wp.redis.properties;
+
+/**
+ * 只读命令在主节点与副本之间的选择方式
+ */
+public enum ReplicaReadPolicy {
+    /**
+     * 读主节点，副本只用于对冲请求
+     */
+    PRIMARY,
+    /**
+     * 轮询读副本，主节点只用于对冲请求(没有副本时读主节点)
+     */
+    REPLICA,
+    /**
+     * 主节点和副本一起轮询
+     */
+    ROUND_ROBIN
+}
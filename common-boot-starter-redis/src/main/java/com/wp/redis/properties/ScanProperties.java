@@ -0,0 +1,60 @@
+package com.wp.redis.properties;
+
+/**
+ * 按模式扫描/删除key的配置
+ * <pre>
+ * common.redis.scan.count=1000
+ * common.redis.scan.deleteBatchSize=500
+ * common.redis.scan.maxDeletesPerSecond=10000
+ * </pre>
+ */
+public class ScanProperties {
+    /**
+     * 每次SCAN的COUNT
+     */
+    private int count = 1000;
+    /**
+     * 每次UNLINK的key数
+     */
+    private int deleteBatchSize = 500;
+    /**
+     * 每个分片每秒最多删除的key数，0表示不限制
+     */
+    private int maxDeletesPerSecond = 10000;
+    /**
+     * scan结果在内存中最多缓冲的key数，消费慢时扫描线程等待
+     */
+    private int bufferSize = 10000;
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    public int getDeleteBatchSize() {
+        return deleteBatchSize;
+    }
+
+    public void setDeleteBatchSize(int deleteBatchSize) {
+        this.deleteBatchSize = deleteBatchSize;
+    }
+
+    public int getMaxDeletesPerSecond() {
+        return maxDeletesPerSecond;
+    }
+
+    public void setMaxDeletesPerSecond(int maxDeletesPerSecond) {
+        this.maxDeletesPerSecond = maxDeletesPerSecond;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+}
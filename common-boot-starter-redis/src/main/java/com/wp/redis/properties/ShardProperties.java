@@ -0,0 +1,82 @@
+package com.wp.redis.properties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单个分片(阿里云实例)的独立配置，未配置的项沿用 common.redis.* 的全局值
+ * <pre>
+ * common.redis.shards[0].hostName=host1
+ * common.redis.shards[0].maxTotal=8000
+ * common.redis.shards[0].minIdle=300
+ * common.redis.shards[0].replicaList=host1-r1,host1-r2
+ * </pre>
+ */
+public class ShardProperties {
+    private String hostName;
+    private Integer maxTotal;
+    private Integer maxIdle;
+    private Integer minIdle;
+    private Integer maxWaitMillis;
+    /**
+     * 只读副本，连接池配置与主节点相同
+     */
+    private List<String> replicaList = new ArrayList<>();
+
+    public String getHostName() {
+        return hostName;
+    }
+
+    public void setHostName(String hostName) {
+        this.hostName = hostName;
+    }
+
+    public Integer getMaxTotal() {
+        return maxTotal;
+    }
+
+    public void setMaxTotal(Integer maxTotal) {
+        this.maxTotal = maxTotal;
+    }
+
+    public Integer getMaxIdle() {
+        return maxIdle;
+    }
+
+    public void setMaxIdle(Integer maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    public Integer getMinIdle() {
+        return minIdle;
+    }
+
+    public void setMinIdle(Integer minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    public Integer getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public void setMaxWaitMillis(Integer maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public List<String> getReplicaList() {
+        return replicaList;
+    }
+
+    public void setReplicaList(List<String> replicaList) {
+        this.replicaList = replicaList;
+    }
+
+    /**
+     * 是否有连接池相关的覆盖配置
+     *
+     * @return
+     */
+    public boolean hasPoolOverride() {
+        return maxTotal != null || maxIdle != null || minIdle != null || maxWaitMillis != null;
+    }
+}
@@ -0,0 +1,64 @@
+package com.wp.redis.properties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 启动时连接初始化与预热配置
+ * <pre>
+ * common.redis.warmup.parallel=true
+ * common.redis.warmup.threads=16
+ * common.redis.warmup.prefill=true
+ * common.redis.warmup.lazyHosts=host7,host8
+ * </pre>
+ */
+public class WarmupProperties {
+    /**
+     * 是否并发创建各分片(包括副本)的连接工厂
+     */
+    private boolean parallel = true;
+    /**
+     * 并发初始化的线程数
+     */
+    private int threads = 16;
+    /**
+     * 启动完成前是否把每个分片的连接池预先建立到minIdle个连接
+     */
+    private boolean prefill = true;
+    /**
+     * 这些host第一次使用时才初始化连接，不参与预热
+     */
+    private List<String> lazyHosts = new ArrayList<>();
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public boolean isPrefill() {
+        return prefill;
+    }
+
+    public void setPrefill(boolean prefill) {
+        this.prefill = prefill;
+    }
+
+    public List<String> getLazyHosts() {
+        return lazyHosts;
+    }
+
+    public void setLazyHosts(List<String> lazyHosts) {
+        this.lazyHosts = lazyHosts;
+    }
+}
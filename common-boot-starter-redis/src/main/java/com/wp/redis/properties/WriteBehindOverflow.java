@@ -0,0 +1,19 @@
+package com.wp.redis.properties;
+
+/**
+ * 异步写队列满时的处理方式
+ */
+public enum WriteBehindOverflow {
+    /**
+     * 阻塞调用线程直到队列有空位
+     */
+    BLOCK,
+    /**
+     * 丢弃最早入队的写入
+     */
+    DROP_OLDEST,
+    /**
+     * 在调用线程上同步写入
+     */
+    CALLER_RUNS
+}
@@ -0,0 +1,58 @@
+package com.wp.redis.properties;
+
+/**
+ * 异步写配置，开启后writeString/writeEmpty/writeHash放入分片队列由后台线程批量写入
+ * <pre>
+ * common.redis.writeBehind.enabled=true
+ * common.redis.writeBehind.capacity=10000
+ * common.redis.writeBehind.maxBatchSize=128
+ * common.redis.writeBehind.overflow=drop_oldest
+ * </pre>
+ */
+public class WriteBehindProperties {
+    /**
+     * 是否开启，默认关闭
+     */
+    private boolean enabled;
+    /**
+     * 每个分片队列最多排队的key数，同一个key的重复写入只占一个位置
+     */
+    private int capacity = 10000;
+    /**
+     * 一次流水线最多写入的条数
+     */
+    private int maxBatchSize = 128;
+    private WriteBehindOverflow overflow = WriteBehindOverflow.BLOCK;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public WriteBehindOverflow getOverflow() {
+        return overflow;
+    }
+
+    public void setOverflow(WriteBehindOverflow overflow) {
+        this.overflow = overflow;
+    }
+}
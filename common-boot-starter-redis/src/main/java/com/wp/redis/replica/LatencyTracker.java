@@ -0,0 +1,46 @@
+package com.wp.redis.replica;
+
+import java.util.Arrays;
+
+/**
+ * 记录最近一段时间的读延迟，按固定间隔重新计算分位数
+ */
+public class LatencyTracker {
+
+    private static final int SAMPLE_SIZE = 1024;
+    private static final int RECOMPUTE_INTERVAL = 128;
+
+    private final long[] samples = new long[SAMPLE_SIZE];
+    private final int percentile;
+    private int index;
+    private int count;
+    private int sinceRecompute;
+    private volatile long percentileNanos = -1;
+
+    public LatencyTracker(int percentile) {
+        this.percentile = Math.min(100, Math.max(1, percentile));
+    }
+
+    public synchronized void record(long elapsedNanos) {
+        samples[index] = elapsedNanos;
+        index = (index + 1) % SAMPLE_SIZE;
+        if (count < SAMPLE_SIZE) {
+            count++;
+        }
+        if (++sinceRecompute >= RECOMPUTE_INTERVAL) {
+            sinceRecompute = 0;
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            percentileNanos = sorted[Math.min(count - 1, count * percentile / 100)];
+        }
+    }
+
+    /**
+     * 当前分位数延迟，样本不足时返回-1
+     *
+     * @return
+     */
+    public long getPercentileNanos() {
+        return percentileNanos;
+    }
+}
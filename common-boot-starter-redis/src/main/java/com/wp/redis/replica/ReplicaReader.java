@@ -0,0 +1,204 @@
+package com.wp.redis.replica;
+
+import com.wp.redis.properties.ReplicaProperties;
+import com.wp.redis.properties.ReplicaReadPolicy;
+import com.wp.redis.routes.RedisTemplateRoute;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 只读命令在分片的主节点与副本之间分发，可选对冲请求：
+ * 第一个节点的读取在调用线程上执行，超过该分片近期读延迟的分位数仍未返回时，由线程池向另一个节点再发一次；
+ * 调用线程上的读取成功时直接返回，失败(包括超时)时使用对冲请求的结果，多数读取不经过线程池
+ */
+public class ReplicaReader implements DisposableBean {
+
+    private final static long DEFAULT_WAIT_MILLIS = 5000;
+
+    private final ReplicaProperties replicaProperties;
+    private final Map<RedisTemplate<String, Object>, ShardNodes> shards = new IdentityHashMap<>();
+    private final ThreadPoolExecutor executor;
+    /**
+     * 到达延迟后把对冲请求交给executor
+     */
+    private final ScheduledThreadPoolExecutor hedgeTimer;
+    private final long waitMillis;
+
+    public ReplicaReader(RedisTemplateRoute redisTemplateRoute, ReplicaProperties replicaProperties, long waitMillis) {
+        this.replicaProperties = replicaProperties;
+        this.waitMillis = waitMillis > 0 ? waitMillis : DEFAULT_WAIT_MILLIS;
+        for (RedisTemplate<String, Object> primary : redisTemplateRoute.getTemplates()) {
+            shards.put(primary, new ShardNodes(primary, redisTemplateRoute.getReplicas(primary), replicaProperties.getHedgePercentile()));
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(0, Math.max(1, replicaProperties.getHedgeThreads()), 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+            Thread thread = new Thread(r, "redis-replica-read-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.hedgeTimer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "redis-replica-hedge-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.hedgeTimer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * 在分片的某个节点上执行只读命令
+     *
+     * @param primary 分片主节点
+     * @param read    只读命令
+     * @return
+     */
+    public <R> R read(RedisTemplate<String, Object> primary, Function<RedisTemplate<String, Object>, R> read) {
+        ShardNodes shard = shards.get(primary);
+        RedisTemplate<String, Object> first = shard.first(replicaProperties.getReadPolicy());
+        RedisTemplate<String, Object> second = shard.second(replicaProperties.getReadPolicy(), first);
+        if (!replicaProperties.isHedgeEnabled() || second == null) {
+            return timed(shard, first, read);
+        }
+        long delayNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(replicaProperties.getHedgeMinDelayMillis()), shard.latency.getPercentileNanos());
+        CompletableFuture<R> hedge = new CompletableFuture<>();
+        ScheduledFuture<?> timer;
+        try {
+            timer = hedgeTimer.schedule(() -> submitHedge(shard, second, read, hedge), delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            return timed(shard, first, read);
+        }
+        try {
+            return timed(shard, first, read);
+        } catch (RuntimeException e) {
+            if (timer.cancel(false)) {
+                // 还没有发出对冲请求
+                throw e;
+            }
+            try {
+                return await(hedge);
+            } catch (RuntimeException hedgeError) {
+                e.addSuppressed(hedgeError);
+                throw e;
+            }
+        } finally {
+            timer.cancel(false);
+        }
+    }
+
+    /**
+     * 在线程池上执行对冲请求，线程池满时不发对冲请求
+     */
+    private <R> void submitHedge(ShardNodes shard, RedisTemplate<String, Object> node, Function<RedisTemplate<String, Object>, R> read,
+                                 CompletableFuture<R> hedge) {
+        try {
+            executor.execute(() -> {
+                try {
+                    hedge.complete(timed(shard, node, read));
+                } catch (RuntimeException e) {
+                    hedge.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            hedge.completeExceptionally(e);
+        }
+    }
+
+    private static <R> R timed(ShardNodes shard, RedisTemplate<String, Object> node, Function<RedisTemplate<String, Object>, R> read) {
+        long start = System.nanoTime();
+        R result = read.apply(node);
+        shard.latency.record(System.nanoTime() - start);
+        return result;
+    }
+
+    private <R> R await(CompletableFuture<R> future) {
+        try {
+            return future.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisSystemException("interrupted while waiting for replica read", e);
+        } catch (TimeoutException e) {
+            throw new QueryTimeoutException("replica read timed out after " + waitMillis + "ms", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RedisSystemException(cause.getMessage(), cause);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        hedgeTimer.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private static class ShardNodes {
+        private final RedisTemplate<String, Object> primary;
+        private final List<RedisTemplate<String, Object>> replicas;
+        private final List<RedisTemplate<String, Object>> all = new ArrayList<>();
+        private final AtomicInteger next = new AtomicInteger();
+        private final LatencyTracker latency;
+
+        private ShardNodes(RedisTemplate<String, Object> primary, List<RedisTemplate<String, Object>> replicas, int percentile) {
+            this.primary = primary;
+            this.replicas = replicas;
+            this.all.add(primary);
+            this.all.addAll(replicas);
+            this.latency = new LatencyTracker(percentile);
+        }
+
+        private RedisTemplate<String, Object> first(ReplicaReadPolicy policy) {
+            if (replicas.isEmpty() || policy == ReplicaReadPolicy.PRIMARY) {
+                return primary;
+            }
+            if (policy == ReplicaReadPolicy.REPLICA) {
+                return pick(replicas);
+            }
+            return pick(all);
+        }
+
+        /**
+         * 对冲请求的节点，没有可用的其它节点时返回null
+         */
+        private RedisTemplate<String, Object> second(ReplicaReadPolicy policy, RedisTemplate<String, Object> first) {
+            if (replicas.isEmpty()) {
+                return null;
+            }
+            if (first != primary && policy != ReplicaReadPolicy.ROUND_ROBIN) {
+                return primary;
+            }
+            List<RedisTemplate<String, Object>> candidates = first == primary ? replicas : all;
+            int start = next.get();
+            for (int i = 0; i < candidates.size(); i++) {
+                RedisTemplate<String, Object> candidate = candidates.get(((start + i) & Integer.MAX_VALUE) % candidates.size());
+                if (candidate != first) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+
+        private RedisTemplate<String, Object> pick(List<RedisTemplate<String, Object>> nodes) {
+            return nodes.get((next.getAndIncrement() & Integer.MAX_VALUE) % nodes.size());
+        }
+    }
+}
@@ -1,11 +1,59 @@
 package com.wp.redis.routes;
 
 import com.wp.redis.template.TemplateRoute;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+
+public class RedisTemplateRoute extends TemplateRoute<RedisTemplate<String, Object>> implements DisposableBean {
+
+    /**
+     * 分片主节点 -> 只读副本
+     */
+    private final Map<RedisTemplate<String, Object>, List<RedisTemplate<String, Object>>> replicas = new IdentityHashMap<>();
 
-public class RedisTemplateRoute extends TemplateRoute<RedisTemplate<String, Object>> {
     public RedisTemplateRoute(List<RedisTemplate<String, Object>> list) {
         super(list);
     }
+
+    public void setReplicas(RedisTemplate<String, Object> primary, List<RedisTemplate<String, Object>> replicaList) {
+        replicas.put(primary, Collections.unmodifiableList(new ArrayList<>(replicaList)));
+    }
+
+    /**
+     * 获取分片的只读副本，没有时返回空列表
+     *
+     * @param primary 分片主节点
+     * @return
+     */
+    public List<RedisTemplate<String, Object>> getReplicas(RedisTemplate<String, Object> primary) {
+        List<RedisTemplate<String, Object>> replicaList = replicas.get(primary);
+        return replicaList != null ? replicaList : Collections.<RedisTemplate<String, Object>>emptyList();
+    }
+
+    /**
+     * 关闭每个分片(包括副本)的连接池/连接
+     */
+    @Override
+    public void destroy() throws Exception {
+        for (RedisTemplate<String, Object> template : getTemplates()) {
+            destroy(template);
+            for (RedisTemplate<String, Object> replica : getReplicas(template)) {
+                destroy(replica);
+            }
+        }
+    }
+
+    private static void destroy(RedisTemplate<String, Object> template) throws Exception {
+        RedisConnectionFactory connectionFactory = template.getConnectionFactory();
+        if (connectionFactory instanceof DisposableBean) {
+            ((DisposableBean) connectionFactory).destroy();
+        }
+    }
 }
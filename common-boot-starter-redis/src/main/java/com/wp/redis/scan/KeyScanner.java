@@ -0,0 +1,299 @@
+package com.wp.redis.scan;
+
+import com.wp.redis.properties.ScanProperties;
+import com.wp.redis.routes.RedisTemplateRoute;
+import com.wp.redis.utils.ScriptUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisConnectionUtils;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 在所有分片上并发SCAN，不使用KEYS，不会长时间阻塞redis
+ */
+public class KeyScanner implements DisposableBean {
+
+    private static Logger logger = LoggerFactory.getLogger(KeyScanner.class);
+
+    /**
+     * Jedis 2.9的命令枚举中没有UNLINK，通过脚本执行
+     */
+    private static final DefaultRedisScript<Long> UNLINK = new DefaultRedisScript<>(
+            "local n = 0\n"
+                    + "for i = 1, #KEYS, 1000 do\n"
+                    + "  n = n + redis.call('unlink', unpack(KEYS, i, math.min(i + 999, #KEYS)))\n"
+                    + "end\n"
+                    + "return n", Long.class);
+    private static final byte[] UNLINK_PROBE_KEY = "common:redis:unlink-probe".getBytes(StandardCharsets.UTF_8);
+
+    private final RedisTemplateRoute redisTemplateRoute;
+    private final ScanProperties scanProperties;
+    private final ExecutorService executor;
+    /**
+     * 各分片是否支持UNLINK(redis 4以上)，第一次删除时探测
+     */
+    private final Map<RedisTemplate<String, Object>, Boolean> unlinkSupported = new ConcurrentHashMap<>();
+
+    public KeyScanner(RedisTemplateRoute redisTemplateRoute, ScanProperties scanProperties) {
+        this.redisTemplateRoute = redisTemplateRoute;
+        this.scanProperties = scanProperties;
+        AtomicInteger index = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, redisTemplateRoute.getTemplates().size()) * 2, r -> {
+            Thread thread = new Thread(r, "redis-scan-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 扫描所有分片上匹配的key，各分片并发扫描，结果按到达顺序合并；同一个key可能返回多次(SCAN的语义)。
+     * 流是惰性的，使用完需要close(或用try-with-resources)以释放扫描中的连接
+     *
+     * @param pattern 如 book.*
+     * @return
+     */
+    public Stream<String> scan(String pattern) {
+        checkPattern(pattern);
+        List<RedisTemplate<String, Object>> templates = redisTemplateRoute.getTemplates();
+        MergedIterator iterator = new MergedIterator(Math.max(1, scanProperties.getBufferSize()), templates.size());
+        List<Future<?>> futures = new ArrayList<>(templates.size());
+        for (RedisTemplate<String, Object> template : templates) {
+            futures.add(executor.submit(() -> iterator.produce(template, pattern)));
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    iterator.cancelled = true;
+                    for (Future<?> future : futures) {
+                        future.cancel(true);
+                    }
+                });
+    }
+
+    /**
+     * 在所有分片上并发删除匹配的key：SCAN出的key分批UNLINK(不支持UNLINK的版本使用DEL)，按每秒删除数限速
+     *
+     * @param pattern 如 book.*，不允许只有*
+     * @return 删除的key数
+     */
+    public long deleteByPattern(String pattern) {
+        checkPattern(pattern);
+        if ("*".equals(pattern.trim())) {
+            throw new IllegalArgumentException("refuse to delete all keys");
+        }
+        List<Future<Long>> futures = new ArrayList<>();
+        for (RedisTemplate<String, Object> template : redisTemplateRoute.getTemplates()) {
+            futures.add(executor.submit(() -> deleteOnShard(template, pattern)));
+        }
+        long deleted = 0;
+        try {
+            for (Future<Long> future : futures) {
+                deleted += future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new RedisSystemException("interrupted while deleting " + pattern, e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RedisSystemException(cause.getMessage(), cause);
+        }
+        return deleted;
+    }
+
+    @SuppressWarnings("unchecked")
+    private long deleteOnShard(RedisTemplate<String, Object> template, String pattern) throws InterruptedException {
+        int batchSize = Math.max(1, scanProperties.getDeleteBatchSize());
+        int maxPerSecond = scanProperties.getMaxDeletesPerSecond();
+        RedisConnectionFactory factory = template.getConnectionFactory();
+        RedisConnection connection = RedisConnectionUtils.getConnection(factory);
+        long deleted = 0;
+        long start = System.nanoTime();
+        try {
+            // 探测失败(连接异常)时也要归还连接；探测不放在computeIfAbsent里，避免网络请求阻塞map
+            Boolean unlink = unlinkSupported.get(template);
+            if (unlink == null) {
+                unlink = probeUnlink(connection);
+                unlinkSupported.putIfAbsent(template, unlink);
+            }
+            try (Cursor<byte[]> cursor = connection.scan(scanOptions(pattern))) {
+                List<byte[]> batch = new ArrayList<>(batchSize);
+                while (cursor.hasNext() || !batch.isEmpty()) {
+                    if (cursor.hasNext()) {
+                        batch.add(cursor.next());
+                        if (batch.size() < batchSize && cursor.hasNext()) {
+                            continue;
+                        }
+                    }
+                    byte[][] keys = batch.toArray(new byte[batch.size()][]);
+                    batch.clear();
+                    if (unlink) {
+                        deleted += toLong(ScriptUtil.eval(connection, UNLINK, ReturnType.INTEGER, keys.length, keys));
+                    } else {
+                        deleted += toLong(connection.del(keys));
+                    }
+                    if (maxPerSecond > 0) {
+                        long expectedNanos = TimeUnit.SECONDS.toNanos(deleted) / maxPerSecond;
+                        long sleepNanos = expectedNanos - (System.nanoTime() - start);
+                        if (sleepNanos > 0) {
+                            TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("close scan cursor", e);
+        } finally {
+            RedisConnectionUtils.releaseConnection(connection, factory);
+        }
+        return deleted;
+    }
+
+    /**
+     * 对一个不存在的key执行一次UNLINK脚本，redis返回错误(不支持)时返回false；连接失败时抛出，下次重新探测
+     */
+    private static boolean probeUnlink(RedisConnection connection) {
+        try {
+            ScriptUtil.eval(connection, UNLINK, ReturnType.INTEGER, 1, new byte[][]{UNLINK_PROBE_KEY});
+            return true;
+        } catch (RedisConnectionFailureException | QueryTimeoutException e) {
+            throw e;
+        } catch (DataAccessException e) {
+            logger.info("UNLINK not supported, delete with DEL: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private ScanOptions scanOptions(String pattern) {
+        return ScanOptions.scanOptions().match(pattern).count(Math.max(1, scanProperties.getCount())).build();
+    }
+
+    private static long toLong(Object reply) {
+        return reply instanceof Number ? ((Number) reply).longValue() : 0;
+    }
+
+    private static void checkPattern(String pattern) {
+        if (pattern == null || pattern.trim().isEmpty()) {
+            throw new IllegalArgumentException("pattern must not be empty");
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 各分片扫描线程写入有界队列，消费方按到达顺序读取；每个分片结束时写入一个结束标记
+     */
+    private class MergedIterator implements Iterator<String> {
+
+        private final Object end = new Object();
+        private final BlockingQueue<Object> queue;
+        private int running;
+        private Object next;
+        private volatile boolean cancelled;
+
+        private MergedIterator(int bufferSize, int shards) {
+            this.queue = new ArrayBlockingQueue<>(bufferSize);
+            this.running = shards;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void produce(RedisTemplate<String, Object> template, String pattern) {
+            RedisSerializer<String> keySerializer = (RedisSerializer<String>) template.getKeySerializer();
+            RedisConnectionFactory factory = template.getConnectionFactory();
+            Object last = end;
+            try {
+                RedisConnection connection = RedisConnectionUtils.getConnection(factory);
+                try (Cursor<byte[]> cursor = connection.scan(scanOptions(pattern))) {
+                    while (!cancelled && cursor.hasNext()) {
+                        queue.put(keySerializer.deserialize(cursor.next()));
+                    }
+                } finally {
+                    RedisConnectionUtils.releaseConnection(connection, factory);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException | IOException e) {
+                last = e;
+            }
+            try {
+                queue.put(last);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && running > 0) {
+                Object item;
+                try {
+                    item = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RedisSystemException("interrupted while scanning", e);
+                }
+                if (item == end) {
+                    running--;
+                } else if (item instanceof RuntimeException) {
+                    running--;
+                    throw (RuntimeException) item;
+                } else if (item instanceof IOException) {
+                    running--;
+                } else {
+                    next = item;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String key = (String) next;
+            next = null;
+            return key;
+        }
+    }
+}
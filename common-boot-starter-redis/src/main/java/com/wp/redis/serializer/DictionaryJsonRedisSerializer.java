@@ -0,0 +1,57 @@
+package com.wp.redis.serializer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wp.redis.codec.DictionaryCompressor;
+import com.wp.redis.codec.MissingDictionaryException;
+import com.wp.redis.utils.ObjectMapperUtil;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * Jackson序列化(带类型信息)后用预训练字典压缩，适合大量结构相似的小JSON；
+ * 也能读取未压缩的JSON和gzip压缩的JSON
+ */
+public class DictionaryJsonRedisSerializer implements RedisSerializer<Object> {
+
+    private static final byte[] EMPTY_ARRAY = new byte[0];
+
+    private final DictionaryCompressor compressor;
+    private final String prefix;
+    private final ObjectMapper objectMapper = ObjectMapperUtil.createTypedMapper();
+
+    /**
+     * @param compressor
+     * @param prefix     选择字典用的前缀，如缓存名称加冒号
+     */
+    public DictionaryJsonRedisSerializer(DictionaryCompressor compressor, String prefix) {
+        this.compressor = compressor;
+        this.prefix = prefix;
+    }
+
+    @Override
+    public byte[] serialize(Object t) throws SerializationException {
+        if (t == null) {
+            return EMPTY_ARRAY;
+        }
+        try {
+            return compressor.compress(prefix, objectMapper.writeValueAsBytes(t));
+        } catch (Exception ex) {
+            throw new SerializationException("Could not write JSON: " + ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(compressor.decompress(bytes), Object.class);
+        } catch (MissingDictionaryException ex) {
+            // 由缓存按未命中处理
+            throw ex;
+        } catch (Exception ex) {
+            throw new SerializationException("Could not read JSON: " + ex.getMessage(), ex);
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.wp.redis.template;
 
 import redis.clients.util.Hashing;
+
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.SortedMap;
 import java.util.TreeMap;
@@ -9,8 +12,10 @@ public class TemplateRoute<T> {
 
     private TreeMap<Long, T> nodes = new TreeMap<Long, T>();
     private final Hashing algo = Hashing.MURMUR_HASH;
+    private final List<T> templates;
 
     public TemplateRoute(List<T> list) {
+        this.templates = Collections.unmodifiableList(new ArrayList<>(list));
         //保证 List<ChapterTemplate> 顺序 ,减少缓存的迁移
         for (int i = 0; i != list.size(); ++i) {
             final T t = list.get(i);
@@ -27,4 +32,13 @@ public class TemplateRoute<T> {
         }
         return tail.get(tail.firstKey());
     }
-}
\ No newline at end of file
+
+    /**
+     * 按配置顺序返回所有分片
+     *
+     * @return
+     */
+    public List<T> getTemplates() {
+        return templates;
+    }
+}
@@ -0,0 +1,25 @@
+package com.wp.redis.utils;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * ObjectMapper创建
+ */
+public class ObjectMapperUtil {
+
+    /**
+     * 与RedisTemplate值序列化相同的配置：所有字段可见、非final类型写入类型信息、忽略未知字段
+     *
+     * @return
+     */
+    public static ObjectMapper createTypedMapper() {
+        ObjectMapper om = new ObjectMapper();
+        om.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        om.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL);
+        om.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        return om;
+    }
+}
@@ -0,0 +1,67 @@
+package com.wp.redis.utils;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * lua脚本执行
+ */
+public final class ScriptUtil {
+
+    private ScriptUtil() {
+    }
+
+    /**
+     * 先EVALSHA，脚本未缓存时EVAL；只有1个key，返回整数
+     *
+     * @param connection
+     * @param script
+     * @param keysAndArgs 第一个为key，其余为参数
+     * @return
+     */
+    public static Long eval(RedisConnection connection, DefaultRedisScript<Long> script, byte[][] keysAndArgs) {
+        return eval(connection, script, ReturnType.INTEGER, 1, keysAndArgs);
+    }
+
+    /**
+     * 先EVALSHA，脚本未缓存时EVAL
+     *
+     * @param connection
+     * @param script
+     * @param returnType
+     * @param numKeys     key的个数
+     * @param keysAndArgs 前numKeys个为key，其余为参数
+     * @param <T>
+     * @return
+     */
+    public static <T> T eval(RedisConnection connection, DefaultRedisScript<?> script, ReturnType returnType, int numKeys, byte[][] keysAndArgs) {
+        try {
+            return connection.evalSha(script.getSha1(), returnType, numKeys, keysAndArgs);
+        } catch (DataAccessException e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            return connection.eval(script.getScriptAsString().getBytes(StandardCharsets.UTF_8), returnType, numKeys, keysAndArgs);
+        }
+    }
+
+    /**
+     * 数字参数
+     */
+    public static byte[] bytes(long value) {
+        return String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable current = e; current != null; current = current.getCause()) {
+            if (current.getMessage() != null && current.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,62 @@
+package com.wp.redis.writebehind;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 异步写队列中的HMSET，同一个key的多次写入合并字段而不是只保留最后一次，与同步HMSET的结果一致
+ */
+public class HashWrite implements RedisCallback<Object> {
+
+    private final byte[] rawKey;
+    private final Map<ByteBuffer, byte[]> fields;
+    private final long expireMillis;
+
+    /**
+     * @param rawKey       序列化后的key
+     * @param rawHash      序列化后的字段和值
+     * @param expireMillis 过期毫秒，<=0不设置
+     */
+    public HashWrite(byte[] rawKey, Map<byte[], byte[]> rawHash, long expireMillis) {
+        this.rawKey = rawKey;
+        this.fields = new LinkedHashMap<>(rawHash.size());
+        for (Map.Entry<byte[], byte[]> entry : rawHash.entrySet()) {
+            fields.put(ByteBuffer.wrap(entry.getKey()), entry.getValue());
+        }
+        this.expireMillis = expireMillis;
+    }
+
+    private HashWrite(HashWrite earlier, HashWrite later) {
+        this.rawKey = later.rawKey;
+        this.fields = new LinkedHashMap<>(earlier.fields);
+        this.fields.putAll(later.fields);
+        this.expireMillis = later.expireMillis;
+    }
+
+    /**
+     * 合并后写入的字段，later中的值覆盖同名字段，过期时间以later为准
+     */
+    HashWrite merge(HashWrite later) {
+        return new HashWrite(this, later);
+    }
+
+    @Override
+    public Object doInRedis(RedisConnection connection) throws DataAccessException {
+        Map<byte[], byte[]> rawHash = new LinkedHashMap<>(fields.size());
+        for (Map.Entry<ByteBuffer, byte[]> entry : fields.entrySet()) {
+            rawHash.put(entry.getKey().array(), entry.getValue());
+        }
+        if (!rawHash.isEmpty()) {
+            connection.hMSet(rawKey, rawHash);
+        }
+        if (expireMillis > 0) {
+            connection.pExpire(rawKey, expireMillis);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,264 @@
+package com.wp.redis.writebehind;
+
+import com.wp.redis.properties.WriteBehindOverflow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * 单个分片的有界写队列，由一个后台线程批量以流水线方式写入；同一个key排队中的多次写入按提交顺序串成一条，
+ * 相邻的HMSET合并字段，结果与依次同步写入一致
+ */
+class ShardWriteQueue implements Runnable {
+
+    private static Logger logger = LoggerFactory.getLogger(ShardWriteQueue.class);
+
+    private final RedisTemplate<String, Object> template;
+    private final int capacity;
+    private final int maxBatchSize;
+    private final WriteBehindOverflow overflow;
+    private final LinkedHashMap<String, RedisCallback<?>> pending = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition written = lock.newCondition();
+    /**
+     * 后台线程已取出、正在写入的key
+     */
+    private final Set<String> writing = new HashSet<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    ShardWriteQueue(String name, RedisTemplate<String, Object> template, int capacity, int maxBatchSize, WriteBehindOverflow overflow) {
+        this.template = template;
+        this.capacity = Math.max(1, capacity);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.overflow = overflow;
+        this.worker = new Thread(this, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    void submit(String key, RedisCallback<?> write) throws InterruptedException {
+        boolean callerRuns = false;
+        lock.lock();
+        try {
+            if (!running) {
+                callerRuns = true;
+            } else if (pending.containsKey(key)) {
+                RedisCallback<?> previous = pending.get(key);
+                WriteChain chain = previous instanceof WriteChain ? (WriteChain) previous : new WriteChain(previous);
+                pending.put(key, chain.append(write));
+                return;
+            } else {
+                while (pending.size() >= capacity && !callerRuns) {
+                    if (overflow == WriteBehindOverflow.DROP_OLDEST) {
+                        Iterator<String> iterator = pending.keySet().iterator();
+                        iterator.next();
+                        iterator.remove();
+                        dropped.incrementAndGet();
+                    } else if (overflow == WriteBehindOverflow.CALLER_RUNS) {
+                        callerRuns = true;
+                    } else {
+                        notFull.await();
+                    }
+                }
+                if (!callerRuns) {
+                    pending.put(key, write);
+                    notEmpty.signal();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (callerRuns) {
+            template.execute(write);
+        }
+    }
+
+    /**
+     * 在调用线程上写入key排队中的命令，并等待后台线程正在写入的同一个key完成
+     */
+    void flush(String key) throws InterruptedException {
+        RedisCallback<?> write;
+        lock.lock();
+        try {
+            write = pending.remove(key);
+            if (write != null) {
+                notFull.signal();
+            }
+            while (writing.contains(key)) {
+                written.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (write != null) {
+            template.execute(write);
+        }
+    }
+
+    /**
+     * 丢弃key排队中的命令，并等待后台线程正在写入的同一个key完成，之后的删除不会被已取出的写入覆盖
+     */
+    void discard(String key) throws InterruptedException {
+        lock.lock();
+        try {
+            if (pending.remove(key) != null) {
+                notFull.signal();
+            }
+            while (writing.contains(key)) {
+                written.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 丢弃匹配pattern的key排队中的命令，并等待后台线程正在写入的匹配的key完成
+     */
+    void discardMatching(Pattern pattern) throws InterruptedException {
+        lock.lock();
+        try {
+            boolean removed = pending.keySet().removeIf(key -> pattern.matcher(key).matches());
+            if (removed) {
+                notFull.signalAll();
+            }
+            while (writing.stream().anyMatch(key -> pattern.matcher(key).matches())) {
+                written.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+
+    long getFailed() {
+        return failed.get();
+    }
+
+    void shutdown(long waitMillis) throws InterruptedException {
+        running = false;
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        worker.join(waitMillis);
+    }
+
+    @Override
+    public void run() {
+        List<RedisCallback<?>> batch = new ArrayList<>(maxBatchSize);
+        while (true) {
+            lock.lock();
+            try {
+                while (pending.isEmpty() && running) {
+                    notEmpty.await(100, TimeUnit.MILLISECONDS);
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                Iterator<Map.Entry<String, RedisCallback<?>>> iterator = pending.entrySet().iterator();
+                while (iterator.hasNext() && batch.size() < maxBatchSize) {
+                    Map.Entry<String, RedisCallback<?>> entry = iterator.next();
+                    batch.add(entry.getValue());
+                    writing.add(entry.getKey());
+                    iterator.remove();
+                }
+                notFull.signalAll();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            flush(batch);
+            batch.clear();
+            lock.lock();
+            try {
+                writing.clear();
+                written.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void flush(List<RedisCallback<?>> batch) {
+        try {
+            template.executePipelined((RedisCallback<Object>) connection -> {
+                for (RedisCallback<?> write : batch) {
+                    write.doInRedis(connection);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            failed.addAndGet(batch.size());
+            logger.error("redis write behind pipeline failed,size={}", batch.size(), e);
+        }
+    }
+
+    /**
+     * 同一个key排队中的多次写入，按提交顺序执行；新的HashWrite紧跟在HashWrite之后时合并字段
+     */
+    private static final class WriteChain implements RedisCallback<Object> {
+
+        private final List<RedisCallback<?>> writes = new ArrayList<>(2);
+
+        private WriteChain(RedisCallback<?> first) {
+            writes.add(first);
+        }
+
+        private WriteChain append(RedisCallback<?> write) {
+            int last = writes.size() - 1;
+            if (writes.get(last) instanceof HashWrite && write instanceof HashWrite) {
+                writes.set(last, ((HashWrite) writes.get(last)).merge((HashWrite) write));
+            } else {
+                writes.add(write);
+            }
+            return this;
+        }
+
+        @Override
+        public Object doInRedis(RedisConnection connection) throws DataAccessException {
+            for (RedisCallback<?> write : writes) {
+                write.doInRedis(connection);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.wp.redis.writebehind;
+
+import com.wp.redis.properties.WriteBehindProperties;
+import com.wp.redis.routes.RedisTemplateRoute;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 异步写：写入按分片放入有界队列后立即返回，后台线程合并同一个key的重复写入并以流水线批量写入，
+ * 队列满时按配置阻塞、丢弃最早的写入或在调用线程上同步写入
+ */
+public class WriteBehindQueue implements DisposableBean {
+
+    private final static long SHUTDOWN_WAIT_MILLIS = 5000;
+
+    private final Map<RedisTemplate<String, Object>, ShardWriteQueue> queues = new IdentityHashMap<>();
+
+    public WriteBehindQueue(RedisTemplateRoute redisTemplateRoute, WriteBehindProperties writeBehindProperties) {
+        List<RedisTemplate<String, Object>> templates = redisTemplateRoute.getTemplates();
+        for (int i = 0; i < templates.size(); i++) {
+            queues.put(templates.get(i), new ShardWriteQueue("redis-write-behind-" + i, templates.get(i), writeBehindProperties.getCapacity(),
+                    writeBehindProperties.getMaxBatchSize(), writeBehindProperties.getOverflow()));
+        }
+    }
+
+    /**
+     * 提交写入，排在同一个key尚未写入的命令之后，一起写入；相邻的HashWrite合并字段
+     *
+     * @param template key所属分片
+     * @param key
+     * @param write    基于原始字节的写命令
+     */
+    public void submit(RedisTemplate<String, Object> template, String key, RedisCallback<?> write) {
+        try {
+            queues.get(template).submit(key, write);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisSystemException("interrupted while waiting for write behind queue", e);
+        }
+    }
+
+    /**
+     * 立即写入key排队中的命令并等待正在写入的完成，之后同步写入的增量不会被排队的旧写入覆盖
+     *
+     * @param template key所属分片
+     * @param key
+     */
+    public void flush(RedisTemplate<String, Object> template, String key) {
+        try {
+            queues.get(template).flush(key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisSystemException("interrupted while flushing write behind queue", e);
+        }
+    }
+
+    /**
+     * 丢弃key尚未写入的命令并等待正在写入的完成，删除key前调用，避免排队中或已取出的写入覆盖删除
+     *
+     * @param template key所属分片
+     * @param key
+     */
+    public void discard(RedisTemplate<String, Object> template, String key) {
+        try {
+            queues.get(template).discard(key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisSystemException("interrupted while discarding write behind queue", e);
+        }
+    }
+
+    /**
+     * 丢弃所有分片上匹配pattern的key尚未写入的命令并等待正在写入的完成，按模式删除前调用
+     *
+     * @param pattern redis的glob模式，如 book.*
+     */
+    public void discardMatching(String pattern) {
+        Pattern regex = globToRegex(pattern);
+        try {
+            for (ShardWriteQueue queue : queues.values()) {
+                queue.discardMatching(regex);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisSystemException("interrupted while discarding write behind queue", e);
+        }
+    }
+
+    /**
+     * 按redis的glob规则转换：* ? [...] [^...] 以及 \ 转义
+     */
+    static Pattern globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() + 8);
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else if (c == '[' && glob.indexOf(']', i + 1) > (glob.startsWith("^", i + 1) ? i + 2 : i + 1)) {
+                int end = glob.indexOf(']', i + 1);
+                regex.append('[');
+                int from = i + 1;
+                if (glob.charAt(from) == '^') {
+                    regex.append('^');
+                    from++;
+                }
+                for (int j = from; j < end; j++) {
+                    char member = glob.charAt(j);
+                    if (member == '\\' && j + 1 < end) {
+                        member = glob.charAt(++j);
+                    } else if (member == '-' && j > from && j + 1 < end) {
+                        regex.append('-');
+                        continue;
+                    }
+                    if (!Character.isLetterOrDigit(member)) {
+                        regex.append('\\');
+                    }
+                    regex.append(member);
+                }
+                regex.append(']');
+                i = end;
+            } else {
+                if (c == '\\' && i + 1 < glob.length()) {
+                    c = glob.charAt(++i);
+                }
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    /**
+     * 当前各分片排队中的key数
+     *
+     * @return
+     */
+    public List<Integer> getPendingCounts() {
+        List<Integer> pending = new ArrayList<>(queues.size());
+        for (ShardWriteQueue queue : queues.values()) {
+            pending.add(queue.size());
+        }
+        return pending;
+    }
+
+    /**
+     * 队列满时被丢弃的写入数
+     *
+     * @return
+     */
+    public long getDroppedCount() {
+        long dropped = 0;
+        for (ShardWriteQueue queue : queues.values()) {
+            dropped += queue.getDropped();
+        }
+        return dropped;
+    }
+
+    /**
+     * 流水线写入失败的命令数(每个key排队中的写入算一个)，失败的写入只记录日志不重试
+     *
+     * @return
+     */
+    public long getFailedCount() {
+        long failed = 0;
+        for (ShardWriteQueue queue : queues.values()) {
+            failed += queue.getFailed();
+        }
+        return failed;
+    }
+
+    /**
+     * 停止接收并写完排队中的命令
+     */
+    @Override
+    public void destroy() throws Exception {
+        for (ShardWriteQueue queue : queues.values()) {
+            queue.shutdown(SHUTDOWN_WAIT_MILLIS);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.wp.redis;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 测试用的单分片redis：只支持字符串的GET/SET/DEL/EXISTS，值保存在内存map中
+ */
+public class MapRedis {
+
+    private final Map<ByteBuffer, byte[]> values = new ConcurrentHashMap<>();
+
+    public RedisTemplate<String, Object> template() {
+        RedisConnectionFactory factory = (RedisConnectionFactory) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{RedisConnectionFactory.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getConnection":
+                            return connection();
+                        case "getConvertPipelineAndTxResults":
+                            return true;
+                        case "translateExceptionIfPossible":
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        RedisTemplate<String, Object> template = new RedisTemplate<>();
+        template.setConnectionFactory(factory);
+        template.setKeySerializer(new StringRedisSerializer());
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    public byte[] get(String key) {
+        return values.get(ByteBuffer.wrap(key.getBytes()));
+    }
+
+    public void set(String key, byte[] value) {
+        values.put(ByteBuffer.wrap(key.getBytes()), value);
+    }
+
+    private RedisConnection connection() {
+        return (RedisConnection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{RedisConnection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "get":
+                            return values.get(ByteBuffer.wrap((byte[]) args[0]));
+                        case "set":
+                            values.put(ByteBuffer.wrap((byte[]) args[0]), (byte[]) args[1]);
+                            return method.getReturnType() == Boolean.class ? Boolean.TRUE : null;
+                        case "exists":
+                            return values.containsKey(ByteBuffer.wrap((byte[]) args[0]));
+                        case "del":
+                            long deleted = 0;
+                            for (byte[] key : (byte[][]) args[0]) {
+                                deleted += values.remove(ByteBuffer.wrap(key)) != null ? 1 : 0;
+                            }
+                            return deleted;
+                        case "close":
+                            return null;
+                        case "isClosed":
+                        case "isPipelined":
+                        case "isQueueing":
+                            return false;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
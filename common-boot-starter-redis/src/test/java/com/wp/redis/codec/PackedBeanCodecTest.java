@@ -0,0 +1,97 @@
+package com.wp.redis.codec;
+
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.Date;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PackedBeanCodecTest {
+
+    private final PackedBeanCodec codec = new PackedBeanCodec();
+
+    @Test
+    public void roundTripsDateSubclassesAndNullArrayElements() {
+        Timestamp updated = new Timestamp(1700000000123L);
+        updated.setNanos(123456789);
+        Book book = new Book();
+        book.setId(42L);
+        book.setTitle("redis");
+        book.setCreated(new Date(1600000000000L));
+        book.setUpdated(updated);
+        book.setTags(new String[]{"a", null, ""});
+
+        Book decoded = new Book();
+        assertTrue(codec.decodeInto(codec.encode(book), decoded));
+
+        assertEquals(Long.valueOf(42L), decoded.getId());
+        assertEquals("redis", decoded.getTitle());
+        assertSame(Date.class, decoded.getCreated().getClass());
+        assertEquals(book.getCreated(), decoded.getCreated());
+        assertSame(Timestamp.class, decoded.getUpdated().getClass());
+        assertEquals(updated.getTime(), decoded.getUpdated().getTime());
+        assertArrayEquals(new String[]{"a", null, ""}, decoded.getTags());
+    }
+
+    @Test
+    public void leavesNullPropertiesUnset() {
+        Book decoded = new Book();
+        decoded.setTitle("kept");
+        assertTrue(codec.decodeInto(codec.encode(new Book()), decoded));
+        assertNull(decoded.getId());
+        assertEquals("kept", decoded.getTitle());
+    }
+
+    public static class Book {
+        private Long id;
+        private String title;
+        private Date created;
+        private Timestamp updated;
+        private String[] tags;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public void setTitle(String title) {
+            this.title = title;
+        }
+
+        public Date getCreated() {
+            return created;
+        }
+
+        public void setCreated(Date created) {
+            this.created = created;
+        }
+
+        public Timestamp getUpdated() {
+            return updated;
+        }
+
+        public void setUpdated(Timestamp updated) {
+            this.updated = updated;
+        }
+
+        public String[] getTags() {
+            return tags;
+        }
+
+        public void setTags(String[] tags) {
+            this.tags = tags;
+        }
+    }
+}
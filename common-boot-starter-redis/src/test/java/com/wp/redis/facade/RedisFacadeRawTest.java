@@ -0,0 +1,66 @@
+package com.wp.redis.facade;
+
+import com.wp.redis.MapRedis;
+import com.wp.redis.codec.Gzip;
+import com.wp.redis.properties.CompressionType;
+import com.wp.redis.properties.KeyPolicyProperties;
+import com.wp.redis.properties.RedisConfigProperties;
+import com.wp.redis.routes.RedisTemplateRoute;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class RedisFacadeRawTest {
+
+    private MapRedis redis;
+    private RedisFacade facade;
+
+    @Before
+    public void setUp() {
+        redis = new MapRedis();
+        RedisConfigProperties properties = new RedisConfigProperties();
+        KeyPolicyProperties gzip = new KeyPolicyProperties();
+        gzip.setPrefix("gz:");
+        gzip.setCompression(CompressionType.GZIP);
+        gzip.setCompressionThresholdBytes(16);
+        properties.setPolicies(Collections.singletonList(gzip));
+        RedisTemplateRoute route = new RedisTemplateRoute(Collections.singletonList(redis.template()));
+        facade = new RedisFacade(properties, route, key -> null);
+    }
+
+    @Test
+    public void roundTripsValueStartingWithDictionaryMagic() {
+        byte[] value = {(byte) 0xD1, 0, 0, 0, 7, 1, 2, 3, 4, 5};
+        facade.setRaw("raw:1", value, 1, TimeUnit.MINUTES);
+        assertArrayEquals(value, facade.getRaw("raw:1"));
+        assertNotNull(redis.get("raw:1"));
+    }
+
+    @Test
+    public void roundTripsValueStartingWithGzipMagic() {
+        byte[] value = {(byte) 0x1f, (byte) 0x8b, 8, 0, 42};
+        facade.setRaw("raw:2", value, 1, TimeUnit.MINUTES);
+        RawValue raw = facade.getRaw("raw:2", true);
+        assertFalse(raw.isGzip());
+        assertArrayEquals(value, raw.getBytes());
+    }
+
+    @Test
+    public void gzipPolicyIsDecodedByTag() {
+        byte[] value = new byte[1024];
+        Arrays.fill(value, (byte) 'a');
+        facade.setRaw("gz:1", value, 1, TimeUnit.MINUTES);
+        assertArrayEquals(value, facade.getRaw("gz:1"));
+        RawValue raw = facade.getRaw("gz:1", true);
+        assertTrue(raw.isGzip());
+        assertArrayEquals(value, Gzip.decompress(raw.getBytes()));
+    }
+}
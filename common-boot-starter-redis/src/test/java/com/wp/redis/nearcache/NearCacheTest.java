@@ -0,0 +1,44 @@
+package com.wp.redis.nearcache;
+
+import com.wp.redis.properties.NearCacheProperties;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class NearCacheTest {
+
+    private final NearCache nearCache = new NearCache(properties());
+
+    @Test
+    public void putsValueReadBeforeAnyInvalidation() {
+        long generation = nearCache.generation("book.1");
+        nearCache.put("book.1", new byte[]{1}, generation);
+        assertArrayEquals(new byte[]{1}, nearCache.get("book.1"));
+    }
+
+    @Test
+    public void skipsValueReadBeforeRemove() {
+        long generation = nearCache.generation("book.2");
+        nearCache.remove("book.2");
+        nearCache.put("book.2", new byte[]{1}, generation);
+        assertNull(nearCache.get("book.2"));
+    }
+
+    @Test
+    public void skipsValueReadBeforeClear() {
+        long generation = nearCache.generation("book.3");
+        nearCache.clear();
+        nearCache.put("book.3", new byte[]{1}, generation);
+        assertNull(nearCache.get("book.3"));
+    }
+
+    private static NearCacheProperties properties() {
+        NearCacheProperties properties = new NearCacheProperties();
+        properties.setCapacityMb(1);
+        properties.setSegments(1);
+        properties.setSlabKb(64);
+        properties.setMaxEntryKb(16);
+        return properties;
+    }
+}
@@ -0,0 +1,101 @@
+package com.wp.redis.nearcache;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapStoreTest {
+
+    private static final long TTL = 60000;
+
+    @Test
+    public void removeKeepsProbeChainsReachable() {
+        OffHeapStore store = new OffHeapStore(16 << 20, 1, 64 << 10, 1024);
+        for (int i = 0; i < 20000; i++) {
+            assertTrue(store.put("key" + i, value(i), TTL));
+        }
+        for (int i = 0; i < 20000; i += 3) {
+            store.remove("key" + i);
+        }
+        for (int i = 0; i < 20000; i++) {
+            if (i % 3 == 0) {
+                assertNull(store.get("key" + i));
+            } else {
+                assertArrayEquals(value(i), store.get("key" + i));
+            }
+        }
+        for (int i = 0; i < 20000; i += 3) {
+            assertTrue(store.put("key" + i, value(i), TTL));
+        }
+        assertEquals(20000, store.size());
+        for (int i = 0; i < 20000; i++) {
+            assertArrayEquals(value(i), store.get("key" + i));
+        }
+    }
+
+    @Test
+    public void clockEvictsEntriesNotReadSinceLastPass() {
+        OffHeapStore store = new OffHeapStore(4096, 1, 4096, 1024);
+        for (int i = 0; i < 64; i++) {
+            assertTrue(store.put(String.format("k%02d", i), value(i), TTL));
+        }
+        for (int i = 0; i < 32; i++) {
+            assertNotNull(store.get(String.format("k%02d", i)));
+        }
+        for (int i = 0; i < 32; i++) {
+            assertTrue(store.put(String.format("n%02d", i), value(i), TTL));
+        }
+        for (int i = 0; i < 64; i++) {
+            byte[] value = store.get(String.format("k%02d", i));
+            if (i < 32) {
+                assertArrayEquals(value(i), value);
+            } else {
+                assertNull(value);
+            }
+        }
+        assertEquals(32, store.getEvictions());
+    }
+
+    @Test
+    public void rebalanceMovesSlabsBetweenSizeClasses() {
+        OffHeapStore store = new OffHeapStore(4 * 4096, 1, 4096, 2048);
+        for (int i = 0; i < 1000; i++) {
+            store.put("small" + i, value(i), TTL);
+        }
+        assertEquals(4 * 4096, store.getAllocatedBytes());
+        byte[] big = new byte[1500];
+        for (int i = 0; i < 4; i++) {
+            assertTrue(store.put("big" + i, big, TTL));
+            assertArrayEquals(big, store.get("big" + i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            store.put("small-again" + i, value(i), TTL);
+        }
+        assertArrayEquals(value(999), store.get("small-again999"));
+        assertEquals(4 * 4096, store.getAllocatedBytes());
+    }
+
+    @Test
+    public void clearReusesSlabs() {
+        OffHeapStore store = new OffHeapStore(4 * 4096, 1, 4096, 2048);
+        for (int i = 0; i < 1000; i++) {
+            store.put("small" + i, value(i), TTL);
+        }
+        store.clear();
+        assertEquals(0, store.size());
+        for (int i = 0; i < 8; i++) {
+            assertTrue(store.put("big" + i, new byte[1500], TTL));
+        }
+        assertEquals(4 * 4096, store.getAllocatedBytes());
+    }
+
+    private static byte[] value(int i) {
+        return ("value" + i).getBytes(StandardCharsets.UTF_8);
+    }
+}
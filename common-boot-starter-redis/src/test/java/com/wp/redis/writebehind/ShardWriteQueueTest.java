@@ -0,0 +1,127 @@
+package com.wp.redis.writebehind;
+
+import com.wp.redis.properties.WriteBehindOverflow;
+import org.junit.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ShardWriteQueueTest {
+
+    private final List<String> commands = new CopyOnWriteArrayList<>();
+    private final CountDownLatch firstBatch = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile boolean failing;
+
+    @Test
+    public void keepsMixedWritesOfOneKeyInOrder() throws Exception {
+        ShardWriteQueue queue = new ShardWriteQueue("test-write-behind", template(), 100, 100, WriteBehindOverflow.BLOCK);
+        queue.submit("a", command("set a"));
+        assertTrue(firstBatch.await(5, TimeUnit.SECONDS));
+
+        queue.submit("b", hash("x"));
+        queue.submit("b", hash("y"));
+        queue.submit("b", command("set b"));
+        queue.submit("b", hash("z"));
+        release.countDown();
+        queue.shutdown(5000);
+
+        assertEquals(Arrays.asList("set a", "hMSet x,y", "set b", "hMSet z"), commands);
+    }
+
+    @Test
+    public void discardsMatchingKeys() throws Exception {
+        ShardWriteQueue queue = new ShardWriteQueue("test-write-behind", template(), 100, 100, WriteBehindOverflow.BLOCK);
+        queue.submit("a", command("set a"));
+        assertTrue(firstBatch.await(5, TimeUnit.SECONDS));
+
+        queue.submit("book.1", command("set book.1"));
+        queue.submit("book.2", command("set book.2"));
+        queue.submit("author.1", command("set author.1"));
+        queue.discardMatching(WriteBehindQueue.globToRegex("book.*"));
+        release.countDown();
+        queue.shutdown(5000);
+
+        assertEquals(Arrays.asList("set a", "set author.1"), commands);
+    }
+
+    @Test
+    public void countsFailedWrites() throws Exception {
+        failing = true;
+        release.countDown();
+        ShardWriteQueue queue = new ShardWriteQueue("test-write-behind", template(), 100, 100, WriteBehindOverflow.BLOCK);
+        queue.submit("a", command("set a"));
+        queue.shutdown(5000);
+        assertEquals(1, queue.getFailed());
+    }
+
+    @Test
+    public void convertsRedisGlobs() {
+        assertTrue(WriteBehindQueue.globToRegex("book.*").matcher("book.1").matches());
+        assertFalse(WriteBehindQueue.globToRegex("book.*").matcher("bookx1").matches());
+        assertTrue(WriteBehindQueue.globToRegex("h?llo").matcher("hello").matches());
+        assertTrue(WriteBehindQueue.globToRegex("h[ae]llo").matcher("hallo").matches());
+        assertFalse(WriteBehindQueue.globToRegex("h[^e]llo").matcher("hello").matches());
+        assertTrue(WriteBehindQueue.globToRegex("h[a-c]llo").matcher("hbllo").matches());
+        assertTrue(WriteBehindQueue.globToRegex("a\\*b").matcher("a*b").matches());
+        assertFalse(WriteBehindQueue.globToRegex("a\\*b").matcher("axb").matches());
+    }
+
+    private RedisCallback<Object> command(String name) {
+        return connection -> {
+            commands.add(name);
+            return null;
+        };
+    }
+
+    private static HashWrite hash(String field) {
+        return new HashWrite("b".getBytes(), Collections.singletonMap(field.getBytes(), new byte[]{1}), 0);
+    }
+
+    /**
+     * 第一次流水线写入等待release，期间提交的写入留在队列中
+     */
+    private RedisTemplate<String, Object> template() {
+        RedisConnection connection = (RedisConnection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{RedisConnection.class}, (proxy, method, args) -> {
+                    if ("hMSet".equals(method.getName())) {
+                        StringBuilder fields = new StringBuilder();
+                        for (Object field : ((Map<?, ?>) args[1]).keySet()) {
+                            fields.append(fields.length() == 0 ? "" : ",").append(new String((byte[]) field));
+                        }
+                        commands.add("hMSet " + fields);
+                    }
+                    return null;
+                });
+        return new RedisTemplate<String, Object>() {
+            @Override
+            public List<Object> executePipelined(RedisCallback<?> action) {
+                firstBatch.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (failing) {
+                    throw new DataAccessResourceFailureException("down");
+                }
+                action.doInRedis(connection);
+                return Collections.emptyList();
+            }
+        };
+    }
+}